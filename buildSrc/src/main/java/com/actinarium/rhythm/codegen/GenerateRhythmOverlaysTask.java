@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm.codegen;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Gradle task that compiles Rhythm overlay configs from <code>res/raw</code> into a Java class with a static
+ * <code>inflate{ConfigName}(RhythmOverlayInflater)</code> method per config. Malformed configs fail the build. Usage
+ * in an app module:</p>
+ * <pre><code>
+ * android.applicationVariants.all { variant -&gt;
+ *     def generatedDir = file("$buildDir/generated/source/rhythm/$variant.dirName")
+ *     def task = tasks.create("generate${variant.name.capitalize()}RhythmOverlays", GenerateRhythmOverlaysTask) {
+ *         configFiles = files('src/main/res/raw/overlay_config')
+ *         packageName = 'com.example.app'
+ *         customLayerTypes = ['my-layer']
+ *         outputDir = generatedDir
+ *     }
+ *     variant.registerJavaGeneratingTask(task, generatedDir)
+ * }
+ * </code></pre>
+ *
+ * @author Paul Danyliuk
+ */
+public class GenerateRhythmOverlaysTask extends DefaultTask {
+
+    private FileCollection mConfigFiles;
+    private String mPackageName;
+    private String mClassName = "RhythmOverlays";
+    private List<String> mCustomLayerTypes = new ArrayList<>();
+    private File mOutputDir;
+
+    @InputFiles
+    public FileCollection getConfigFiles() {
+        return mConfigFiles;
+    }
+
+    public void setConfigFiles(FileCollection configFiles) {
+        mConfigFiles = configFiles;
+    }
+
+    @Input
+    public String getPackageName() {
+        return mPackageName;
+    }
+
+    public void setPackageName(String packageName) {
+        mPackageName = packageName;
+    }
+
+    @Input
+    public String getClassName() {
+        return mClassName;
+    }
+
+    public void setClassName(String className) {
+        mClassName = className;
+    }
+
+    /**
+     * @return layer types of custom factories the app registers in its inflater, which the configs may use
+     */
+    @Input
+    public List<String> getCustomLayerTypes() {
+        return mCustomLayerTypes;
+    }
+
+    public void setCustomLayerTypes(List<String> customLayerTypes) {
+        mCustomLayerTypes = customLayerTypes;
+    }
+
+    @OutputDirectory
+    public File getOutputDir() {
+        return mOutputDir;
+    }
+
+    public void setOutputDir(File outputDir) {
+        mOutputDir = outputDir;
+    }
+
+    @TaskAction
+    public void generate() throws IOException {
+        final OverlayConfigCompiler compiler = new OverlayConfigCompiler(mCustomLayerTypes);
+        final List<OverlayConfigCompiler.Config> configs = new ArrayList<>();
+        for (File file : mConfigFiles) {
+            try {
+                configs.add(compiler.parse(getResourceName(file), readLines(file)));
+            } catch (OverlayConfigException e) {
+                throw new GradleException("Error in Rhythm config " + file.getPath() + ":" + e.getLineNumber() + ": "
+                        + e.getMessage(), e);
+            }
+        }
+
+        final File packageDir = new File(mOutputDir, mPackageName.replace('.', File.separatorChar));
+        if (!packageDir.isDirectory() && !packageDir.mkdirs()) {
+            throw new GradleException("Cannot create directory " + packageDir);
+        }
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(new File(packageDir, mClassName + ".java")), "UTF-8")) {
+            writer.write(compiler.generate(mPackageName, mClassName, configs));
+        }
+    }
+
+    /**
+     * @return file name without extension, same as the name of the generated raw resource ID
+     */
+    private static String getResourceName(File file) {
+        final String name = file.getName();
+        final int dot = name.indexOf('.');
+        return dot == -1 ? name : name.substring(0, dot);
+    }
+
+    /**
+     * Read the file line by line, exactly like the inflater reads raw resources at runtime
+     */
+    private static List<String> readLines(File file) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+}
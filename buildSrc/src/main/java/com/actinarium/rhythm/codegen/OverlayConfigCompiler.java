@@ -0,0 +1,482 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm.codegen;
+
+import com.actinarium.rhythm.config.ArgumentValues;
+import com.actinarium.rhythm.config.ArgumentsDeclaration;
+import com.actinarium.rhythm.config.BundledLayerTypes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static com.actinarium.rhythm.config.ConfigSyntax.findKeyEnd;
+import static com.actinarium.rhythm.config.ConfigSyntax.findTokenEnd;
+import static com.actinarium.rhythm.config.ConfigSyntax.findVariableSeparator;
+import static com.actinarium.rhythm.config.ConfigSyntax.hasValue;
+import static com.actinarium.rhythm.config.ConfigSyntax.isEmptyOrComment;
+import static com.actinarium.rhythm.config.ConfigSyntax.skipSeparators;
+
+/**
+ * <p>Compiles Rhythm overlay configs into Java source at build time. Parses the configs following exactly the same
+ * grammar as <code>RhythmOverlayInflater</code> &mdash; global and local variables, titles, comments, blocks separated
+ * by empty lines, and <code>layer-type arg=value</code> lines &mdash; and generates a class that replays them through
+ * <code>PrecompiledOverlays</code>, so the app doesn't have to read and parse the configs at runtime. Lines are split
+ * into tokens with {@link com.actinarium.rhythm.config.ConfigSyntax}, the same lexer the inflater uses.</p><p>Syntax
+ * errors, unresolved variables, and unknown layer types are reported as {@link OverlayConfigException
+ * OverlayConfigExceptions} with the same messages the inflater would throw at runtime. Arguments of bundled layers are
+ * checked against {@link BundledLayerTypes} as well, while arguments of custom layers are still checked by their
+ * factories at runtime.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public class OverlayConfigCompiler {
+
+    private final Set<String> mLayerTypes = new LinkedHashSet<>();
+    private final Set<String> mCustomLayerTypes;
+
+    /**
+     * Create a compiler that accepts bundled layer types and provided custom ones
+     *
+     * @param customLayerTypes layer types of custom factories registered in the inflater, including aliases. Custom
+     *                         factories registered under bundled layer types replace them, so their arguments are not
+     *                         checked at build time either
+     */
+    public OverlayConfigCompiler(Collection<String> customLayerTypes) {
+        for (ArgumentsDeclaration declaration : BundledLayerTypes.ALL) {
+            mLayerTypes.add(declaration.getLayerType());
+        }
+        mLayerTypes.addAll(customLayerTypes);
+        mCustomLayerTypes = new LinkedHashSet<>(customLayerTypes);
+    }
+
+    /**
+     * Parse a config file. Mirrors <code>RhythmOverlayInflater.inflate(List)</code>.
+     *
+     * @param name  config name, i.e. raw resource name without extension
+     * @param lines config file split into lines
+     * @return parsed config
+     * @throws OverlayConfigException if the config is malformed
+     */
+    public Config parse(String name, List<String> lines) throws OverlayConfigException {
+        final Config config = new Config(name);
+        final int len = lines.size();
+        int overlayStart = -1;
+        int i = 0;
+
+        // First let's read global variables, which must be placed in the beginning of the file
+        for (; i < len; i++) {
+            final String line = lines.get(i);
+            if (isEmptyOrComment(line.trim())) {
+                continue;
+            }
+            if (line.charAt(0) != '@') {
+                break;
+            }
+            final int separator = findVariableSeparator(line);
+            if (separator == -1) {
+                throw new OverlayConfigException(
+                        "Malformed variable declaration.\nExpected syntax is @name=value where name may contain only letters, digits, and/or underscores.",
+                        i
+                );
+            }
+            config.mGlobalVars.put(line.substring(0, separator),
+                    resolveVariable(config.mGlobalVars, line.substring(separator + 1), i));
+        }
+
+        // Now read the remaining lines, separating blocks by empty lines
+        for (; i < len; i++) {
+            final String line = lines.get(i);
+            if (line.trim().length() == 0) {
+                if (overlayStart != -1) {
+                    config.mOverlays.add(
+                            parseOverlay(lines.subList(overlayStart, i), config.mGlobalVars, overlayStart));
+                    overlayStart = -1;
+                }
+            } else if (overlayStart == -1 && !isEmptyOrComment(line)) {
+                overlayStart = i;
+            }
+        }
+        if (overlayStart != -1) {
+            config.mOverlays.add(parseOverlay(lines.subList(overlayStart, len), config.mGlobalVars, overlayStart));
+        }
+
+        return config;
+    }
+
+    /**
+     * Parse a single overlay block. Mirrors <code>RhythmOverlayInflater.inflateOverlayInternal()</code>.
+     */
+    private Overlay parseOverlay(List<String> lines, Map<String, String> globalVars, int offset)
+            throws OverlayConfigException {
+        final Overlay overlay = new Overlay(offset);
+        Map<String, String> vars = globalVars;
+
+        for (int i = 0, size = lines.size(); i < size; i++) {
+            final String line = lines.get(i);
+            if (isEmptyOrComment(line.trim())) {
+                continue;
+            }
+
+            final int lineNumber = i + offset;
+            if (line.charAt(0) == '@') {
+                if (!overlay.mLayers.isEmpty()) {
+                    throw new OverlayConfigException(
+                            "Unexpected variable declaration.\nVariables must be declared before spec layers.",
+                            lineNumber
+                    );
+                }
+                if (vars == globalVars) {
+                    vars = new HashMap<>(globalVars);
+                    overlay.mHasLocalVars = true;
+                }
+                final int separator = findVariableSeparator(line);
+                if (separator == -1) {
+                    throw new OverlayConfigException(
+                            "Malformed variable declaration: \"" + line + "\".\nExpected syntax is @name=value where name may contain only letters, digits, and/or underscores.",
+                            lineNumber
+                    );
+                }
+                final String name = line.substring(0, separator);
+                final String value = resolveVariable(vars, line.substring(separator + 1), lineNumber);
+                vars.put(name, value);
+                overlay.mLocalVars.put(name, value);
+            } else if (line.charAt(0) == '#') {
+                if (overlay.mTitle != null || overlay.mHasLocalVars || !overlay.mLayers.isEmpty()) {
+                    throw new OverlayConfigException(
+                            "Unexpected overlay title.\nThere can be only one title per overlay, and it must be the first line. Did you forget an empty newline before starting a new overlay?",
+                            lineNumber
+                    );
+                }
+                final String title = line.substring(1).trim();
+                if (title.length() != 0) {
+                    overlay.mTitle = title;
+                }
+            } else {
+                overlay.mLayers.add(parseLayer(line, vars, lineNumber));
+            }
+        }
+
+        if (overlay.mHasLocalVars && overlay.mLayers.isEmpty() && overlay.mTitle == null) {
+            throw new OverlayConfigException(
+                    "Unexpected variable declaration.\nGlobal variables must be declared before all overlay blocks.",
+                    offset
+            );
+        }
+        return overlay;
+    }
+
+    /**
+     * Parse a layer line. Mirrors <code>RhythmOverlayInflater.parseConfigInternal()</code>.
+     */
+    private Layer parseLayer(String line, Map<String, String> vars, int lineNumber) throws OverlayConfigException {
+        final int len = line.length();
+        int start = skipSeparators(line, 0, len);
+        if (start == len) {
+            throw new OverlayConfigException(
+                    "Malformed spec layer declaration.\nExpected format is <layer_name> <arg1>=<val1> <arg2>=<val2>...",
+                    lineNumber
+            );
+        }
+
+        final int indent = start;
+        int end = findKeyEnd(line, start, len);
+        if (hasValue(line, end, len)) {
+            end = findTokenEnd(line, end + 1, len);
+        }
+        final Layer layer = new Layer(lineNumber, indent, line.substring(start, end));
+
+        while ((start = skipSeparators(line, end, len)) != len) {
+            end = findKeyEnd(line, start, len);
+            final String key = line.substring(start, end);
+            String value = null;
+            if (hasValue(line, end, len)) {
+                start = end + 1;
+                end = findTokenEnd(line, start, len);
+                value = resolveVariable(vars, line.substring(start, end), lineNumber);
+            }
+            // Same as putting into a hash map: the last value wins
+            layer.mArguments.remove(key);
+            layer.mArguments.put(key, value);
+        }
+
+        if (!mLayerTypes.contains(layer.mType)) {
+            throw new OverlayConfigException(
+                    "Unknown layer type \"" + layer.mType + "\".\nAvailable types are: " + mLayerTypes
+                            + ". If it's a custom layer, add its type to the task's customLayerTypes.",
+                    lineNumber
+            );
+        }
+        if (!mCustomLayerTypes.contains(layer.mType)) {
+            final ArgumentsDeclaration declaration = BundledLayerTypes.get(layer.mType);
+            if (declaration != null) {
+                checkArguments(layer, declaration, vars);
+            }
+        }
+        return layer;
+    }
+
+    /**
+     * Check arguments of a bundled layer the same way its factory's <code>ArgumentsSchema</code> would at runtime.
+     * Magic variables are only considered to supply required arguments missing from the line, since whether they are
+     * enabled depends on the inflater.
+     */
+    private static void checkArguments(Layer layer, ArgumentsDeclaration declaration, Map<String, String> vars)
+            throws OverlayConfigException {
+        final String layerType = layer.mType;
+        final Set<String> unknownArguments = new TreeSet<>();
+        for (String key : layer.mArguments.keySet()) {
+            if (declaration.indexOf(key) == -1) {
+                unknownArguments.add(key);
+            }
+        }
+        if (!unknownArguments.isEmpty()) {
+            throw new OverlayConfigException(
+                    "Error in " + layerType + " config: unknown arguments " + unknownArguments
+                            + ".\nSupported arguments are: " + declaration.getNames(),
+                    layer.mLineNumber
+            );
+        }
+
+        for (int i = 0, size = declaration.size(); i < size; i++) {
+            final String name = declaration.getName(i);
+            String value;
+            if (layer.mArguments.containsKey(name)) {
+                value = layer.mArguments.get(name);
+            } else if (declaration.isRequired(i)) {
+                final String magicVariable = toMagicVariable(layerType, name);
+                if (!vars.containsKey(magicVariable)) {
+                    throw new OverlayConfigException(
+                            "Error in " + layerType + " config: '" + name + "' argument is mandatory",
+                            layer.mLineNumber
+                    );
+                }
+                value = vars.get(magicVariable);
+            } else {
+                continue;
+            }
+            final int type = declaration.getType(i);
+            if (value != null && !ArgumentValues.isValid(value, type)) {
+                throw new OverlayConfigException(
+                        "Error in " + layerType + " config: '" + name + "' argument must be "
+                                + ArgumentValues.describe(type) + ", but was \"" + value + "\"",
+                        layer.mLineNumber
+                );
+            }
+        }
+    }
+
+    /**
+     * Get the name of magic variable for provided argument, i.e. <code>@{layer_type}_{arg_name}</code>
+     */
+    private static String toMagicVariable(String layerType, String argument) {
+        return ('@' + layerType + '_' + argument).replace('-', '_');
+    }
+
+    /**
+     * Generate a Java class with a static method per config, each returning the overlays built from that config
+     *
+     * @param packageName package of the class
+     * @param className   simple name of the class
+     * @param configs     parsed configs
+     * @return Java source code
+     */
+    public String generate(String packageName, String className, List<Config> configs) {
+        final StringBuilder out = new StringBuilder();
+        out.append("// Generated by GenerateRhythmOverlays task from res/raw overlay configs. Do not modify.\n");
+        out.append("package ").append(packageName).append(";\n\n");
+        out.append("import com.actinarium.rhythm.PrecompiledOverlays;\n");
+        out.append("import com.actinarium.rhythm.RhythmOverlay;\n");
+        out.append("import com.actinarium.rhythm.RhythmOverlayInflater;\n\n");
+        out.append("import java.util.List;\n\n");
+        out.append("public final class ").append(className).append(" {\n\n");
+        out.append("    private ").append(className).append("() {}\n");
+
+        for (Config config : configs) {
+            final String methodName = "inflate" + toCamelCase(config.mName);
+
+            out.append("\n    /**\n");
+            out.append("     * Build the overlays declared in <code>res/raw/").append(config.mName)
+                    .append("</code>.\n");
+            out.append("     * Same as <code>inflater.inflate(R.raw.").append(config.mName)
+                    .append(")</code>, but without reading and parsing the config.\n");
+            out.append("     */\n");
+            out.append("    public static List<RhythmOverlay> ").append(methodName)
+                    .append("(RhythmOverlayInflater inflater) {\n");
+            out.append("        PrecompiledOverlays overlays = new PrecompiledOverlays(inflater);\n");
+            if (!config.mGlobalVars.isEmpty()) {
+                out.append("        overlays.setGlobalVariables(");
+                appendPairs(out, config.mGlobalVars, "                ");
+                out.append(");\n");
+            }
+            // One method per overlay to stay well below the 64K bytecode limit per method
+            for (int i = 0; i < config.mOverlays.size(); i++) {
+                out.append("        ").append(methodName).append(i).append("(overlays);\n");
+            }
+            out.append("        return overlays.finish();\n");
+            out.append("    }\n");
+
+            for (int i = 0; i < config.mOverlays.size(); i++) {
+                final Overlay overlay = config.mOverlays.get(i);
+                out.append("\n    private static void ").append(methodName).append(i)
+                        .append("(PrecompiledOverlays overlays) {\n");
+                out.append("        overlays.startOverlay(").append(overlay.mLineNumber).append(", ")
+                        .append(toJavaLiteral(overlay.mTitle));
+                if (!overlay.mLocalVars.isEmpty()) {
+                    out.append(", ");
+                    appendPairs(out, overlay.mLocalVars, "                ");
+                }
+                out.append(");\n");
+                for (Layer layer : overlay.mLayers) {
+                    out.append("        overlays.addLayer(").append(layer.mLineNumber).append(", ")
+                            .append(layer.mIndent).append(", ").append(toJavaLiteral(layer.mType));
+                    if (!layer.mArguments.isEmpty()) {
+                        out.append(", ");
+                        appendPairs(out, layer.mArguments, null);
+                    }
+                    out.append(");\n");
+                }
+                out.append("    }\n");
+            }
+        }
+
+        out.append("}\n");
+        return out.toString();
+    }
+
+    private static void appendPairs(StringBuilder out, Map<String, String> pairs, String continuationIndent) {
+        boolean isFirst = true;
+        for (Map.Entry<String, String> entry : pairs.entrySet()) {
+            if (!isFirst) {
+                out.append(continuationIndent != null ? ",\n" + continuationIndent : ", ");
+            }
+            out.append(toJavaLiteral(entry.getKey())).append(", ").append(toJavaLiteral(entry.getValue()));
+            isFirst = false;
+        }
+    }
+
+    /**
+     * Convert a raw resource name like <code>overlay_config</code> to <code>OverlayConfig</code>
+     */
+    static String toCamelCase(String name) {
+        final StringBuilder builder = new StringBuilder(name.length());
+        boolean isWordStart = true;
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (!Character.isJavaIdentifierPart(c) || c == '_' || c == '$') {
+                isWordStart = true;
+            } else {
+                builder.append(isWordStart ? Character.toUpperCase(c) : c);
+                isWordStart = false;
+            }
+        }
+        return builder.toString();
+    }
+
+    static String toJavaLiteral(String value) {
+        if (value == null) {
+            return "null";
+        }
+        final StringBuilder builder = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7E) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    /**
+     * Resolve a variable reference. Mirrors <code>RhythmOverlayInflater.resolveVariableInternal()</code>.
+     */
+    private static String resolveVariable(Map<String, String> vars, String value, int lineNumber)
+            throws OverlayConfigException {
+        if (value != null && value.length() != 0 && value.charAt(0) == '@') {
+            if (!vars.containsKey(value)) {
+                throw new OverlayConfigException("Cannot resolve variable " + value, lineNumber);
+            }
+            return vars.get(value);
+        }
+        return value;
+    }
+
+    /**
+     * A parsed config file
+     */
+    public static class Config {
+        final String mName;
+        final Map<String, String> mGlobalVars = new LinkedHashMap<>();
+        final List<Overlay> mOverlays = new ArrayList<>();
+
+        Config(String name) {
+            mName = name;
+        }
+    }
+
+    static class Overlay {
+        final int mLineNumber;
+        final Map<String, String> mLocalVars = new LinkedHashMap<>();
+        final List<Layer> mLayers = new ArrayList<>();
+        String mTitle;
+        boolean mHasLocalVars;
+
+        Overlay(int lineNumber) {
+            mLineNumber = lineNumber;
+        }
+    }
+
+    static class Layer {
+        final int mLineNumber;
+        final int mIndent;
+        final String mType;
+        final Map<String, String> mArguments = new LinkedHashMap<>();
+
+        Layer(int lineNumber, int indent, String type) {
+            mLineNumber = lineNumber;
+            mIndent = indent;
+            mType = type;
+        }
+    }
+
+}
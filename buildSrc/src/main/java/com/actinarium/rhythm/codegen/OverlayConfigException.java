@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm.codegen;
+
+/**
+ * Thrown when an overlay config can't be compiled because of a syntax error. The message has the same format as the
+ * one of <code>RhythmInflationException</code>.
+ *
+ * @author Paul Danyliuk
+ */
+public class OverlayConfigException extends Exception {
+
+    private final int mLineNumber;
+
+    /**
+     * @param detailMessage error message
+     * @param index         index of the line where the error happened, zero-based
+     */
+    public OverlayConfigException(String detailMessage, int index) {
+        super(detailMessage);
+        mLineNumber = index + 1;
+    }
+
+    /**
+     * @return one-based number of the line where the error happened
+     */
+    public int getLineNumber() {
+        return mLineNumber;
+    }
+
+    @Override
+    public String getMessage() {
+        return "Line " + mLineNumber + ": " + super.getMessage();
+    }
+}
@@ -37,7 +37,9 @@ import java.lang.annotation.RetentionPolicy;
  * A {@link FrameLayout} implementation with rich Rhythm support. You can use this layout to wrap existing views and
  * draw a Rhythm overlay from specified group. The overlay can be positioned either under the view, over the view, or
  * just under/over the content (see {@link #setOverlayPosition(int)}). Both the group and overlay position can be set in
- * the layout XML with attributes <code>app:rhythmGroup</code> and <code>app:overlayPosition</code> respectively.
+ * the layout XML with attributes <code>app:rhythmGroup</code> and <code>app:overlayPosition</code> respectively. If the
+ * overlay is heavy or the layout is redrawn often (e.g. runs animations), the overlay can be cached with
+ * <code>app:overlayCacheMode</code> (see {@link #setOverlayCacheMode(int)}).
  *
  * @author Paul Danyliuk
  * @version $Id$
@@ -77,6 +79,8 @@ public class RhythmFrameLayout extends FrameLayout {
     protected int mRhythmGroupIndex;
     @OverlayPosition
     protected int mOverlayPosition;
+    @RhythmDrawable.CacheMode
+    protected int mOverlayCacheMode = RhythmDrawable.CACHE_MODE_NONE;
 
     /**
      * Obtained from {@link RhythmGroup}, which then controls this drawable, telling it what {@link RhythmOverlay} to
@@ -132,6 +136,14 @@ public class RhythmFrameLayout extends FrameLayout {
                 setWillNotDraw(false);
             }
 
+            int cacheMode = array.getInteger(R.styleable.RhythmFrameLayout_overlayCacheMode,
+                    RhythmDrawable.CACHE_MODE_NONE);
+            if (cacheMode == RhythmDrawable.CACHE_MODE_BITMAP || cacheMode == RhythmDrawable.CACHE_MODE_DISPLAY_LIST
+                    || cacheMode == RhythmDrawable.CACHE_MODE_COMPILED) {
+                //noinspection ResourceType
+                mOverlayCacheMode = cacheMode;
+            }
+
             mRhythmGroupIndex = array.getInteger(R.styleable.RhythmFrameLayout_rhythmGroup, NO_GROUP);
         } finally {
             array.recycle();
@@ -263,6 +275,31 @@ public class RhythmFrameLayout extends FrameLayout {
         }
     }
 
+    /**
+     * @return Cache mode of the overlay drawable
+     * @see RhythmDrawable#setCacheMode(int)
+     */
+    @RhythmDrawable.CacheMode
+    public int getOverlayCacheMode() {
+        return mOverlayCacheMode;
+    }
+
+    /**
+     * Set how the overlay is cached between frames. Applied to the current and any future Rhythm drawable of this view.
+     *
+     * @param overlayCacheMode New cache mode, one of cache mode constants of {@link RhythmDrawable}
+     * @see RhythmDrawable#CACHE_MODE_NONE
+     * @see RhythmDrawable#CACHE_MODE_BITMAP
+     * @see RhythmDrawable#CACHE_MODE_DISPLAY_LIST
+     * @see RhythmDrawable#CACHE_MODE_COMPILED
+     */
+    public void setOverlayCacheMode(@RhythmDrawable.CacheMode int overlayCacheMode) {
+        mOverlayCacheMode = overlayCacheMode;
+        if (mRhythmDrawable != null) {
+            mRhythmDrawable.setCacheMode(overlayCacheMode);
+        }
+    }
+
     /**
      * Retrieves proper drawable from current group and links it to this view
      */
@@ -289,9 +326,11 @@ public class RhythmFrameLayout extends FrameLayout {
     private void doSetRhythmDrawable(@Nullable RhythmDrawable drawable) {
         if (mRhythmDrawable != null) {
             mRhythmDrawable.setCallback(null);
+            mRhythmDrawable.releaseCache();
         }
         mRhythmDrawable = drawable;
         if (mRhythmDrawable != null) {
+            mRhythmDrawable.setCacheMode(mOverlayCacheMode);
             mRhythmDrawable.setBounds(mBounds);
             mRhythmDrawable.setCallback(this);
         }
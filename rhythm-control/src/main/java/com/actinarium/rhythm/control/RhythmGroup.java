@@ -17,10 +17,16 @@
 package com.actinarium.rhythm.control;
 
 import android.graphics.drawable.Drawable;
+import android.support.annotation.Nullable;
+import android.util.Log;
 import android.view.View;
 import android.widget.FrameLayout;
+import com.actinarium.rhythm.LazyRhythmOverlay;
+import com.actinarium.rhythm.PendingOverlays;
 import com.actinarium.rhythm.RhythmDrawable;
+import com.actinarium.rhythm.RhythmInflationException;
 import com.actinarium.rhythm.RhythmOverlay;
+import com.actinarium.rhythm.RhythmOverlayInflater;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
@@ -43,6 +49,8 @@ public final class RhythmGroup {
 
     public static int NO_OVERLAY = -1;
 
+    public static final String LOG_TAG = "RhythmGroup";
+
     private static final int ESTIMATED_OVERLAYS_PER_GROUP = 4;
 
     String mTitle;
@@ -114,6 +122,50 @@ public final class RhythmGroup {
         return this;
     }
 
+    /**
+     * Add Rhythm overlays that are being inflated asynchronously to this group. The overlays will be added once they
+     * are inflated, so until then the group stays as is (e.g. empty), and the drawables controlled by this group show
+     * nothing. If inflation fails, the error is logged with {@link #LOG_TAG} tag and the group stays as is. Use {@link
+     * #addOverlays(PendingOverlays, PendingOverlays.Callback)} to handle the error yourself.
+     *
+     * @param pendingOverlays Handle returned by {@link RhythmOverlayInflater#inflateAsync(int)} or similar
+     * @return this for chaining
+     */
+    public RhythmGroup addOverlays(PendingOverlays pendingOverlays) {
+        return addOverlays(pendingOverlays, null);
+    }
+
+    /**
+     * Add Rhythm overlays that are being inflated asynchronously to this group, same as {@link
+     * #addOverlays(PendingOverlays)}, and notify provided callback once they are added or inflation fails
+     *
+     * @param pendingOverlays Handle returned by {@link RhythmOverlayInflater#inflateAsync(int)} or similar
+     * @param callback        Callback to notify on the main thread after the overlays are added to this group, or if
+     *                        inflation fails. If <code>null</code>, inflation errors are logged.
+     * @return this for chaining
+     */
+    public RhythmGroup addOverlays(PendingOverlays pendingOverlays, @Nullable final PendingOverlays.Callback callback) {
+        pendingOverlays.addCallback(new PendingOverlays.Callback() {
+            @Override
+            public void onOverlaysInflated(List<RhythmOverlay> overlays) {
+                addOverlays(overlays);
+                if (callback != null) {
+                    callback.onOverlaysInflated(overlays);
+                }
+            }
+
+            @Override
+            public void onInflationFailed(RhythmInflationException error) {
+                if (callback != null) {
+                    callback.onInflationFailed(error);
+                } else {
+                    Log.e(LOG_TAG, "Cannot inflate overlays for " + RhythmGroup.this, error);
+                }
+            }
+        });
+        return this;
+    }
+
     /**
      * Make a new {@link RhythmDrawable} that will draw the group’s active {@link RhythmOverlay} and can be used as any
      * other {@link Drawable} in Android SDK. You must always make separate drawables for using them in different
@@ -196,8 +248,7 @@ public final class RhythmGroup {
     public void selectOverlay(int index) {
         if (index == NO_OVERLAY || (index >= 0 && index < mOverlays.size())) {
             if (mCurrentOverlayIndex != index) {
-                mCurrentOverlayIndex = index;
-                doSetOverlay(getCurrentOverlay());
+                doSelectOverlay(index);
             }
         } else {
             throw new IndexOutOfBoundsException("The index is neither NO_OVERLAY nor valid.");
@@ -211,20 +262,21 @@ public final class RhythmGroup {
      * @see #selectOverlay(int)
      */
     public void selectNextOverlay() {
+        int nextIndex;
         if (mCurrentOverlayIndex == NO_OVERLAY) {
             if (mOverlays.isEmpty()) {
                 // Still no overlay, so no-op.
                 return;
             }
-            mCurrentOverlayIndex = 0;
+            nextIndex = 0;
         } else {
-            mCurrentOverlayIndex = ++mCurrentOverlayIndex % mOverlays.size();
+            nextIndex = (mCurrentOverlayIndex + 1) % mOverlays.size();
             // Disabling overlay after the last one
-            if (mCurrentOverlayIndex == 0) {
-                mCurrentOverlayIndex = NO_OVERLAY;
+            if (nextIndex == 0) {
+                nextIndex = NO_OVERLAY;
             }
         }
-        doSetOverlay(getCurrentOverlay());
+        doSelectOverlay(nextIndex);
     }
 
     @Override
@@ -232,6 +284,21 @@ public final class RhythmGroup {
         return mTitle != null ? mTitle : "Group #" + mIndex;
     }
 
+    /**
+     * Make the overlay at provided index current. If the overlay was inflated lazily, it's inflated first, so that if
+     * inflation fails, the group and its drawables stay with the previous overlay.
+     *
+     * @param index Valid overlay index, or {@link #NO_OVERLAY}
+     */
+    private void doSelectOverlay(int index) {
+        final RhythmOverlay overlay = index != NO_OVERLAY ? mOverlays.get(index) : null;
+        if (overlay instanceof LazyRhythmOverlay) {
+            ((LazyRhythmOverlay) overlay).inflate();
+        }
+        mCurrentOverlayIndex = index;
+        doSetOverlay(overlay);
+    }
+
     /**
      * Propagates current overlay to all linked {@link RhythmDrawable}s, removing dead references on the way. Also
      * updates the notification to reflect current overlay’s name
@@ -29,10 +29,12 @@ import java.util.List;
  *
  * @author Paul Danyliuk
  */
-public abstract class AbstractSpecLayerGroup<T extends AbstractSpecLayerGroup> implements RhythmSpecLayerParent {
+public abstract class AbstractSpecLayerGroup<T extends AbstractSpecLayerGroup>
+        implements RhythmSpecLayerParent, BoundsAwareSpecLayer, CompilableSpecLayer {
 
     protected static final int ESTIMATED_AVG_LAYERS = 8;
     protected List<RhythmSpecLayer> mLayers;
+    protected boolean mIsFrozen;
 
     public AbstractSpecLayerGroup() {
         mLayers = new ArrayList<>(ESTIMATED_AVG_LAYERS);
@@ -49,6 +51,48 @@ public abstract class AbstractSpecLayerGroup<T extends AbstractSpecLayerGroup> i
         }
     }
 
+    /**
+     * Add all children to the compiler in order. Groups that draw their children within modified bounds or clip them
+     * should do the same here.
+     *
+     * @param compiler       compiler to add primitives to
+     * @param drawableBounds Bounds this group is going to be drawn within
+     */
+    @Override
+    public void compile(OverlayCompiler compiler, Rect drawableBounds) {
+        for (int i = 0, size = mLayers.size(); i < size; i++) {
+            compiler.addLayer(mLayers.get(i), drawableBounds);
+        }
+    }
+
+    /**
+     * Groups aren't compiled by default, as the compiler can't tell whether a subclass draws its children the way
+     * {@link #compile(OverlayCompiler, Rect)} adds them. Subclasses should opt in by returning <code>getClass() ==
+     * MyGroup.class</code> once they override both methods consistently.
+     *
+     * @return false by default
+     */
+    @Override
+    public boolean isCompilable() {
+        return false;
+    }
+
+    /**
+     * Pass the bounds to all {@link BoundsAwareSpecLayer bounds-aware} children. Groups that draw their children within
+     * modified bounds should pass those instead.
+     *
+     * @param drawableBounds Bounds this group is going to be drawn within
+     */
+    @Override
+    public void onBoundsChanged(Rect drawableBounds) {
+        for (int i = 0, size = mLayers.size(); i < size; i++) {
+            final RhythmSpecLayer layer = mLayers.get(i);
+            if (layer instanceof BoundsAwareSpecLayer) {
+                ((BoundsAwareSpecLayer) layer).onBoundsChanged(drawableBounds);
+            }
+        }
+    }
+
     /**
      * Add a spec layer to this group. <b>Note:</b> by default, calling this method DOESN'T trigger redraw. If you are
      * calling this when overlay is already displayed and want to have changes displayed immediately, you also must call
@@ -56,14 +100,40 @@ public abstract class AbstractSpecLayerGroup<T extends AbstractSpecLayerGroup> i
      *
      * @param layer A Rhythm spec layer
      * @return this for chaining
+     * @throws IllegalStateException if this group is {@linkplain #freeze() frozen}
      */
     @SuppressWarnings("unchecked")
     @Override
     public T addLayer(RhythmSpecLayer layer) {
+        if (mIsFrozen) {
+            throw new IllegalStateException("This layer group is frozen and cannot be modified");
+        }
         mLayers.add(layer);
         return (T) this;
     }
 
+    /**
+     * Prevent adding any more layers to this group. Used by {@link RhythmOverlayInflater} when sharing identical
+     * subtrees between overlays, so that changing one overlay won't affect the others.
+     *
+     * @return this for chaining
+     * @see RhythmOverlayInflater#setSubtreeSharingEnabled(boolean)
+     */
+    @SuppressWarnings("unchecked")
+    public T freeze() {
+        mIsFrozen = true;
+        return (T) this;
+    }
+
+    /**
+     * Check whether this group is frozen, i.e. may be shared between overlays and must not be modified
+     *
+     * @return true if no more layers can be added to this group
+     */
+    public boolean isFrozen() {
+        return mIsFrozen;
+    }
+
     /**
      * Return the number of children in this layer group
      * @return number of children
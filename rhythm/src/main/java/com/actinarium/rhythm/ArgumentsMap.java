@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.actinarium.rhythm;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A compact map of layer arguments, backed by parallel key and value arrays. Layer lines rarely have more than a
+ * handful of arguments, so a linear scan is as fast as hashing, and the map takes a couple of arrays instead of a hash
+ * table with an entry object per argument. Equal to (and has the same hash code as) any other map with the same
+ * mappings. Meant to be filled once and then only read.
+ *
+ * @author Paul Danyliuk
+ */
+final class ArgumentsMap extends AbstractMap<String, String> {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private String[] mKeys;
+    private String[] mValues;
+    private int mSize;
+
+    ArgumentsMap() {
+        this(INITIAL_CAPACITY);
+    }
+
+    ArgumentsMap(int capacity) {
+        mKeys = new String[capacity];
+        mValues = new String[capacity];
+    }
+
+    private int indexOf(Object key) {
+        // Keys are mostly pooled tokens or constants, so try identity first
+        for (int i = 0; i < mSize; i++) {
+            if (mKeys[i] == key) {
+                return i;
+            }
+        }
+        if (key != null) {
+            for (int i = 0; i < mSize; i++) {
+                if (key.equals(mKeys[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String get(Object key) {
+        final int index = indexOf(key);
+        return index != -1 ? mValues[index] : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) != -1;
+    }
+
+    @Override
+    public String put(String key, String value) {
+        final int index = indexOf(key);
+        if (index != -1) {
+            final String previous = mValues[index];
+            mValues[index] = value;
+            return previous;
+        }
+        if (mSize == mKeys.length) {
+            final int newCapacity = Math.max(mSize * 2, INITIAL_CAPACITY);
+            final String[] newKeys = new String[newCapacity];
+            final String[] newValues = new String[newCapacity];
+            System.arraycopy(mKeys, 0, newKeys, 0, mSize);
+            System.arraycopy(mValues, 0, newValues, 0, mSize);
+            mKeys = newKeys;
+            mValues = newValues;
+        }
+        mKeys[mSize] = key;
+        mValues[mSize] = value;
+        mSize++;
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<Entry<String, String>>() {
+                    private int mIndex;
+
+                    @Override
+                    public boolean hasNext() {
+                        return mIndex < mSize;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (mIndex >= mSize) {
+                            throw new NoSuchElementException();
+                        }
+                        final int index = mIndex++;
+                        return new ArgumentEntry(mKeys[index], mValues[index]);
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return mSize;
+            }
+        };
+    }
+
+    // Cache lookups compare and hash bundles by their arguments, so do that without iterating over entries
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (!(o instanceof ArgumentsMap)) { return super.equals(o); }
+        ArgumentsMap that = (ArgumentsMap) o;
+        if (mSize != that.mSize) {
+            return false;
+        }
+        for (int i = 0; i < mSize; i++) {
+            final int index = that.indexOf(mKeys[i]);
+            if (index == -1 || !equal(mValues[i], that.mValues[index])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // Same as specified by Map#hashCode()
+        int hashCode = 0;
+        for (int i = 0; i < mSize; i++) {
+            hashCode += hashCode(mKeys[i]) ^ hashCode(mValues[i]);
+        }
+        return hashCode;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static int hashCode(String string) {
+        return string != null ? string.hashCode() : 0;
+    }
+
+    /**
+     * Read-only entry, since AbstractMap.SimpleImmutableEntry is only available since API 9
+     */
+    private static final class ArgumentEntry implements Map.Entry<String, String> {
+
+        private final String mKey;
+        private final String mValue;
+
+        private ArgumentEntry(String key, String value) {
+            mKey = key;
+            mValue = value;
+        }
+
+        @Override
+        public String getKey() {
+            return mKey;
+        }
+
+        @Override
+        public String getValue() {
+            return mValue;
+        }
+
+        @Override
+        public String setValue(String value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) { return true; }
+            if (!(o instanceof Map.Entry)) { return false; }
+            Map.Entry that = (Map.Entry) o;
+            return equal(mKey, that.getKey()) && equal(mValue, that.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return ArgumentsMap.hashCode(mKey) ^ ArgumentsMap.hashCode(mValue);
+        }
+    }
+
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.actinarium.rhythm.config.ArgumentValues;
+import com.actinarium.rhythm.config.ArgumentsDeclaration;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * <p>Declaration of arguments accepted by a {@link SchemaSpecLayerFactory}: their names, types, default values, and
+ * whether they are required. Each argument gets a slot index in the order of declaration, which is then used to read
+ * its value from {@link IndexedArgumentsBundle}. Declare the schema once per factory, e.g.:</p>
+ * <pre><code>
+ * private static final ArgumentsSchema SCHEMA = new ArgumentsSchema("my-layer")
+ *         .addRequired("size", ArgumentsSchema.TYPE_DIMENSION)
+ *         .add("color", ArgumentsSchema.TYPE_COLOR, "#80FF0000");
+ * private static final int SLOT_SIZE = SCHEMA.indexOf("size");
+ * private static final int SLOT_COLOR = SCHEMA.indexOf("color");
+ * </code></pre>
+ * <p>Declare all arguments before the schema is used &mdash; after that it's shared between threads and must not be
+ * modified. A schema can have at most {@link #MAX_ARGUMENTS} arguments.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public class ArgumentsSchema {
+
+    /**
+     * Maximum number of arguments in a schema
+     */
+    public static final int MAX_ARGUMENTS = 64;
+
+    public static final int TYPE_STRING = ArgumentValues.TYPE_STRING;
+    public static final int TYPE_INT = ArgumentValues.TYPE_INT;
+    public static final int TYPE_FLOAT = ArgumentValues.TYPE_FLOAT;
+    public static final int TYPE_BOOLEAN = ArgumentValues.TYPE_BOOLEAN;
+    public static final int TYPE_COLOR = ArgumentValues.TYPE_COLOR;
+    public static final int TYPE_GRAVITY = ArgumentValues.TYPE_GRAVITY;
+    public static final int TYPE_EDGE = ArgumentValues.TYPE_EDGE;
+    public static final int TYPE_DIMENSION = ArgumentValues.TYPE_DIMENSION;
+
+    protected final String mLayerType;
+    protected final List<String> mNames = new ArrayList<>();
+    protected final List<Integer> mTypes = new ArrayList<>();
+    protected final List<String> mDefaultValues = new ArrayList<>();
+    protected long mRequiredMask;
+
+    /**
+     * Create an empty arguments schema
+     *
+     * @param layerType layer type of the factory, used in error messages
+     */
+    public ArgumentsSchema(@NonNull String layerType) {
+        mLayerType = layerType;
+    }
+
+    /**
+     * Create a schema with arguments of the plain declaration, none of which has a default value
+     *
+     * @param declaration arguments declaration, e.g. one of {@link com.actinarium.rhythm.config.BundledLayerTypes}
+     */
+    public ArgumentsSchema(@NonNull ArgumentsDeclaration declaration) {
+        this(declaration.getLayerType());
+        for (int i = 0, size = declaration.size(); i < size; i++) {
+            add(declaration.getName(i), declaration.getType(i), null, declaration.isRequired(i));
+        }
+    }
+
+    /**
+     * Declare an optional argument without a default value
+     *
+     * @param name argument name
+     * @param type argument type, used to validate its value
+     * @return this for chaining
+     */
+    public ArgumentsSchema add(@NonNull String name, @ArgumentType int type) {
+        return add(name, type, null, false);
+    }
+
+    /**
+     * Declare an optional argument with a default value
+     *
+     * @param name         argument name
+     * @param type         argument type, used to validate its value
+     * @param defaultValue value in config syntax (e.g. <code>16dp</code>) to use if the argument is not declared
+     * @return this for chaining
+     */
+    public ArgumentsSchema add(@NonNull String name, @ArgumentType int type, @Nullable String defaultValue) {
+        return add(name, type, defaultValue, false);
+    }
+
+    /**
+     * Declare a required argument. Layer config lines missing this argument are rejected.
+     *
+     * @param name argument name
+     * @param type argument type, used to validate its value
+     * @return this for chaining
+     */
+    public ArgumentsSchema addRequired(@NonNull String name, @ArgumentType int type) {
+        return add(name, type, null, true);
+    }
+
+    private ArgumentsSchema add(String name, int type, String defaultValue, boolean isRequired) {
+        if (mNames.size() == MAX_ARGUMENTS) {
+            throw new IllegalStateException("Schema of " + mLayerType + " cannot have more than " + MAX_ARGUMENTS
+                    + " arguments");
+        }
+        if (mNames.contains(name)) {
+            throw new IllegalArgumentException("Argument " + name + " is already declared in " + mLayerType);
+        }
+        if (isRequired) {
+            mRequiredMask |= 1L << mNames.size();
+        }
+        mNames.add(name);
+        mTypes.add(type);
+        mDefaultValues.add(defaultValue);
+        return this;
+    }
+
+    /**
+     * @return number of declared arguments
+     */
+    public int size() {
+        return mNames.size();
+    }
+
+    /**
+     * Get slot index of the argument
+     *
+     * @param name argument name
+     * @return slot index, or -1 if there's no such argument in this schema
+     */
+    public int indexOf(String name) {
+        return mNames.indexOf(name);
+    }
+
+    /**
+     * Get slot index of the argument whose name is in the given range of the line, without allocating a substring
+     */
+    int indexOf(String line, int start, int end) {
+        final int length = end - start;
+        for (int i = 0, size = mNames.size(); i < size; i++) {
+            final String name = mNames.get(i);
+            if (name.length() == length && name.regionMatches(0, line, start, length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String getName(int index) {
+        return mNames.get(index);
+    }
+
+    @ArgumentType
+    public int getType(int index) {
+        return mTypes.get(index);
+    }
+
+    public String getDefaultValue(int index) {
+        return mDefaultValues.get(index);
+    }
+
+    public boolean isRequired(int index) {
+        return (mRequiredMask & (1L << index)) != 0;
+    }
+
+    /**
+     * Get arguments from provided bundle as an {@link IndexedArgumentsBundle} of this schema, validating them. If the
+     * bundle is already an indexed bundle of this schema, it's returned as is, since it's validated on creation.
+     *
+     * @param argsBundle bundle passed to the factory
+     * @return indexed bundle with the same arguments
+     * @throws RhythmInflationException if the arguments don't conform to this schema
+     */
+    public IndexedArgumentsBundle bind(@NonNull ArgumentsBundle argsBundle) {
+        if (argsBundle instanceof IndexedArgumentsBundle && ((IndexedArgumentsBundle) argsBundle).mSchema == this) {
+            return (IndexedArgumentsBundle) argsBundle;
+        }
+
+        // Explicitly declared arguments of simple bundles can be checked for unknown ones. Other bundles can't be
+        // enumerated, so we can only pick the arguments we know
+        if (argsBundle instanceof SimpleArgumentsBundle) {
+            List<String> unknownArguments = null;
+            for (String key : ((SimpleArgumentsBundle) argsBundle).mArguments.keySet()) {
+                if (indexOf(key) == -1) {
+                    if (unknownArguments == null) {
+                        unknownArguments = new ArrayList<>();
+                    }
+                    unknownArguments.add(key);
+                }
+            }
+            if (unknownArguments != null) {
+                throw unknownArguments(unknownArguments);
+            }
+        }
+
+        final String[] values = new String[size()];
+        long declaredMask = 0;
+        for (int i = 0; i < values.length; i++) {
+            final String name = mNames.get(i);
+            if (argsBundle.hasArgument(name)) {
+                values[i] = argsBundle.getString(name);
+                declaredMask |= 1L << i;
+            }
+        }
+        return new IndexedArgumentsBundle(this, values, declaredMask, argsBundle.getDisplayMetrics());
+    }
+
+    /**
+     * Create an exception to report that the arguments are not declared in this schema
+     *
+     * @param names names of unknown arguments
+     * @return exception to throw
+     */
+    RhythmInflationException unknownArguments(Collection<String> names) {
+        return new RhythmInflationException(
+                "Error in " + mLayerType + " config: unknown arguments " + new TreeSet<>(names)
+                        + ".\nSupported arguments are: " + mNames
+        );
+    }
+
+    /**
+     * Fill in default values and check that required arguments are declared and values are of declared types
+     *
+     * @param values       argument values by slot, defaults are filled in place
+     * @param declaredMask bit mask of declared arguments
+     * @throws RhythmInflationException if the arguments don't conform to this schema
+     */
+    void validate(String[] values, long declaredMask) {
+        if (values.length != size()) {
+            throw new IllegalArgumentException("Expected " + size() + " values for " + mLayerType + " schema");
+        }
+        for (int i = 0; i < values.length; i++) {
+            final long bit = 1L << i;
+            if ((declaredMask & bit) == 0) {
+                if ((mRequiredMask & bit) != 0) {
+                    throw new RhythmInflationException(
+                            "Error in " + mLayerType + " config: '" + mNames.get(i) + "' argument is mandatory"
+                    );
+                }
+                values[i] = mDefaultValues.get(i);
+            } else if (values[i] != null && !ArgumentValues.isValid(values[i], mTypes.get(i))) {
+                throw new RhythmInflationException(
+                        "Error in " + mLayerType + " config: '" + mNames.get(i) + "' argument must be "
+                                + ArgumentValues.describe(mTypes.get(i)) + ", but was \"" + values[i] + "\""
+                );
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ArgumentsSchema{" + mLayerType + mNames + '}';
+    }
+
+    /**
+     * Type definition for argument types
+     */
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({TYPE_STRING, TYPE_INT, TYPE_FLOAT, TYPE_BOOLEAN, TYPE_COLOR, TYPE_GRAVITY, TYPE_EDGE, TYPE_DIMENSION})
+    public @interface ArgumentType {
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+/**
+ * <p>A {@link RhythmSpecLayer} that computes its geometry (line positions, label layouts etc) ahead of drawing, so that
+ * {@link #draw(Canvas, Rect)} only has to replay it. {@link RhythmDrawable} reports its bounds to the overlay whenever
+ * they change, and {@link AbstractSpecLayerGroup groups} pass them down to their children, adjusting them the same way
+ * they do when drawing. Layers that don't implement this interface simply compute everything on each draw.</p><p>Since
+ * spec layers can be shared between drawables (and are drawn within different bounds e.g. in each column of {@link
+ * com.actinarium.rhythm.layer.Columns}), the bounds passed to <code>draw()</code> aren't guaranteed to be the last
+ * ones passed to {@link #onBoundsChanged(Rect)}. Implementations must keep the bounds the geometry was computed for,
+ * and compute it again in <code>draw()</code> if they differ. Same goes for configuration changes after the layer has
+ * been laid out.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public interface BoundsAwareSpecLayer extends RhythmSpecLayer {
+
+    /**
+     * Compute and keep the geometry of this layer for provided bounds, so that drawing within the same bounds is as
+     * cheap as possible
+     *
+     * @param drawableBounds Bounds this layer is going to be drawn within
+     */
+    void onBoundsChanged(Rect drawableBounds);
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+/**
+ * <p>A {@link RhythmSpecLayer} that can describe what it draws as primitives (rects, lines, text, clips) instead of
+ * drawing them, so that {@link RhythmOverlay#compile(Rect)} can flatten the whole layer tree into a {@link
+ * CompiledOverlay}. Layers that don't implement this interface are still drawn in their place by calling {@link
+ * #draw(Canvas, Rect)}.</p><p>The primitives must produce exactly the same pixels as <code>draw()</code> within the
+ * same bounds. Since a subclass may override <code>draw()</code> but not {@link #compile(OverlayCompiler, Rect)},
+ * compiling is opt-in per class: the compiler only compiles layers whose {@link #isCompilable()} returns true, and
+ * draws the rest as is.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public interface CompilableSpecLayer extends RhythmSpecLayer {
+
+    /**
+     * Add the primitives this layer would draw within provided bounds to the compiler
+     *
+     * @param compiler       compiler to add primitives to
+     * @param drawableBounds Bounds where this layer should draw itself. May be modified after this method returns, so
+     *                       copy it if needed.
+     */
+    void compile(OverlayCompiler compiler, Rect drawableBounds);
+
+    /**
+     * Whether this layer can be compiled with {@link #compile(OverlayCompiler, Rect)}. Implementations should return
+     * true only if the layer's runtime class is the one declaring <code>compile()</code>, e.g. <code>return getClass()
+     * == Fill.class;</code>, so that subclasses overriding <code>draw()</code> are drawn as is unless they opt in too.
+     *
+     * @return true if the compiled primitives of this layer match what it draws, false to draw it as is
+     */
+    boolean isCompilable();
+
+}
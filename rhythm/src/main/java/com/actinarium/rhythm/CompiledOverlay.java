@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.text.Layout;
+
+/**
+ * <p>An overlay flattened for particular bounds by {@link RhythmOverlay#compile(Rect)}: a list of primitive operations
+ * (rects, lines, text runs, clips) stored in flat arrays, which is drawn in a single loop instead of walking the layer
+ * tree. Layers that can't be compiled are drawn in their place as usual.</p><p>A compiled overlay captures the
+ * geometry of the layers at the time of compiling, so it must be compiled again after the layers are modified, see
+ * {@link RhythmOverlay#invalidateCompiled()}. Paints and text layouts are not copied though but shared with the
+ * layers, so changes to a layer's paint (e.g. its color) show up without recompiling.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public final class CompiledOverlay {
+
+    private final byte[] mOps;
+    private final Paint[] mPaints;
+    private final float[] mRects;
+    private final int[] mRectPaints;
+    private final float[] mLinePoints;
+    private final int[] mLineRanges;
+    private final int[] mLinePaints;
+    private final Layout[] mTexts;
+    private final float[] mTextOrigins;
+    private final int[] mClips;
+    private final RhythmSpecLayer[] mLayers;
+    private final Rect[] mLayerBounds;
+
+    CompiledOverlay(OverlayCompiler compiler) {
+        mOps = new byte[compiler.mOpCount];
+        System.arraycopy(compiler.mOps, 0, mOps, 0, mOps.length);
+        mPaints = compiler.mPaints.toArray(new Paint[compiler.mPaints.size()]);
+        mRects = copyOf(compiler.mRects, compiler.mRectCount * 4);
+        mRectPaints = copyOf(compiler.mRectPaints, compiler.mRectCount);
+        mLinePoints = copyOf(compiler.mLinePoints, compiler.mLinePointCount);
+        mLineRanges = copyOf(compiler.mLineRanges, compiler.mLineCount * 2);
+        mLinePaints = copyOf(compiler.mLinePaints, compiler.mLineCount);
+        mTexts = compiler.mTexts.toArray(new Layout[compiler.mTexts.size()]);
+        mTextOrigins = copyOf(compiler.mTextOrigins, mTexts.length * 2);
+        mClips = copyOf(compiler.mClips, compiler.mClipCount * 4);
+        mLayers = compiler.mLayers.toArray(new RhythmSpecLayer[compiler.mLayers.size()]);
+        mLayerBounds = compiler.mLayerBounds.toArray(new Rect[compiler.mLayerBounds.size()]);
+    }
+
+    /**
+     * Draw the overlay to provided canvas, same as {@link RhythmOverlay#draw(Canvas, Rect)} would within the bounds it
+     * was compiled for
+     *
+     * @param canvas Canvas to draw the overlay to
+     */
+    public void draw(Canvas canvas) {
+        int rect = 0;
+        int lines = 0;
+        int text = 0;
+        int clip = 0;
+        int layer = 0;
+        for (byte op : mOps) {
+            switch (op) {
+                case OverlayCompiler.OP_RECT:
+                    canvas.drawRect(mRects[rect * 4], mRects[rect * 4 + 1], mRects[rect * 4 + 2], mRects[rect * 4 + 3],
+                            mPaints[mRectPaints[rect]]);
+                    rect++;
+                    break;
+                case OverlayCompiler.OP_LINES:
+                    canvas.drawLines(mLinePoints, mLineRanges[lines * 2], mLineRanges[lines * 2 + 1],
+                            mPaints[mLinePaints[lines]]);
+                    lines++;
+                    break;
+                case OverlayCompiler.OP_TEXT:
+                    canvas.save();
+                    canvas.translate(mTextOrigins[text * 2], mTextOrigins[text * 2 + 1]);
+                    mTexts[text].draw(canvas);
+                    canvas.restore();
+                    text++;
+                    break;
+                case OverlayCompiler.OP_CLIP:
+                    canvas.save();
+                    canvas.clipRect(mClips[clip * 4], mClips[clip * 4 + 1], mClips[clip * 4 + 2], mClips[clip * 4 + 3]);
+                    clip++;
+                    break;
+                case OverlayCompiler.OP_RESTORE:
+                    canvas.restore();
+                    break;
+                case OverlayCompiler.OP_LAYER:
+                    mLayers[layer].draw(canvas, mLayerBounds[layer]);
+                    layer++;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * @return number of primitive operations this overlay is drawn with
+     */
+    public int getOperationCount() {
+        return mOps.length;
+    }
+
+    private static float[] copyOf(float[] array, int length) {
+        final float[] copy = new float[length];
+        System.arraycopy(array, 0, copy, 0, length);
+        return copy;
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        final int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, length);
+        return copy;
+    }
+
+}
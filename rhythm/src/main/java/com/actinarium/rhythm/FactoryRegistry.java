@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import java.util.Map;
+
+/**
+ * <p>An immutable snapshot of {layer type} -&gt; {factory} mappings, used by {@link RhythmOverlayInflater} to look up
+ * factories. Unlike a regular map, it can match the layer type directly in a range of the config line, so no substring
+ * has to be allocated for known types &mdash; the type string registered with the factory is returned instead.</p>
+ * <p>Internally it's an open addressing hash table with linear probing, sized to be at most half full, using the
+ * same hash function as {@link String#hashCode()}. Being immutable, it's safe to use from multiple threads.</p>
+ *
+ * @author Paul Danyliuk
+ */
+final class FactoryRegistry {
+
+    private final String[] mTypes;
+    private final RhythmSpecLayerFactory[] mFactories;
+    private final ArgumentsSchema[] mSchemas;
+    private final int mMask;
+
+    FactoryRegistry(Map<String, RhythmSpecLayerFactory> factories) {
+        int capacity = 2;
+        while (capacity < factories.size() * 2) {
+            capacity <<= 1;
+        }
+        mTypes = new String[capacity];
+        mFactories = new RhythmSpecLayerFactory[capacity];
+        mSchemas = new ArgumentsSchema[capacity];
+        mMask = capacity - 1;
+
+        for (Map.Entry<String, RhythmSpecLayerFactory> entry : factories.entrySet()) {
+            final String type = entry.getKey();
+            int slot = type.hashCode() & mMask;
+            while (mTypes[slot] != null) {
+                slot = (slot + 1) & mMask;
+            }
+            mTypes[slot] = type;
+            mFactories[slot] = entry.getValue();
+            mSchemas[slot] = getArgumentsSchema(entry.getValue());
+        }
+    }
+
+    /**
+     * Find the registered layer type equal to the given range of the line
+     *
+     * @param line  config line
+     * @param start index of the first char of the layer type in the line
+     * @param end   index after the last char of the layer type
+     * @return registered layer type string, or <code>null</code> if there's no factory for this type
+     */
+    String findType(String line, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+        final int length = end - start;
+        for (int slot = hash & mMask; mTypes[slot] != null; slot = (slot + 1) & mMask) {
+            final String type = mTypes[slot];
+            if (type.length() == length && type.regionMatches(0, line, start, length)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the factory registered for the layer type
+     *
+     * @param layerType layer type, preferably the one returned by {@link #findType(String, int, int)}
+     * @return factory, or <code>null</code> if there's no factory for this type
+     */
+    RhythmSpecLayerFactory get(String layerType) {
+        final int slot = findSlot(layerType);
+        return slot != -1 ? mFactories[slot] : null;
+    }
+
+    /**
+     * Get the arguments schema declared by the factory registered for the layer type
+     *
+     * @param layerType layer type, preferably the one returned by {@link #findType(String, int, int)}
+     * @return arguments schema, or <code>null</code> if the factory doesn't declare one or there's no such factory
+     */
+    ArgumentsSchema getArgumentsSchema(String layerType) {
+        final int slot = findSlot(layerType);
+        return slot != -1 ? mSchemas[slot] : null;
+    }
+
+    private int findSlot(String layerType) {
+        for (int slot = layerType.hashCode() & mMask; mTypes[slot] != null; slot = (slot + 1) & mMask) {
+            final String type = mTypes[slot];
+            // Types returned by findType() match by identity, so equals() is only a fallback for other strings
+            if (type == layerType || type.equals(layerType)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private static ArgumentsSchema getArgumentsSchema(RhythmSpecLayerFactory factory) {
+        if (factory instanceof SimpleCacheFactory) {
+            factory = ((SimpleCacheFactory) factory).getDecoratedFactory();
+        }
+        return factory instanceof SchemaSpecLayerFactory
+                ? ((SchemaSpecLayerFactory) factory).getArgumentsSchema()
+                : null;
+    }
+
+}
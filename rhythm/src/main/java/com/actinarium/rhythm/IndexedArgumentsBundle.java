@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.DisplayMetrics;
+
+import java.util.Arrays;
+
+/**
+ * <p>An {@link ArgumentsBundle} for layers of {@link SchemaSpecLayerFactory schema-declaring factories}, which stores
+ * argument values in a fixed-position array in the order of their declaration in the {@link ArgumentsSchema}. Values
+ * are validated against the schema on creation, and factories can read them by slot index instead of looking them up
+ * by name. Typed values are parsed once per slot, same as in {@link SimpleArgumentsBundle}.</p><p>Getters by name are
+ * supported too, so the bundle can be passed to any factory. Arguments not declared in the schema are never
+ * present.</p><p>When inflating text configs, the inflater reuses one bundle per schema for all lines of a block, so a
+ * bundle passed to a factory is only valid until the factory returns. Use {@link #retain()} to keep it longer.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public class IndexedArgumentsBundle implements ArgumentsBundle {
+
+    protected final ArgumentsSchema mSchema;
+    protected final String[] mValues;
+    protected long mDeclaredMask;
+    protected final DisplayMetrics mMetrics;
+
+    /**
+     * Whether this bundle is reused by the inflater for the next lines, and so must be copied to be kept
+     */
+    private final boolean mIsScratch;
+
+    /**
+     * Parsed values by slot, created on first typed access
+     */
+    private ParsedArgument[] mParsedArguments;
+
+    /**
+     * Create a new indexed arguments bundle, filling in default values and validating the arguments against the
+     * schema
+     *
+     * @param schema       schema of the arguments
+     * @param values       raw argument values by slot index, <code>null</code> for arguments declared without a value.
+     *                     Used as is, therefore it <b>must not</b> be mutated afterwards
+     * @param declaredMask bit mask of arguments declared in the config, where bit <code>1 &lt;&lt; i</code> stands for
+     *                     slot <code>i</code>
+     * @param metrics      Display metrics associated with this arguments bundle, required so that dimension values (dp,
+     *                     sp etc) can be properly resolved.
+     * @throws RhythmInflationException if a required argument is missing or a value is not of the declared type
+     */
+    public IndexedArgumentsBundle(@NonNull ArgumentsSchema schema, @NonNull String[] values, long declaredMask,
+                                  @NonNull DisplayMetrics metrics) {
+        schema.validate(values, declaredMask);
+        mSchema = schema;
+        mValues = values;
+        mDeclaredMask = declaredMask;
+        mMetrics = metrics;
+        mIsScratch = false;
+    }
+
+    /**
+     * Create a scratch bundle to be filled with {@link #reset(long)} for each parsed line. Not valid until reset.
+     */
+    IndexedArgumentsBundle(ArgumentsSchema schema, DisplayMetrics metrics) {
+        mSchema = schema;
+        mValues = new String[schema.size()];
+        mMetrics = metrics;
+        mIsScratch = true;
+    }
+
+    /**
+     * Create a copy of a scratch bundle, which is already validated
+     */
+    private IndexedArgumentsBundle(IndexedArgumentsBundle source) {
+        mSchema = source.mSchema;
+        mValues = source.mValues.clone();
+        mDeclaredMask = source.mDeclaredMask;
+        mMetrics = source.mMetrics;
+        mIsScratch = false;
+    }
+
+    /**
+     * Validate the values written into {@link #mValues} of a scratch bundle and make it represent them
+     *
+     * @param declaredMask bit mask of arguments declared in the config
+     * @throws RhythmInflationException if a required argument is missing or a value is not of the declared type
+     */
+    void reset(long declaredMask) {
+        mSchema.validate(mValues, declaredMask);
+        mDeclaredMask = declaredMask;
+        if (mParsedArguments != null) {
+            for (int i = 0; i < mParsedArguments.length; i++) {
+                if (mParsedArguments[i] != null) {
+                    mParsedArguments[i].reset(mValues[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a bundle with the same arguments that can be kept after the factory returns, e.g. as a cache key. Bundles
+     * reused by the inflater are copied, others are returned as is.
+     *
+     * @return this bundle, or its copy if this bundle is going to be reused
+     */
+    public IndexedArgumentsBundle retain() {
+        return mIsScratch ? new IndexedArgumentsBundle(this) : this;
+    }
+
+    /**
+     * Same as {@link #retain()}, but for any arguments bundle
+     *
+     * @param argsBundle arguments bundle passed to a factory
+     * @return bundle that can be kept after the factory returns
+     */
+    static ArgumentsBundle retain(ArgumentsBundle argsBundle) {
+        return argsBundle instanceof IndexedArgumentsBundle
+                ? ((IndexedArgumentsBundle) argsBundle).retain()
+                : argsBundle;
+    }
+
+    /**
+     * @return schema of this bundle
+     */
+    public ArgumentsSchema getSchema() {
+        return mSchema;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DisplayMetrics getDisplayMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Check whether the argument in provided slot was declared in the config. Arguments falling back to default
+     * values are not considered declared.
+     *
+     * @param index slot index of the argument
+     * @return true if the argument was declared
+     */
+    public boolean hasArgument(int index) {
+        return (mDeclaredMask & (1L << index)) != 0;
+    }
+
+    public String getString(int index) {
+        return mValues[index];
+    }
+
+    public String getString(int index, @Nullable String defaultValue) {
+        String rawValue = mValues[index];
+        return rawValue != null ? rawValue : defaultValue;
+    }
+
+    public int getInt(int index, int defaultValue) {
+        String rawValue = mValues[index];
+        return rawValue != null ? Integer.parseInt(rawValue) : defaultValue;
+    }
+
+    public float getFloat(int index, float defaultValue) {
+        String rawValue = mValues[index];
+        return rawValue != null ? Float.parseFloat(rawValue) : defaultValue;
+    }
+
+    public boolean getBoolean(int index, boolean defaultValue) {
+        String rawValue = mValues[index];
+        if (rawValue != null) {
+            return Boolean.parseBoolean(rawValue);
+        } else {
+            return hasArgument(index) || defaultValue;
+        }
+    }
+
+    @ColorInt
+    public int getColor(int index, @ColorInt int defaultValue) {
+        return getParsedArgument(index).getColor(defaultValue);
+    }
+
+    public int getGravity(int index, int defaultValue) {
+        return getParsedArgument(index).getGravity(defaultValue);
+    }
+
+    @EdgeAffinity
+    public int getEdgeAffinity(int index, @EdgeAffinity int defaultValue) {
+        return ParsedArgument.parseEdgeAffinity(mValues[index], defaultValue);
+    }
+
+    @DimensionUnits
+    public int getDimensionUnits(int index) {
+        return getParsedArgument(index).getDimensionUnits();
+    }
+
+    public float getDimensionValue(int index, float defaultValue) {
+        return getParsedArgument(index).getDimensionValue(defaultValue);
+    }
+
+    public float getDimensionPixelExact(int index, float defaultValue) {
+        return getParsedArgument(index).getDimensionPixelExact(defaultValue, mMetrics);
+    }
+
+    public int getDimensionPixelOffset(int index, int defaultValue) {
+        return getParsedArgument(index).getDimensionPixelOffset(defaultValue, mMetrics);
+    }
+
+    public int getDimensionPixelSize(int index, int defaultValue) {
+        return getParsedArgument(index).getDimensionPixelSize(defaultValue, mMetrics);
+    }
+
+    private ParsedArgument getParsedArgument(int index) {
+        if (mParsedArguments == null) {
+            mParsedArguments = new ParsedArgument[mValues.length];
+        }
+        ParsedArgument parsed = mParsedArguments[index];
+        if (parsed == null) {
+            parsed = new ParsedArgument(mValues[index]);
+            mParsedArguments[index] = parsed;
+        }
+        return parsed;
+    }
+
+    // Getters by name, for factories that don't use slot indices. Unknown arguments behave exactly like missing ones
+    // in SimpleArgumentsBundle
+
+    @Override
+    public boolean hasArgument(String key) {
+        final int index = mSchema.indexOf(key);
+        return index != -1 && hasArgument(index);
+    }
+
+    @Override
+    public String getString(String key) {
+        final int index = mSchema.indexOf(key);
+        return index != -1 ? getString(index) : null;
+    }
+
+    @Override
+    public String getString(String key, @Nullable String defaultValue) {
+        final int index = mSchema.indexOf(key);
+        return index != -1 ? getString(index, defaultValue) : defaultValue;
+    }
+
+    @Override
+    public int getInt(String key, int defaultValue) {
+        final int index = mSchema.indexOf(key);
+        return index != -1 ? getInt(index, defaultValue) : defaultValue;
+    }
+
+    @Override
+    public float getFloat(String key, float defaultValue) {
+        final int index = mSchema.indexOf(key);
+        return index != -1 ? getFloat(index, defaultValue) : defaultValue;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defaultValue) {
+        final int index = mSchema.indexOf(key);
+        return index != -1 ? getBoolean(index, defaultValue) : defaultValue;
+    }
+
+    @Override
+    @ColorInt
+    public int getColor(String key, @ColorInt int defaultValue) {
+        final int index = mSchema.indexOf(key);
+        return index != -1 ? getColor(index, defaultValue) : defaultValue;
+    }
+
+    @Override
+    public int getGravity(String key, int defaultValue) {
+        final int index = mSchema.indexOf(key);
+        return index != -1 ? getGravity(index, defaultValue) : defaultValue;
+    }
+
+    @Override
+    @EdgeAffinity
+    public int getEdgeAffinity(String key, @EdgeAffinity int defaultValue) {
+        final int index = mSchema.indexOf(key);
+        return index != -1 ? getEdgeAffinity(index, defaultValue) : defaultValue;
+    }
+
+    @Override
+    @DimensionUnits
+    public int getDimensionUnits(String key) {
+        final int index = mSchema.indexOf(key);
+        return index != -1 ? getDimensionUnits(index) : UNITS_NULL;
+    }
+
+    @Override
+    public float getDimensionValue(String key, float defaultValue) {
+        final int index = mSchema.indexOf(key);
+        return index != -1 ? getDimensionValue(index, defaultValue) : defaultValue;
+    }
+
+    @Override
+    public float getDimensionPixelExact(String key, float defaultValue) {
+        final int index = mSchema.indexOf(key);
+        final ParsedArgument parsed = index != -1 ? getParsedArgument(index) : new ParsedArgument(null);
+        return parsed.getDimensionPixelExact(defaultValue, mMetrics);
+    }
+
+    @Override
+    public int getDimensionPixelOffset(String key, int defaultValue) {
+        final int index = mSchema.indexOf(key);
+        final ParsedArgument parsed = index != -1 ? getParsedArgument(index) : new ParsedArgument(null);
+        return parsed.getDimensionPixelOffset(defaultValue, mMetrics);
+    }
+
+    @Override
+    public int getDimensionPixelSize(String key, int defaultValue) {
+        final int index = mSchema.indexOf(key);
+        final ParsedArgument parsed = index != -1 ? getParsedArgument(index) : new ParsedArgument(null);
+        return parsed.getDimensionPixelSize(defaultValue, mMetrics);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (o == null || getClass() != o.getClass()) { return false; }
+        IndexedArgumentsBundle that = (IndexedArgumentsBundle) o;
+        return mSchema == that.mSchema && mDeclaredMask == that.mDeclaredMask && Arrays.equals(mValues, that.mValues);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mSchema.hashCode();
+        result = 31 * result + (int) (mDeclaredMask ^ (mDeclaredMask >>> 32));
+        result = 31 * result + Arrays.hashCode(mValues);
+        return result;
+    }
+}
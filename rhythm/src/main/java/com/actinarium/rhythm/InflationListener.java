@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+/**
+ * <p>A listener for instrumenting overlay inflation, e.g. to find out which layers or lines take the longest to
+ * inflate. Register it with {@link RhythmOverlayInflater#setInflationListener(InflationListener)}. See {@link
+ * InflationProfiler} for a ready-made implementation that aggregates the numbers and logs a summary.</p><p>All
+ * durations are in nanoseconds, as measured with {@link System#nanoTime()}. The callbacks are invoked on the thread
+ * doing the inflation, so if you inflate in the background or in parallel, the implementation must be
+ * thread-safe.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public interface InflationListener {
+
+    /**
+     * Called when the inflater starts inflating an overlay block
+     *
+     * @param lineNumber number of the line where the block starts
+     */
+    void onBlockStarted(int lineNumber);
+
+    /**
+     * Called when the overlay block has been inflated successfully. Not called if inflation fails.
+     *
+     * @param lineNumber    number of the line where the block starts
+     * @param overlay       inflated overlay
+     * @param durationNanos time spent inflating the whole block, including the time reported by other callbacks
+     */
+    void onBlockFinished(int lineNumber, RhythmOverlay overlay, long durationNanos);
+
+    /**
+     * Called when a spec layer line has been parsed into a layer config
+     *
+     * @param lineNumber    number of the parsed line
+     * @param layerType     layer type, as declared in the line
+     * @param durationNanos time spent parsing the line, including variable resolution
+     */
+    void onLineParsed(int lineNumber, String layerType, long durationNanos);
+
+    /**
+     * Called when a factory has returned a layer for a parsed layer config
+     *
+     * @param lineNumber    number of the inflated line
+     * @param layerType     layer type, as declared in the line
+     * @param factory       the factory that was used to inflate the layer
+     * @param durationNanos time spent in {@link RhythmSpecLayerFactory#getForArguments(ArgumentsBundle)}
+     */
+    void onLayerInflated(int lineNumber, String layerType, RhythmSpecLayerFactory factory, long durationNanos);
+
+    /**
+     * Called when a variable reference in a variable declaration or in a layer argument has been resolved
+     *
+     * @param lineNumber number of the line containing the reference
+     * @param variable   name of the resolved variable, including the leading <code>@</code>
+     */
+    void onVariableResolved(int lineNumber, String variable);
+
+    /**
+     * Called when a {@link SimpleCacheFactory} returns a previously inflated layer
+     *
+     * @param cache the caching factory
+     */
+    void onCacheHit(SimpleCacheFactory cache);
+
+    /**
+     * Called when a {@link SimpleCacheFactory} has no layer for given arguments and delegates to the decorated factory
+     *
+     * @param cache the caching factory
+     */
+    void onCacheMiss(SimpleCacheFactory cache);
+
+}
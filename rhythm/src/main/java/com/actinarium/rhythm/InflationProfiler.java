@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>An {@link InflationListener} that aggregates inflation timings per layer type and cache hit rates per caching
+ * factory, and can dump them as a summary table to logcat. Usage:</p>
+ * <pre><code>
+ * InflationProfiler profiler = new InflationProfiler();
+ * inflater.setInflationListener(profiler);
+ * inflater.inflate(R.raw.overlay_config);
+ * profiler.logSummary();
+ * </code></pre>
+ * <p>The numbers keep adding up across inflations until {@link #reset()} is called. This class is thread-safe, so it
+ * can be used with background and parallel inflation as well.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public class InflationProfiler implements InflationListener {
+
+    /**
+     * Default logcat tag for the summary
+     */
+    public static final String LOG_TAG = "RhythmInflation";
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final Map<String, LayerStats> mLayerStats = new LinkedHashMap<>();
+    private final Map<SimpleCacheFactory, CacheStats> mCacheStats = new LinkedHashMap<>();
+    private int mBlockCount;
+    private long mBlockNanos;
+    private int mResolvedVariableCount;
+
+    @Override
+    public synchronized void onBlockStarted(int lineNumber) {
+        // Nothing to count until the block is finished
+    }
+
+    @Override
+    public synchronized void onBlockFinished(int lineNumber, RhythmOverlay overlay, long durationNanos) {
+        mBlockCount++;
+        mBlockNanos += durationNanos;
+    }
+
+    @Override
+    public synchronized void onLineParsed(int lineNumber, String layerType, long durationNanos) {
+        LayerStats stats = getLayerStats(layerType);
+        stats.mLineCount++;
+        stats.mParseNanos += durationNanos;
+    }
+
+    @Override
+    public synchronized void onLayerInflated(int lineNumber, String layerType, RhythmSpecLayerFactory factory,
+                                             long durationNanos) {
+        LayerStats stats = getLayerStats(layerType);
+        stats.mInflateNanos += durationNanos;
+        if (durationNanos > stats.mMaxInflateNanos) {
+            stats.mMaxInflateNanos = durationNanos;
+        }
+    }
+
+    @Override
+    public synchronized void onVariableResolved(int lineNumber, String variable) {
+        mResolvedVariableCount++;
+    }
+
+    @Override
+    public synchronized void onCacheHit(SimpleCacheFactory cache) {
+        getCacheStats(cache).mHits++;
+    }
+
+    @Override
+    public synchronized void onCacheMiss(SimpleCacheFactory cache) {
+        getCacheStats(cache).mMisses++;
+    }
+
+    /**
+     * Clear all collected numbers
+     */
+    public synchronized void reset() {
+        mLayerStats.clear();
+        mCacheStats.clear();
+        mBlockCount = 0;
+        mBlockNanos = 0;
+        mResolvedVariableCount = 0;
+    }
+
+    /**
+     * Log the summary table to logcat with {@link #LOG_TAG} tag and DEBUG priority
+     */
+    public void logSummary() {
+        logSummary(LOG_TAG);
+    }
+
+    /**
+     * Log the summary table to logcat with DEBUG priority. Each row is logged separately so that long tables aren't
+     * truncated.
+     *
+     * @param tag logcat tag to use
+     */
+    public void logSummary(String tag) {
+        for (String row : getSummary().split("\n")) {
+            Log.d(tag, row);
+        }
+    }
+
+    /**
+     * Get the summary table with the numbers collected so far
+     *
+     * @return human-readable multi-line summary
+     */
+    public synchronized String getSummary() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "Inflated %d overlays in %.3f ms, resolved %d variable references%n",
+                mBlockCount, mBlockNanos / NANOS_PER_MILLI, mResolvedVariableCount));
+
+        builder.append(String.format(Locale.US, "%-20s %8s %12s %12s %12s%n",
+                "Layer type", "Lines", "Parse, ms", "Inflate, ms", "Max, ms"));
+        for (Map.Entry<String, LayerStats> entry : mLayerStats.entrySet()) {
+            final LayerStats stats = entry.getValue();
+            builder.append(String.format(Locale.US, "%-20s %8d %12.3f %12.3f %12.3f%n",
+                    entry.getKey(), stats.mLineCount, stats.mParseNanos / NANOS_PER_MILLI,
+                    stats.mInflateNanos / NANOS_PER_MILLI, stats.mMaxInflateNanos / NANOS_PER_MILLI));
+        }
+
+        if (!mCacheStats.isEmpty()) {
+            // Size and evictions are taken from the cache itself, so they are not reset along with the hits and misses
+            builder.append(String.format(Locale.US, "%-20s %8s %12s %12s %8s %12s%n",
+                    "Cache", "Hits", "Misses", "Hit rate", "Size", "Evictions"));
+            for (Map.Entry<SimpleCacheFactory, CacheStats> entry : mCacheStats.entrySet()) {
+                final SimpleCacheFactory cache = entry.getKey();
+                final CacheStats stats = entry.getValue();
+                final int lookups = stats.mHits + stats.mMisses;
+                builder.append(String.format(Locale.US, "%-20s %8d %12d %11.1f%% %8d %12d%n",
+                        getFactoryName(cache.getDecoratedFactory()), stats.mHits, stats.mMisses,
+                        lookups != 0 ? stats.mHits * 100.0 / lookups : 0.0, cache.size(), cache.getEvictionCount()));
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private LayerStats getLayerStats(String layerType) {
+        LayerStats stats = mLayerStats.get(layerType);
+        if (stats == null) {
+            stats = new LayerStats();
+            mLayerStats.put(layerType, stats);
+        }
+        return stats;
+    }
+
+    private CacheStats getCacheStats(SimpleCacheFactory cache) {
+        CacheStats stats = mCacheStats.get(cache);
+        if (stats == null) {
+            stats = new CacheStats();
+            mCacheStats.put(cache, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * @return class name without the package, e.g. GridLines.Factory
+     */
+    private static String getFactoryName(RhythmSpecLayerFactory factory) {
+        final String name = factory.getClass().getName();
+        return name.substring(name.lastIndexOf('.') + 1).replace('$', '.');
+    }
+
+    private static class LayerStats {
+        int mLineCount;
+        long mParseNanos;
+        long mInflateNanos;
+        long mMaxInflateNanos;
+    }
+
+    private static class CacheStats {
+        int mHits;
+        int mMisses;
+    }
+
+}
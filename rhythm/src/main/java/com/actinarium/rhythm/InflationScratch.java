@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import android.util.DisplayMetrics;
+import com.actinarium.rhythm.RhythmOverlayInflater.LayerConfig;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Objects reused by the inflater for all lines of an overlay block, so that parsing a line doesn't allocate anything
+ * that isn't kept afterwards: a pool of tokens, an arguments bundle per schema, and a layer config. Layers are
+ * inflated one at a time, and whatever keeps a bundle or a config after that (a caching factory, a subtree pool)
+ * retains a copy of it. Not thread-safe &mdash; each thread takes its own instance with {@link #obtain(ThreadLocal)},
+ * and keeps it for the next blocks.
+ *
+ * @author Paul Danyliuk
+ */
+final class InflationScratch {
+
+    final TokenPool mTokens = new TokenPool();
+    private final Map<ArgumentsSchema, IndexedArgumentsBundle> mBundles = new IdentityHashMap<>();
+    private LayerConfig mConfig;
+
+    /**
+     * Take the instance kept for this thread, or create a new one if there's none (e.g. if a block is inflated while
+     * inflating another one). Call {@link #recycle(ThreadLocal)} once done with the block.
+     *
+     * @param pool per-thread instances
+     * @return scratch objects to use for a block
+     */
+    static InflationScratch obtain(ThreadLocal<InflationScratch> pool) {
+        final InflationScratch scratch = pool.get();
+        if (scratch == null) {
+            return new InflationScratch();
+        }
+        pool.set(null);
+        return scratch;
+    }
+
+    /**
+     * Keep this instance for the next block inflated on this thread. If a block fails to inflate, the instance is
+     * simply not recycled.
+     *
+     * @param pool per-thread instances
+     */
+    void recycle(ThreadLocal<InflationScratch> pool) {
+        if (mConfig != null) {
+            // Don't hold on to the last inflated bundle
+            mConfig.mArgumentsBundle = null;
+        }
+        pool.set(this);
+    }
+
+    /**
+     * Get the bundle to read arguments of given schema into
+     *
+     * @param schema  arguments schema
+     * @param metrics display metrics for the bundle
+     * @return scratch bundle, which must be filled and then {@link IndexedArgumentsBundle#reset(long) reset}
+     */
+    IndexedArgumentsBundle getBundle(ArgumentsSchema schema, DisplayMetrics metrics) {
+        IndexedArgumentsBundle bundle = mBundles.get(schema);
+        if (bundle == null || bundle.mMetrics != metrics) {
+            bundle = new IndexedArgumentsBundle(schema, metrics);
+            mBundles.put(schema, bundle);
+        }
+        return bundle;
+    }
+
+    /**
+     * Get the layer config for the parsed line, overwriting the one for the previous line
+     *
+     * @param layerType       spec layer type
+     * @param indent          number of leading spaces in the config line
+     * @param argumentsBundle parsed arguments
+     * @return scratch layer config
+     */
+    LayerConfig getConfig(String layerType, int indent, ArgumentsBundle argumentsBundle) {
+        if (mConfig == null) {
+            mConfig = new LayerConfig(layerType, indent, argumentsBundle);
+            mConfig.mIsScratch = true;
+        } else {
+            mConfig.mLayerType = layerType;
+            mConfig.mIndent = indent;
+            mConfig.mArgumentsBundle = argumentsBundle;
+        }
+        return mConfig;
+    }
+
+}
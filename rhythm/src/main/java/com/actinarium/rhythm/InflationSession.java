@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>An incremental inflation session, created with {@link RhythmOverlayInflater#newSession()}. Remembers the layers
+ * inflated during the previous successful pass, and when the config is inflated again, takes the layers for unchanged
+ * lines from there instead of parsing the lines and calling the factories again. Only leaf layers are reused &mdash;
+ * groups are always inflated anew, since their children may have changed. A line is considered unchanged if its text
+ * is the same and it's in a block with exactly the same variables.</p><p>Unlike the inflater, the session doesn't
+ * throw on malformed config but returns the error in the {@link Result}, so that a single pass both validates the
+ * config and produces the overlays. A failed pass doesn't affect what's remembered from the last successful one.</p>
+ * <p>Sessions are not thread-safe.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public class InflationSession {
+
+    private final RhythmOverlayInflater mInflater;
+
+    // {variables} -> {line} -> {layer} from the last successful pass
+    private Map<Map<String, String>, Map<String, RhythmSpecLayer>> mPreviousLayers = new HashMap<>();
+    // Scopes of the pass in progress
+    private Map<Map<String, String>, Scope> mScopes = new HashMap<>();
+
+    InflationSession(@NonNull RhythmOverlayInflater inflater) {
+        mInflater = inflater;
+    }
+
+    /**
+     * Inflate a Rhythm configuration file with one or more overlays, reusing layers from the previous pass where
+     * possible.
+     *
+     * @param configString Configuration file passed in whole as a string, following the same syntax rules as the
+     *                     configuration file
+     * @return Result holding either inflated overlays or the error
+     * @see RhythmOverlayInflater#inflate(String)
+     */
+    public Result inflate(String configString) {
+        List<String> configStrings = Arrays.asList(configString.split("\\r?\\n"));
+        try {
+            final List<RhythmOverlay> overlays = mInflater.inflateInternal(configStrings, false, this, null);
+            onPassSucceeded();
+            return new Result(overlays, null);
+        } catch (RuntimeException e) {
+            return new Result(null, toInflationException(e));
+        } finally {
+            mScopes.clear();
+        }
+    }
+
+    /**
+     * Inflate a single overlay, reusing layers from the previous pass where possible.
+     *
+     * @param configString Overlay configuration string, following the syntax rules
+     * @return Result holding either inflated overlay or the error
+     * @see RhythmOverlayInflater#inflateOverlay(String)
+     */
+    @SuppressWarnings("unchecked")
+    public Result inflateOverlay(String configString) {
+        List<String> configStrings = Arrays.asList(configString.split("\\r?\\n"));
+        try {
+            final RhythmOverlay overlay = mInflater.inflateOverlayInternal(
+                    configStrings, Collections.EMPTY_MAP, 0, this, null, mInflater.newSubtreePool()
+            );
+            onPassSucceeded();
+            return new Result(Collections.singletonList(overlay), null);
+        } catch (RuntimeException e) {
+            return new Result(null, toInflationException(e));
+        } finally {
+            mScopes.clear();
+        }
+    }
+
+    /**
+     * Get reusable layers for lines resolved against given variables. Called by the inflater once per block, when all
+     * block's variables are known
+     */
+    Scope getScope(Map<String, String> vars) {
+        Scope scope = mScopes.get(vars);
+        if (scope == null) {
+            scope = new Scope(mPreviousLayers.get(vars));
+            mScopes.put(vars, scope);
+        }
+        return scope;
+    }
+
+    /**
+     * Remember what was inflated in this pass, and forget everything else
+     */
+    private void onPassSucceeded() {
+        mPreviousLayers = new HashMap<>(mScopes.size());
+        for (Map.Entry<Map<String, String>, Scope> entry : mScopes.entrySet()) {
+            mPreviousLayers.put(entry.getKey(), entry.getValue().mLayers);
+        }
+    }
+
+    /**
+     * Wrap any other exception thrown while inflating (e.g. by a custom factory or arguments bundle), so that a
+     * malformed config never escapes the session
+     */
+    private static RhythmInflationException toInflationException(RuntimeException e) {
+        if (e instanceof RhythmInflationException) {
+            return (RhythmInflationException) e;
+        }
+        return new RhythmInflationException("Error inflating config: " + e.getMessage(), e);
+    }
+
+    /**
+     * Leaf layers for lines within blocks sharing the same variables: those from the previous pass to reuse, and those
+     * of the current pass to remember
+     */
+    static final class Scope {
+
+        private final Map<String, RhythmSpecLayer> mPreviousLayers;
+        private final Map<String, RhythmSpecLayer> mLayers = new HashMap<>();
+
+        private Scope(Map<String, RhythmSpecLayer> previousLayers) {
+            mPreviousLayers = previousLayers;
+        }
+
+        /**
+         * @return layer inflated from the same line in the previous pass, or null if there's none
+         */
+        RhythmSpecLayer reuse(String line) {
+            RhythmSpecLayer layer = mPreviousLayers != null ? mPreviousLayers.get(line) : null;
+            if (layer != null) {
+                mLayers.put(line, layer);
+            }
+            return layer;
+        }
+
+        /**
+         * Remember the layer for the next pass, unless it's a group
+         */
+        void retain(String line, RhythmSpecLayer layer) {
+            if (!(layer instanceof RhythmSpecLayerParent)) {
+                mLayers.put(line, layer);
+            }
+        }
+    }
+
+    /**
+     * The outcome of a single inflation pass
+     */
+    public static class Result {
+
+        private final List<RhythmOverlay> mOverlays;
+        private final RhythmInflationException mError;
+
+        Result(List<RhythmOverlay> overlays, RhythmInflationException error) {
+            mOverlays = overlays;
+            mError = error;
+        }
+
+        /**
+         * @return true if the config was inflated without errors
+         */
+        public boolean isSuccessful() {
+            return mError == null;
+        }
+
+        /**
+         * @return inflated overlays, or <code>null</code> if inflation failed
+         */
+        public List<RhythmOverlay> getOverlays() {
+            return mOverlays;
+        }
+
+        /**
+         * @return the first inflated overlay (the only one if inflated with {@link
+         * InflationSession#inflateOverlay(String)}), or <code>null</code> if there are none or inflation failed
+         */
+        public RhythmOverlay getOverlay() {
+            return mOverlays != null && !mOverlays.isEmpty() ? mOverlays.get(0) : null;
+        }
+
+        /**
+         * @return inflation error with the line number, or <code>null</code> if inflation succeeded
+         */
+        public RhythmInflationException getError() {
+            return mError;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import com.actinarium.rhythm.RhythmOverlayInflater.LayerConfig;
+
+/**
+ * Nests the layers of an overlay block according to their indents, as they come in the order of config lines: each
+ * layer is added to the closest preceding {@link RhythmSpecLayerParent} with a lesser indent. Used both by {@link
+ * RhythmOverlayInflater} and by {@link PrecompiledOverlays}, so that the same config always produces the same tree.
+ *
+ * @author Paul Danyliuk
+ */
+final class LayerTreeAssembler {
+
+    private final SubtreePool mSubtreePool;
+
+    // Stacks for parents and indents. Since there's no adequate stack implementations out there for API 8+, make own.
+    // Assume there rarely will be more than 4-deep hierarchy
+    private int mSize = 4;
+    private int[] mIndents = new int[mSize];
+    private RhythmSpecLayerParent[] mParents = new RhythmSpecLayerParent[mSize];
+    private int mHeadIndex = 0;
+
+    // When sharing subtrees, groups are added to their parents only once complete, so we also keep their configs
+    private LayerConfig[] mGroupConfigs;
+
+    private boolean mHasLayers;
+
+    /**
+     * @param overlay     overlay to add the layers to
+     * @param subtreePool pool of shared groups if subtree sharing is enabled, or null
+     */
+    LayerTreeAssembler(RhythmOverlay overlay, SubtreePool subtreePool) {
+        mSubtreePool = subtreePool;
+        if (subtreePool != null) {
+            mGroupConfigs = new LayerConfig[mSize];
+        }
+
+        // at the bottom of the stack we have the new RhythmOverlay object
+        mParents[0] = overlay;
+        mIndents[0] = -1;
+    }
+
+    /**
+     * Add the next layer of the block
+     *
+     * @param layer  inflated layer
+     * @param indent indent of the layer's config line
+     * @param config config the layer was inflated from, or null if the layer was reused without parsing its line
+     */
+    void addLayer(RhythmSpecLayer layer, int indent, LayerConfig config) {
+        // If indent is <= indent of parent layer, then go up the hierarchy. Won't underflow b/c indents[0] is -1
+        while (indent <= mIndents[mHeadIndex]) {
+            closeGroup();
+            mHeadIndex--;
+            // we could clean up the stacks but there's really no need
+        }
+        mHasLayers = true;
+
+        // When sharing subtrees, a group will be added to its parent once complete
+        final boolean isDeferred = mGroupConfigs != null && config != null && layer instanceof AbstractSpecLayerGroup;
+        if (!isDeferred) {
+            mParents[mHeadIndex].addLayer(layer);
+        }
+        if (mSubtreePool != null && config != null && !(layer instanceof RhythmSpecLayerParent)) {
+            mSubtreePool.addLeaf(config.getLayerType(), layer);
+        }
+
+        // if this is a layer group, add it to the stack
+        if (layer instanceof RhythmSpecLayerParent) {
+            mHeadIndex++;
+            // if arrays run out of space, grow it twice (a-la ArrayList)
+            if (mHeadIndex >= mSize) {
+                int newSize = mSize * 2;
+                int[] newIndents = new int[newSize];
+                RhythmSpecLayerParent[] newParents = new RhythmSpecLayerParent[newSize];
+                System.arraycopy(mIndents, 0, newIndents, 0, mSize);
+                System.arraycopy(mParents, 0, newParents, 0, mSize);
+                mIndents = newIndents;
+                mParents = newParents;
+                if (mGroupConfigs != null) {
+                    LayerConfig[] newGroupConfigs = new LayerConfig[newSize];
+                    System.arraycopy(mGroupConfigs, 0, newGroupConfigs, 0, mSize);
+                    mGroupConfigs = newGroupConfigs;
+                }
+                mSize = newSize;
+            }
+            mParents[mHeadIndex] = (RhythmSpecLayerParent) layer;
+            mIndents[mHeadIndex] = indent;
+            if (mGroupConfigs != null) {
+                // The config may be reused by the inflater for the next lines, so keep a copy
+                mGroupConfigs[mHeadIndex] = isDeferred ? config.retain() : null;
+            }
+        }
+    }
+
+    /**
+     * Check whether any layers have been added
+     *
+     * @return true if at least one layer has been added
+     */
+    boolean hasLayers() {
+        return mHasLayers;
+    }
+
+    /**
+     * Complete the block, adding the groups still open to their parents
+     */
+    void finish() {
+        for (; mHeadIndex > 0; mHeadIndex--) {
+            closeGroup();
+        }
+    }
+
+    /**
+     * Add a complete group from the top of the stack to its parent, or an identical shared group instead of it
+     */
+    private void closeGroup() {
+        if (mGroupConfigs == null) {
+            return;
+        }
+        final LayerConfig config = mGroupConfigs[mHeadIndex];
+        if (config != null) {
+            final AbstractSpecLayerGroup group = (AbstractSpecLayerGroup) mParents[mHeadIndex];
+            mParents[mHeadIndex - 1].addLayer(
+                    mSubtreePool.share(config.getLayerType(), config.getArgumentsBundle(), group));
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A {@link RhythmOverlay} handle returned by {@link RhythmOverlayInflater#inflateLazily(List)}, which holds onto
+ * the lines of its configuration block and only inflates the layers when the overlay is first drawn, measured, or
+ * modified, or when explicitly requested via {@link #inflate()}. The title, if present, is available right away
+ * without inflating the overlay.</p><p>Inflation errors are thrown from the method that triggered inflation and carry
+ * line numbers from the original config. Until inflated successfully, the overlay keeps the lines, so the next attempt
+ * will fail again the same way.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public class LazyRhythmOverlay extends RhythmOverlay {
+
+    private RhythmOverlayInflater mInflater;
+    private List<String> mConfigStrings;
+    private Map<String, String> mGlobalVars;
+    private int mOffset;
+    private SubtreePool mSubtreePool;
+
+    /**
+     * Create a lazy overlay for a configuration block
+     *
+     * @param inflater      Inflater that will inflate the block when needed
+     * @param configStrings Lines of the block, must not be mutated
+     * @param globalVars    Already resolved global variables, must not be mutated
+     * @param offset        Index of the line where this block starts in the context of an outer config
+     * @param subtreePool   Pool of groups shared with other blocks of the config, or null if sharing is disabled
+     */
+    LazyRhythmOverlay(@NonNull RhythmOverlayInflater inflater, @NonNull List<String> configStrings,
+                      @NonNull Map<String, String> globalVars, int offset, SubtreePool subtreePool) {
+        super();
+        mInflater = inflater;
+        mConfigStrings = configStrings;
+        mGlobalVars = globalVars;
+        mOffset = offset;
+        mSubtreePool = subtreePool;
+
+        // The first line of a block is always either a title or something that can't be a title,
+        // so we can pick up the title cheaply without inflating the block
+        final String firstLine = configStrings.get(0);
+        if (firstLine.charAt(0) == '#') {
+            final String title = firstLine.substring(1).trim();
+            if (title.length() != 0) {
+                mTitle = title;
+            }
+        }
+    }
+
+    /**
+     * Inflate the layers of this overlay if not yet inflated. Normally you don't need to call this method explicitly,
+     * as the overlay inflates itself when needed, but you may want to do it ahead of time, e.g. to validate the config.
+     *
+     * @return this for chaining
+     * @throws RhythmInflationException if the block is malformed
+     */
+    public LazyRhythmOverlay inflate() {
+        if (mConfigStrings != null) {
+            final RhythmOverlay overlay = mInflater.inflateBlock(mConfigStrings, mGlobalVars, mOffset, mSubtreePool);
+            mLayers.addAll(overlay.mLayers);
+
+            // Release the references to config, as we don't need them anymore
+            mInflater = null;
+            mConfigStrings = null;
+            mGlobalVars = null;
+            mSubtreePool = null;
+        }
+        return this;
+    }
+
+    /**
+     * Check if this overlay has been inflated already
+     *
+     * @return true if the layers are inflated, false if the overlay still holds raw config
+     */
+    public boolean isInflated() {
+        return mConfigStrings == null;
+    }
+
+    @Override
+    public void draw(Canvas canvas, Rect drawableBounds) {
+        inflate();
+        super.draw(canvas, drawableBounds);
+    }
+
+    @Override
+    public void compile(OverlayCompiler compiler, Rect drawableBounds) {
+        inflate();
+        super.compile(compiler, drawableBounds);
+    }
+
+    @Override
+    public boolean isCompilable() {
+        return getClass() == LazyRhythmOverlay.class;
+    }
+
+    @Override
+    public CompiledOverlay compile(@NonNull Rect bounds) {
+        inflate();
+        return super.compile(bounds);
+    }
+
+    @Override
+    public void onBoundsChanged(Rect drawableBounds) {
+        // Don't inflate just to lay out - if the overlay is ever drawn, the layers will lay themselves out then
+        if (isInflated()) {
+            super.onBoundsChanged(drawableBounds);
+        }
+    }
+
+    @Override
+    public RhythmOverlay addLayer(RhythmSpecLayer layer) {
+        // Inflate first so that added layers go after the inflated ones
+        inflate();
+        return super.addLayer(layer);
+    }
+
+    @Override
+    public RhythmOverlay addLayersFrom(@NonNull RhythmOverlay source) {
+        inflate();
+        return super.addLayersFrom(source);
+    }
+
+    @Override
+    public int size() {
+        inflate();
+        return super.size();
+    }
+}
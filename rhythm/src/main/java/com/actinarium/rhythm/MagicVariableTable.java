@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Magic variables applicable to a single layer type, i.e. the ones named <code>@{layer_type}_{arg_name}</code>, with the
+ * prefix already stripped. Built once per variable scope and layer type, so that {@link MagicVariablesArgumentsBundle}
+ * can look arguments up without building variable names, and compare by these variables only rather than by all
+ * variables in scope.
+ *
+ * @author Paul Danyliuk
+ */
+final class MagicVariableTable {
+
+    static final MagicVariableTable EMPTY = new MagicVariableTable(new String[0], new String[0]);
+
+    // Argument names as in variable names (with underscores instead of dashes), and values
+    private final String[] mNames;
+    private final String[] mValues;
+
+    private MagicVariableTable(String[] names, String[] values) {
+        mNames = names;
+        mValues = values;
+    }
+
+    /**
+     * Get the table of magic variables for provided layer type, reusing the one built for the scope if possible
+     *
+     * @param variables variables visible to the layer
+     * @param layerType layer type as written in the config
+     * @return magic variables table
+     */
+    static MagicVariableTable of(Map<String, String> variables, String layerType) {
+        if (variables instanceof VariableScope) {
+            return ((VariableScope) variables).getMagicVariables(layerType);
+        }
+        return collect(variables, layerType);
+    }
+
+    /**
+     * Pick magic variables for provided layer type from all variables
+     *
+     * @param variables variables visible to the layer
+     * @param layerType layer type as written in the config
+     * @return magic variables table
+     */
+    static MagicVariableTable collect(Map<String, String> variables, String layerType) {
+        if (variables.isEmpty()) {
+            return EMPTY;
+        }
+        final int prefixLength = layerType.length() + 2;
+        // Sorted, so that tables with the same variables are equal regardless of declaration order
+        TreeMap<String, String> magicVariables = null;
+        for (Map.Entry<String, String> entry : variables.entrySet()) {
+            final String name = entry.getKey();
+            if (hasPrefix(name, layerType)) {
+                if (magicVariables == null) {
+                    magicVariables = new TreeMap<>();
+                }
+                magicVariables.put(name.substring(prefixLength), entry.getValue());
+            }
+        }
+        if (magicVariables == null) {
+            return EMPTY;
+        }
+
+        final String[] names = magicVariables.keySet().toArray(new String[magicVariables.size()]);
+        final String[] values = magicVariables.values().toArray(new String[magicVariables.size()]);
+        return new MagicVariableTable(names, values);
+    }
+
+    /**
+     * Check whether any of provided variables is a magic variable for provided layer type
+     *
+     * @param variables variables to check
+     * @param layerType layer type as written in the config
+     * @return true if there's at least one magic variable
+     */
+    static boolean containsAny(Map<String, String> variables, String layerType) {
+        for (String name : variables.keySet()) {
+            if (hasPrefix(name, layerType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether variable name starts with <code>@{layer_type}_</code> followed by at least one char, without
+     * building the prefix string
+     */
+    private static boolean hasPrefix(String name, String layerType) {
+        final int length = layerType.length();
+        if (name.length() <= length + 2 || name.charAt(0) != '@' || name.charAt(length + 1) != '_') {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            final char c = layerType.charAt(i);
+            if (name.charAt(i + 1) != (c == '-' ? '_' : c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isEmpty() {
+        return mNames.length == 0;
+    }
+
+    /**
+     * Get the value of magic variable for provided argument
+     *
+     * @param argument argument name, may contain dashes
+     * @return variable value, or <code>null</code> if there's no magic variable for this argument
+     */
+    String get(String argument) {
+        for (int i = 0; i < mNames.length; i++) {
+            if (matches(mNames[i], argument)) {
+                return mValues[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compare variable name suffix to argument name, treating dashes in the latter as underscores
+     */
+    private static boolean matches(String name, String argument) {
+        final int length = name.length();
+        if (argument.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            final char c = argument.charAt(i);
+            if (name.charAt(i) != (c == '-' ? '_' : c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (o == null || getClass() != o.getClass()) { return false; }
+        MagicVariableTable that = (MagicVariableTable) o;
+        return Arrays.equals(mNames, that.mNames) && Arrays.equals(mValues, that.mValues);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(mNames) + Arrays.hashCode(mValues);
+    }
+}
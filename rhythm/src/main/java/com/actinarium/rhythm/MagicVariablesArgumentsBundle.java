@@ -30,9 +30,13 @@ import java.util.Map;
  */
 public class MagicVariablesArgumentsBundle extends SimpleArgumentsBundle {
 
-    protected String mLayerNamePrefix;
     protected Map<String, String> mVariables;
 
+    /**
+     * Magic variables for this layer type, the only variables that can affect the arguments
+     */
+    private final MagicVariableTable mMagicVariables;
+
     /**
      * Create a new simple arguments bundle implementation from provided key-&gt;value map.
      *
@@ -53,7 +57,7 @@ public class MagicVariablesArgumentsBundle extends SimpleArgumentsBundle {
                                          @NonNull DisplayMetrics metrics) {
         super(arguments, metrics);
         mVariables = variables;
-        mLayerNamePrefix = '@' + layerName.replace('-', '_') + '_';
+        mMagicVariables = MagicVariableTable.of(variables, layerName);
     }
 
     /**
@@ -61,7 +65,7 @@ public class MagicVariablesArgumentsBundle extends SimpleArgumentsBundle {
      */
     @Override
     public boolean hasArgument(String key) {
-        return mArguments.containsKey(key) || mVariables.containsKey(mLayerNamePrefix + key.replace('-', '_'));
+        return mArguments.containsKey(key) || mMagicVariables.get(key) != null;
     }
 
     /**
@@ -76,7 +80,7 @@ public class MagicVariablesArgumentsBundle extends SimpleArgumentsBundle {
     protected String resolveArgument(String key) {
         String value = mArguments.get(key);
         if (value == null && !mArguments.containsKey(key)) {
-            value = mVariables.get(mLayerNamePrefix + key.replace('-', '_'));
+            value = mMagicVariables.get(key);
         }
         return value;
     }
@@ -87,13 +91,14 @@ public class MagicVariablesArgumentsBundle extends SimpleArgumentsBundle {
         if (o == null || getClass() != o.getClass()) { return false; }
         if (!super.equals(o)) { return false; }
         MagicVariablesArgumentsBundle that = (MagicVariablesArgumentsBundle) o;
-        return mVariables.equals(that.mVariables);
+        // Other variables in scope don't affect the arguments, so they shouldn't prevent layer reuse
+        return mMagicVariables.equals(that.mMagicVariables);
     }
 
     @Override
     public int hashCode() {
         int result = super.hashCode();
-        result = 31 * result + mVariables.hashCode();
+        result = 31 * result + mMagicVariables.hashCode();
         return result;
     }
 }
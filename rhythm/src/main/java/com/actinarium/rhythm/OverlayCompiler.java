@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.text.Layout;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Collects primitives of {@link CompilableSpecLayer}s while {@link RhythmOverlay#compile(Rect) compiling} an
+ * overlay, flattening the layer tree into struct-of-arrays buffers of a {@link CompiledOverlay}. Groups add their
+ * children with {@link #addLayer(RhythmSpecLayer, Rect)}, which either compiles the child in place, or records it to
+ * be drawn as is if it can't be compiled.</p><p>Primitives are drawn in the order of adding, with the same canvas
+ * calls the layers would make, so the result is pixel-identical to drawing the layer tree. Coordinates are copied, so
+ * the layers are free to reuse their rects after adding them.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public final class OverlayCompiler {
+
+    static final byte OP_RECT = 0;
+    static final byte OP_LINES = 1;
+    static final byte OP_TEXT = 2;
+    static final byte OP_CLIP = 3;
+    static final byte OP_RESTORE = 4;
+    static final byte OP_LAYER = 5;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    byte[] mOps = new byte[INITIAL_CAPACITY];
+    int mOpCount;
+
+    // Paints, deduplicated by identity and referenced by index
+    final List<Paint> mPaints = new ArrayList<>();
+    private final Map<Paint, Integer> mPaintIndices = new IdentityHashMap<>();
+
+    // Rects: 4 coordinates and a paint index each
+    float[] mRects = new float[INITIAL_CAPACITY * 4];
+    int[] mRectPaints = new int[INITIAL_CAPACITY];
+    int mRectCount;
+
+    // Lines: a range of points and a paint index each
+    float[] mLinePoints = new float[INITIAL_CAPACITY * 4];
+    int mLinePointCount;
+    int[] mLineRanges = new int[INITIAL_CAPACITY * 2];
+    int[] mLinePaints = new int[INITIAL_CAPACITY];
+    int mLineCount;
+
+    // Text runs: a layout and its origin each
+    final List<Layout> mTexts = new ArrayList<>();
+    float[] mTextOrigins = new float[INITIAL_CAPACITY * 2];
+
+    // Clips: 4 coordinates each
+    int[] mClips = new int[INITIAL_CAPACITY * 4];
+    int mClipCount;
+
+    // Layers that can't be compiled, drawn as is within a copy of their bounds
+    final List<RhythmSpecLayer> mLayers = new ArrayList<>();
+    final List<Rect> mLayerBounds = new ArrayList<>();
+
+    /**
+     * Clips currently in effect: for each clipRect() call, whether it was emitted, and the resulting clip
+     */
+    private final List<Rect> mClipStack = new ArrayList<>();
+    private final List<Boolean> mClipEmitted = new ArrayList<>();
+
+    OverlayCompiler() {
+    }
+
+    /**
+     * Add a layer: compile it in place if it's a {@link CompilableSpecLayer}, or record it to be drawn as is otherwise
+     *
+     * @param layer          layer to add
+     * @param drawableBounds bounds to draw the layer within
+     */
+    public void addLayer(RhythmSpecLayer layer, Rect drawableBounds) {
+        if (isCompilable(layer)) {
+            ((CompilableSpecLayer) layer).compile(this, drawableBounds);
+        } else {
+            addDrawnLayer(layer, drawableBounds);
+        }
+    }
+
+    /**
+     * Record a layer to be drawn as is with {@link RhythmSpecLayer#draw(Canvas, Rect)}. Use it for compilable layers
+     * that can't be flattened in their current configuration.
+     *
+     * @param layer          layer to draw
+     * @param drawableBounds bounds to draw the layer within, copied
+     */
+    public void addDrawnLayer(RhythmSpecLayer layer, Rect drawableBounds) {
+        addOp(OP_LAYER);
+        mLayers.add(layer);
+        mLayerBounds.add(new Rect(drawableBounds));
+    }
+
+    /**
+     * Add a rect, drawn with {@link Canvas#drawRect(float, float, float, float, Paint)}
+     */
+    public void addRect(float left, float top, float right, float bottom, Paint paint) {
+        addOp(OP_RECT);
+        mRects = ensureCapacity(mRects, mRectCount * 4 + 4);
+        mRectPaints = ensureCapacity(mRectPaints, mRectCount + 1);
+        final int i = mRectCount * 4;
+        mRects[i] = left;
+        mRects[i + 1] = top;
+        mRects[i + 2] = right;
+        mRects[i + 3] = bottom;
+        mRectPaints[mRectCount++] = indexOf(paint);
+    }
+
+    /**
+     * Add a rect, drawn with {@link Canvas#drawRect(Rect, Paint)}
+     */
+    public void addRect(Rect rect, Paint paint) {
+        addRect(rect.left, rect.top, rect.right, rect.bottom, paint);
+    }
+
+    /**
+     * Add line segments, drawn with {@link Canvas#drawLines(float[], int, int, Paint)}. The points are copied.
+     */
+    public void addLines(float[] points, int offset, int count, Paint paint) {
+        addOp(OP_LINES);
+        mLinePoints = ensureCapacity(mLinePoints, mLinePointCount + count);
+        mLineRanges = ensureCapacity(mLineRanges, mLineCount * 2 + 2);
+        mLinePaints = ensureCapacity(mLinePaints, mLineCount + 1);
+        System.arraycopy(points, offset, mLinePoints, mLinePointCount, count);
+        mLineRanges[mLineCount * 2] = mLinePointCount;
+        mLineRanges[mLineCount * 2 + 1] = count;
+        mLinePaints[mLineCount++] = indexOf(paint);
+        mLinePointCount += count;
+    }
+
+    /**
+     * Add a text run, drawn by {@link Layout#draw(Canvas)} with the canvas translated to provided origin
+     */
+    public void addText(Layout layout, float x, float y) {
+        addOp(OP_TEXT);
+        mTextOrigins = ensureCapacity(mTextOrigins, mTexts.size() * 2 + 2);
+        mTextOrigins[mTexts.size() * 2] = x;
+        mTextOrigins[mTexts.size() * 2 + 1] = y;
+        mTexts.add(layout);
+    }
+
+    /**
+     * Clip the primitives added until the matching {@link #restore()} call, same as {@link Canvas#save()} followed by
+     * {@link Canvas#clipRect(Rect)}. Clips that can't affect anything (containing the current clip, or enclosing no
+     * primitives) are left out of the compiled overlay.
+     */
+    public void clipRect(Rect clip) {
+        final Rect current = mClipStack.isEmpty() ? null : mClipStack.get(mClipStack.size() - 1);
+        if (current != null && contains(clip, current)) {
+            mClipStack.add(current);
+            mClipEmitted.add(false);
+            return;
+        }
+
+        addOp(OP_CLIP);
+        mClips = ensureCapacity(mClips, mClipCount * 4 + 4);
+        final int i = mClipCount * 4;
+        mClips[i] = clip.left;
+        mClips[i + 1] = clip.top;
+        mClips[i + 2] = clip.right;
+        mClips[i + 3] = clip.bottom;
+        mClipCount++;
+
+        final Rect effective = new Rect(clip);
+        if (current != null && !effective.intersect(current)) {
+            effective.setEmpty();
+        }
+        mClipStack.add(effective);
+        mClipEmitted.add(true);
+    }
+
+    /**
+     * Undo the last {@link #clipRect(Rect)} call
+     *
+     * @throws IllegalStateException if there's no clip to undo
+     */
+    public void restore() {
+        if (mClipStack.isEmpty()) {
+            throw new IllegalStateException("restore() called without matching clipRect()");
+        }
+        mClipStack.remove(mClipStack.size() - 1);
+        if (!mClipEmitted.remove(mClipEmitted.size() - 1)) {
+            return;
+        }
+        if (mOps[mOpCount - 1] == OP_CLIP) {
+            // Nothing was drawn within the clip, so drop it altogether
+            mOpCount--;
+            mClipCount--;
+        } else {
+            addOp(OP_RESTORE);
+        }
+    }
+
+    CompiledOverlay build() {
+        if (!mClipStack.isEmpty()) {
+            throw new IllegalStateException("clipRect() called without matching restore()");
+        }
+        return new CompiledOverlay(this);
+    }
+
+    private void addOp(byte op) {
+        mOps = ensureCapacity(mOps, mOpCount + 1);
+        mOps[mOpCount++] = op;
+    }
+
+    private int indexOf(Paint paint) {
+        Integer index = mPaintIndices.get(paint);
+        if (index == null) {
+            index = mPaints.size();
+            mPaints.add(paint);
+            mPaintIndices.put(paint, index);
+        }
+        return index;
+    }
+
+    private static boolean contains(Rect outer, Rect inner) {
+        return outer.left <= inner.left && outer.top <= inner.top
+                && outer.right >= inner.right && outer.bottom >= inner.bottom;
+    }
+
+    /**
+     * Check whether the layer can be compiled in place, i.e. it's a {@link CompilableSpecLayer} that {@link
+     * CompilableSpecLayer#isCompilable() opted in}
+     */
+    static boolean isCompilable(RhythmSpecLayer layer) {
+        return layer instanceof CompilableSpecLayer && ((CompilableSpecLayer) layer).isCompilable();
+    }
+
+    private static byte[] ensureCapacity(byte[] array, int size) {
+        if (size <= array.length) {
+            return array;
+        }
+        final byte[] newArray = new byte[Math.max(size, array.length * 2)];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+    private static int[] ensureCapacity(int[] array, int size) {
+        if (size <= array.length) {
+            return array;
+        }
+        final int[] newArray = new int[Math.max(size, array.length * 2)];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+    private static float[] ensureCapacity(float[] array, int size) {
+        if (size <= array.length) {
+            return array;
+        }
+        final float[] newArray = new float[Math.max(size, array.length * 2)];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+
+}
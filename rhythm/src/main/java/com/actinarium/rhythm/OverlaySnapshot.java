@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Parsed form of an overlay config file: variables already resolved and lines already split into arguments, same as
+ * what the build-time config compiler generates. Recorded by the inflater while parsing the text, stored by {@link
+ * OverlaySnapshotCache}, and replayed through {@link PrecompiledOverlays}.</p><p>Binary format, all numbers are
+ * big-endian ints: a string table (count, then length and UTF-8 bytes per string), global variables (count, then name
+ * and value string indices), and overlay blocks (count, then per block: line number, title index, local variables,
+ * and layers as line number, indent, type index, and argument name and value indices). Index -1 stands for
+ * <code>null</code>.</p>
+ *
+ * @author Paul Danyliuk
+ */
+final class OverlaySnapshot {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int NULL_INDEX = -1;
+    private static final String[] EMPTY = new String[0];
+
+    private String[] mGlobalVars = EMPTY;
+    private final List<Block> mBlocks = new ArrayList<>();
+    private Block mCurrentBlock;
+    private boolean mIsReplayable = true;
+
+    void setGlobalVariables(Map<String, String> globalVars) {
+        mGlobalVars = toArray(globalVars);
+    }
+
+    void startOverlay(int lineNumber) {
+        mCurrentBlock = new Block(lineNumber);
+        mBlocks.add(mCurrentBlock);
+    }
+
+    void setTitle(String title) {
+        mCurrentBlock.mTitle = title;
+    }
+
+    void addLocalVariable(String name, String value) {
+        mCurrentBlock.mLocalVars.add(name);
+        mCurrentBlock.mLocalVars.add(value);
+    }
+
+    void addLayer(int lineNumber, RhythmOverlayInflater.LayerConfig config) {
+        final ArgumentsBundle bundle = config.getArgumentsBundle();
+        if (bundle instanceof IndexedArgumentsBundle) {
+            mCurrentBlock.mLayers.add(new Layer(lineNumber, config.getIndent(), config.getLayerType(),
+                    toArray((IndexedArgumentsBundle) bundle)));
+            return;
+        }
+        if (!(bundle instanceof SimpleArgumentsBundle)) {
+            // Custom bundles may hold anything, so there's no way to tell what to store
+            mIsReplayable = false;
+            return;
+        }
+        final Map<String, String> arguments = ((SimpleArgumentsBundle) bundle).mArguments;
+        mCurrentBlock.mLayers.add(new Layer(lineNumber, config.getIndent(), config.getLayerType(), toArray(arguments)));
+    }
+
+    /**
+     * @return false if some of the recorded layers can't be stored, so the config must be parsed every time
+     */
+    boolean isReplayable() {
+        return mIsReplayable;
+    }
+
+    /**
+     * Build overlays from this snapshot with factories of provided inflater
+     *
+     * @param inflater inflater to create layers
+     * @return A list of Rhythm overlays, same as if inflated from the text config
+     */
+    List<RhythmOverlay> replay(RhythmOverlayInflater inflater) {
+        final PrecompiledOverlays overlays = new PrecompiledOverlays(inflater).setGlobalVariables(mGlobalVars);
+        for (int i = 0, blocks = mBlocks.size(); i < blocks; i++) {
+            final Block block = mBlocks.get(i);
+            overlays.startOverlay(block.mLineNumber, block.mTitle, block.mLocalVars.toArray(EMPTY));
+            for (int j = 0, layers = block.mLayers.size(); j < layers; j++) {
+                final Layer layer = block.mLayers.get(j);
+                overlays.addLayer(layer.mLineNumber, layer.mIndent, layer.mType, layer.mArguments);
+            }
+        }
+        return overlays.finish();
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        // Collect all strings first so that repeating ones (types, argument names, values) are stored once
+        final List<String> strings = new ArrayList<>();
+        final Map<String, Integer> indices = new HashMap<>();
+        collect(mGlobalVars, strings, indices);
+        for (Block block : mBlocks) {
+            collect(block.mTitle, strings, indices);
+            collect(block.mLocalVars.toArray(EMPTY), strings, indices);
+            for (Layer layer : block.mLayers) {
+                collect(layer.mType, strings, indices);
+                collect(layer.mArguments, strings, indices);
+            }
+        }
+
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            final byte[] bytes = string.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        writeIndices(out, mGlobalVars, indices);
+        out.writeInt(mBlocks.size());
+        for (Block block : mBlocks) {
+            out.writeInt(block.mLineNumber);
+            out.writeInt(indexOf(block.mTitle, indices));
+            writeIndices(out, block.mLocalVars.toArray(EMPTY), indices);
+            out.writeInt(block.mLayers.size());
+            for (Layer layer : block.mLayers) {
+                out.writeInt(layer.mLineNumber);
+                out.writeInt(layer.mIndent);
+                out.writeInt(indexOf(layer.mType, indices));
+                writeIndices(out, layer.mArguments, indices);
+            }
+        }
+    }
+
+    /**
+     * Decode a snapshot written with {@link #writeTo(DataOutputStream)}
+     *
+     * @param buffer buffer positioned at the start of the snapshot data
+     * @return decoded snapshot
+     * @throws RuntimeException (e.g. {@link java.nio.BufferUnderflowException}) if the data is truncated or corrupt
+     */
+    static OverlaySnapshot readFrom(ByteBuffer buffer) {
+        final String[] strings = new String[buffer.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            final byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            strings[i] = new String(bytes, UTF_8);
+        }
+
+        final OverlaySnapshot snapshot = new OverlaySnapshot();
+        snapshot.mGlobalVars = readStrings(buffer, strings);
+        for (int i = 0, blocks = buffer.getInt(); i < blocks; i++) {
+            snapshot.startOverlay(buffer.getInt());
+            snapshot.setTitle(readString(buffer, strings));
+            final String[] localVars = readStrings(buffer, strings);
+            for (int j = 0; j < localVars.length; j += 2) {
+                snapshot.addLocalVariable(localVars[j], localVars[j + 1]);
+            }
+            for (int j = 0, layers = buffer.getInt(); j < layers; j++) {
+                final int lineNumber = buffer.getInt();
+                final int indent = buffer.getInt();
+                final String type = readString(buffer, strings);
+                snapshot.mCurrentBlock.mLayers.add(new Layer(lineNumber, indent, type, readStrings(buffer, strings)));
+            }
+        }
+        return snapshot;
+    }
+
+    private static String[] toArray(Map<String, String> map) {
+        final String[] keysAndValues = new String[map.size() * 2];
+        int i = 0;
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            keysAndValues[i++] = entry.getKey();
+            keysAndValues[i++] = entry.getValue();
+        }
+        return keysAndValues;
+    }
+
+    /**
+     * Get declared arguments of an indexed bundle. Defaults are left out, since they are filled in again on replay
+     */
+    private static String[] toArray(IndexedArgumentsBundle bundle) {
+        final List<String> keysAndValues = new ArrayList<>();
+        for (int i = 0, size = bundle.mSchema.size(); i < size; i++) {
+            if (bundle.hasArgument(i)) {
+                keysAndValues.add(bundle.mSchema.getName(i));
+                keysAndValues.add(bundle.getString(i));
+            }
+        }
+        return keysAndValues.toArray(EMPTY);
+    }
+
+    private static void collect(String string, List<String> strings, Map<String, Integer> indices) {
+        if (string != null && !indices.containsKey(string)) {
+            indices.put(string, strings.size());
+            strings.add(string);
+        }
+    }
+
+    private static void collect(String[] array, List<String> strings, Map<String, Integer> indices) {
+        for (String string : array) {
+            collect(string, strings, indices);
+        }
+    }
+
+    private static int indexOf(String string, Map<String, Integer> indices) {
+        return string == null ? NULL_INDEX : indices.get(string);
+    }
+
+    private static void writeIndices(DataOutputStream out, String[] array, Map<String, Integer> indices)
+            throws IOException {
+        out.writeInt(array.length);
+        for (String string : array) {
+            out.writeInt(indexOf(string, indices));
+        }
+    }
+
+    private static String readString(ByteBuffer buffer, String[] strings) {
+        final int index = buffer.getInt();
+        return index == NULL_INDEX ? null : strings[index];
+    }
+
+    private static String[] readStrings(ByteBuffer buffer, String[] strings) {
+        final int length = buffer.getInt();
+        if (length < 0 || length % 2 != 0) {
+            throw new IllegalStateException("Corrupt snapshot");
+        }
+        final String[] array = new String[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = readString(buffer, strings);
+        }
+        return array;
+    }
+
+    private static final class Block {
+        private final int mLineNumber;
+        private String mTitle;
+        private final List<String> mLocalVars = new ArrayList<>();
+        private final List<Layer> mLayers = new ArrayList<>();
+
+        private Block(int lineNumber) {
+            mLineNumber = lineNumber;
+        }
+    }
+
+    private static final class Layer {
+        private final int mLineNumber;
+        private final int mIndent;
+        private final String mType;
+        private final String[] mArguments;
+
+        private Layer(int lineNumber, int indent, String type, String[] arguments) {
+            mLineNumber = lineNumber;
+            mIndent = indent;
+            mType = type;
+            mArguments = arguments;
+        }
+    }
+
+}
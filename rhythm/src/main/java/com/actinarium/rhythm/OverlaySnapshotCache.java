@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.util.Log;
+import com.actinarium.rhythm.internal.ReaderUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>On-disk cache of parsed overlay configs, for configs loaded from files or downloaded at runtime, which can't be
+ * precompiled at build time. Once a config is inflated with {@link RhythmOverlayInflater#inflate(List)} or {@link
+ * RhythmOverlayInflater#inflate(String)}, its parsed form is written to the cache directory, and the next time the
+ * same config is inflated (e.g. on the next launch) the layers are rebuilt from the snapshot without tokenizing text
+ * or resolving variables. Usage:</p>
+ * <pre><code>
+ * inflater.setSnapshotCache(OverlaySnapshotCache.inCacheDir(context));
+ * </code></pre>
+ * <p>Snapshots are looked up by a key combining the config contents, the set of factories registered in the inflater,
+ * magic variables setting, and display density and dpi, so if any of those changes, the config is simply parsed again.
+ * Layers are still created by the inflater's factories, so the result is the same as of parsing the text. Unreadable
+ * snapshots are discarded, and failing to write one is not an error &mdash; the cache is only an optimization.</p>
+ * <p><b>Note:</b> since snapshots store what the stock parser produces, this cache is bypassed for subclasses of
+ * {@link RhythmOverlayInflater} unless they opt in via {@link RhythmOverlayInflater#canReuseConfigs()}.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public class OverlaySnapshotCache {
+
+    /**
+     * Logcat tag for snapshot read/write failures
+     */
+    public static final String LOG_TAG = "RhythmSnapshotCache";
+
+    /**
+     * Name of the directory created in the app's cache dir by {@link #inCacheDir(Context)}
+     */
+    public static final String DEFAULT_DIR_NAME = "rhythm-snapshots";
+
+    /**
+     * Snapshot file header: "RHYS" followed by format version. Bump the version whenever the format changes
+     */
+    private static final int MAGIC = 0x52485953;
+    private static final int FORMAT_VERSION = 1;
+    private static final String SUFFIX = ".snapshot";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    protected final File mDirectory;
+
+    /**
+     * Create a snapshot cache storing files in provided directory
+     *
+     * @param directory directory for snapshot files. Created on first write if it doesn't exist
+     */
+    public OverlaySnapshotCache(@NonNull File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Create a snapshot cache in a dedicated directory in the app's cache dir, so that the system can reclaim the
+     * space if needed
+     *
+     * @param context context to get the cache dir from
+     * @return snapshot cache
+     */
+    public static OverlaySnapshotCache inCacheDir(@NonNull Context context) {
+        return new OverlaySnapshotCache(new File(context.getCacheDir(), DEFAULT_DIR_NAME));
+    }
+
+    /**
+     * Delete all stored snapshots
+     */
+    public void clear() {
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX)) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Compute the key a config's snapshot is stored by, which changes if the config text, registered factories, magic
+     * variables setting, or display density or dpi change
+     *
+     * @param inflater      inflater that's going to inflate the config
+     * @param configStrings config lines
+     * @return snapshot key
+     */
+    byte[] computeKey(RhythmOverlayInflater inflater, List<String> configStrings) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is guaranteed to be available on Android
+            throw new IllegalStateException(e);
+        }
+
+        digest.update(toBytes(FORMAT_VERSION));
+        digest.update(toBytes(Float.floatToIntBits(inflater.mDisplayMetrics.density)));
+        digest.update(toBytes(Float.floatToIntBits(inflater.mDisplayMetrics.scaledDensity)));
+        digest.update(toBytes(Float.floatToIntBits(inflater.mDisplayMetrics.xdpi)));
+        // Layers with declared arguments are recorded with magic variables already resolved
+        digest.update((byte) (inflater.mAreMagicVariablesEnabled ? 1 : 0));
+
+        // Sort the factories, since the order of registration doesn't matter
+        final Map<String, RhythmSpecLayerFactory> factories = new TreeMap<>(inflater.mFactories);
+        for (Map.Entry<String, RhythmSpecLayerFactory> entry : factories.entrySet()) {
+            RhythmSpecLayerFactory factory = entry.getValue();
+            if (factory instanceof SimpleCacheFactory) {
+                factory = ((SimpleCacheFactory) factory).getDecoratedFactory();
+            }
+            digest.update(entry.getKey().getBytes(UTF_8));
+            digest.update((byte) '=');
+            digest.update(factory.getClass().getName().getBytes(UTF_8));
+            digest.update((byte) '\n');
+        }
+
+        // Line count goes first so that the factories and the config text can't be mixed up
+        digest.update(toBytes(configStrings.size()));
+        for (int i = 0, len = configStrings.size(); i < len; i++) {
+            digest.update(configStrings.get(i).getBytes(UTF_8));
+            digest.update((byte) '\n');
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Read a snapshot stored by provided key
+     *
+     * @param key snapshot key
+     * @return snapshot, or null if there's none or it can't be read
+     */
+    OverlaySnapshot load(byte[] key) {
+        final File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        RandomAccessFile input = null;
+        try {
+            input = new RandomAccessFile(file, "r");
+            final FileChannel channel = input.getChannel();
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                throw new IllegalStateException("Unsupported snapshot format");
+            }
+            final byte[] storedKey = new byte[key.length];
+            buffer.get(storedKey);
+            if (!Arrays.equals(key, storedKey)) {
+                throw new IllegalStateException("Snapshot key mismatch");
+            }
+            return OverlaySnapshot.readFrom(buffer);
+        } catch (IOException | RuntimeException e) {
+            Log.w(LOG_TAG, "Discarding unreadable snapshot " + file, e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        } finally {
+            ReaderUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Write a snapshot by provided key. Failures are logged and otherwise ignored
+     *
+     * @param key      snapshot key
+     * @param snapshot snapshot to write
+     */
+    void save(byte[] key, OverlaySnapshot snapshot) {
+        File tempFile = null;
+        DataOutputStream output = null;
+        try {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                throw new IOException("Cannot create directory " + mDirectory);
+            }
+
+            // Write to a temp file first, so that other readers never see a partially written snapshot
+            tempFile = File.createTempFile("snapshot", ".tmp", mDirectory);
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.write(key);
+            snapshot.writeTo(output);
+            output.close();
+            output = null;
+
+            if (!tempFile.renameTo(getFile(key))) {
+                throw new IOException("Cannot rename " + tempFile);
+            }
+            tempFile = null;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Cannot write snapshot to " + mDirectory, e);
+        } finally {
+            ReaderUtils.closeQuietly(output);
+            if (tempFile != null) {
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+            }
+        }
+    }
+
+    private File getFile(byte[] key) {
+        final char[] hex = new char[key.length * 2];
+        for (int i = 0; i < key.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(key[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[key[i] & 0xF];
+        }
+        return new File(mDirectory, new String(hex) + SUFFIX);
+    }
+
+    private static byte[] toBytes(int value) {
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import android.annotation.SuppressLint;
+import android.graphics.Color;
+import android.support.annotation.ColorInt;
+import android.util.DisplayMetrics;
+import android.view.Gravity;
+import com.actinarium.rhythm.config.ArgumentValues;
+
+import static com.actinarium.rhythm.ArgumentsBundle.UNITS_DP;
+import static com.actinarium.rhythm.ArgumentsBundle.UNITS_IN;
+import static com.actinarium.rhythm.ArgumentsBundle.UNITS_MM;
+import static com.actinarium.rhythm.ArgumentsBundle.UNITS_NULL;
+import static com.actinarium.rhythm.ArgumentsBundle.UNITS_NUMBER;
+import static com.actinarium.rhythm.ArgumentsBundle.UNITS_PERCENT;
+import static com.actinarium.rhythm.ArgumentsBundle.UNITS_PT;
+import static com.actinarium.rhythm.ArgumentsBundle.UNITS_PX;
+import static com.actinarium.rhythm.ArgumentsBundle.UNITS_SP;
+import static com.actinarium.rhythm.config.ArgumentValues.findNumberLength;
+import static com.actinarium.rhythm.config.ArgumentValues.isDigit;
+
+/**
+ * Raw argument value along with the typed values parsed from it so far. Each type is parsed on first access and then
+ * reused, so arguments bundles can answer repeated queries without parsing or allocating anything. Shared by {@link
+ * SimpleArgumentsBundle} and {@link IndexedArgumentsBundle} to parse values exactly the same way.
+ *
+ * @author Paul Danyliuk
+ */
+final class ParsedArgument {
+
+    private static final int DIMENSION = 1;
+    private static final int COLOR = 1 << 1;
+    private static final int GRAVITY = 1 << 2;
+
+    String mRaw;
+    private int mParsedTypes;
+
+    @ArgumentsBundle.DimensionUnits
+    private int mUnits;
+    private boolean mHasNumber;
+    private float mNumber;
+    @ColorInt
+    private int mColor;
+    private int mGravity;
+
+    ParsedArgument(String raw) {
+        mRaw = raw;
+    }
+
+    /**
+     * Forget parsed values and take a new raw value, so that scratch bundles can reuse this object for the next line
+     *
+     * @param raw new raw value
+     */
+    void reset(String raw) {
+        mRaw = raw;
+        mParsedTypes = 0;
+        mHasNumber = false;
+    }
+
+    @ColorInt
+    int getColor(@ColorInt int defaultValue) {
+        if (mRaw == null) {
+            return defaultValue;
+        }
+        if ((mParsedTypes & COLOR) == 0) {
+            // Parse first and only then set the flag, so that malformed colors keep throwing on every call
+            mColor = Color.parseColor(mRaw);
+            mParsedTypes |= COLOR;
+        }
+        return mColor;
+    }
+
+    int getGravity(int defaultValue) {
+        if (mRaw == null) {
+            return defaultValue;
+        }
+        if ((mParsedTypes & GRAVITY) == 0) {
+            mGravity = parseGravity(mRaw);
+            mParsedTypes |= GRAVITY;
+        }
+        return mGravity;
+    }
+
+    @ArgumentsBundle.DimensionUnits
+    int getDimensionUnits() {
+        parseDimension();
+        return mUnits;
+    }
+
+    float getDimensionValue(float defaultValue) {
+        parseDimension();
+        return mHasNumber ? mNumber : defaultValue;
+    }
+
+    float getDimensionPixelExact(float defaultValue, DisplayMetrics metrics) {
+        parseDimension();
+        if (mUnits == UNITS_NULL) {
+            return defaultValue;
+        }
+        float rawValue = mHasNumber ? mNumber : defaultValue;
+        return SimpleArgumentsBundle.getDimensionPixelRaw(rawValue, mUnits, metrics);
+    }
+
+    int getDimensionPixelOffset(int defaultValue, DisplayMetrics metrics) {
+        parseDimension();
+        if (mUnits == UNITS_NULL) {
+            return defaultValue;
+        }
+        float rawValue = mHasNumber ? mNumber : defaultValue;
+        return (int) SimpleArgumentsBundle.getDimensionPixelRaw(rawValue, mUnits, metrics);
+    }
+
+    int getDimensionPixelSize(int defaultValue, DisplayMetrics metrics) {
+        parseDimension();
+        float rawValue = mHasNumber ? mNumber : defaultValue;
+        float result = SimpleArgumentsBundle.getDimensionPixelRaw(rawValue, mUnits, metrics);
+
+        final int res = (int) (result + 0.5f);
+        if (res != 0) { return res; }
+        if (rawValue == 0) { return 0; }
+        if (rawValue > 0) { return 1; }
+        return defaultValue;
+    }
+
+    private void parseDimension() {
+        if ((mParsedTypes & DIMENSION) != 0) {
+            return;
+        }
+        mUnits = parseDimensionUnits(mRaw);
+        if (mRaw != null) {
+            final int numberLength = findNumberLength(mRaw);
+            if (numberLength != 0) {
+                mNumber = parseNumber(mRaw, numberLength);
+                mHasNumber = true;
+            }
+        }
+        mParsedTypes |= DIMENSION;
+    }
+
+    /**
+     * Does a quick and rough parsing of the raw string for containing constant words like <code>top</code> or
+     * <code>center_vertical</code>
+     */
+    @SuppressLint("RtlHardcoded")
+    private static int parseGravity(String gravityArg) {
+        if (gravityArg.equals("center")) {
+            return Gravity.CENTER;
+        } else if (gravityArg.equals("fill")) {
+            return Gravity.FILL;
+        } else {
+            // supported options
+            int gravity = 0;
+            if (gravityArg.contains("top")) {
+                gravity |= Gravity.TOP;
+            }
+            if (gravityArg.contains("bottom")) {
+                gravity |= Gravity.BOTTOM;
+            }
+            if (gravityArg.contains("center_vertical")) {
+                gravity |= Gravity.CENTER_VERTICAL;
+            }
+            if (gravityArg.contains("fill_vertical")) {
+                gravity |= Gravity.FILL_VERTICAL;
+            }
+            if (gravityArg.contains("left")) {
+                gravity |= Gravity.LEFT;
+            }
+            if (gravityArg.contains("right")) {
+                gravity |= Gravity.RIGHT;
+            }
+            if (gravityArg.contains("center_horizontal")) {
+                gravity |= Gravity.CENTER_HORIZONTAL;
+            }
+            if (gravityArg.contains("fill_horizontal")) {
+                gravity |= Gravity.FILL_HORIZONTAL;
+            }
+            return gravity;
+        }
+    }
+
+    @SuppressLint("RtlHardcoded")
+    @ArgumentsBundle.EdgeAffinity
+    static int parseEdgeAffinity(String gravityArg, @ArgumentsBundle.EdgeAffinity int defaultValue) {
+        if ("top".equals(gravityArg)) {
+            return Gravity.TOP;
+        } else if ("left".equals(gravityArg)) {
+            return Gravity.LEFT;
+        } else if ("right".equals(gravityArg)) {
+            return Gravity.RIGHT;
+        } else if ("bottom".equals(gravityArg)) {
+            return Gravity.BOTTOM;
+        } else {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Crude check of trailing string characters (i.e. whether the string ends with "dp", "px", "%" etc)
+     */
+    @ArgumentsBundle.DimensionUnits
+    private static int parseDimensionUnits(String value) {
+        if (value == null) {
+            return UNITS_NULL;
+        } else if (value.endsWith("dp") || value.endsWith("dip")) {
+            return UNITS_DP;
+        } else if (value.endsWith("px")) {
+            return UNITS_PX;
+        } else if (value.endsWith("%")) {
+            return UNITS_PERCENT;
+        } else if (value.endsWith("sp")) {
+            return UNITS_SP;
+        } else if (value.endsWith("pt")) {
+            return UNITS_PT;
+        } else if (value.endsWith("in")) {
+            return UNITS_IN;
+        } else if (value.endsWith("mm")) {
+            return UNITS_MM;
+        } else {
+            // assume raw number, try to parse as float
+            return UNITS_NUMBER;
+        }
+    }
+
+    /**
+     * Parse the number found with {@link ArgumentValues#findNumberLength(String)}. Integers, which most dimension
+     * values are, are parsed in place, and only fractions are cut out and given to {@link Float#parseFloat(String)}
+     */
+    private static float parseNumber(String value, int numberLength) {
+        final boolean isNegative = value.charAt(0) == '-';
+        final int intStart = isNegative ? 1 : 0;
+        // Up to 9 digits always fit into an int, and converting an int to float rounds the same as parseFloat does
+        if (numberLength - intStart > 9) {
+            return Float.parseFloat(value.substring(0, numberLength));
+        }
+        int number = 0;
+        for (int i = intStart; i < numberLength; i++) {
+            final char c = value.charAt(i);
+            if (!isDigit(c)) {
+                return Float.parseFloat(value.substring(0, numberLength));
+            }
+            number = number * 10 + (c - '0');
+        }
+        return isNegative ? -(float) number : (float) number;
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>A handle for overlays being inflated in the background, returned by {@link RhythmOverlayInflater#inflateAsync(int)}
+ * and similar methods. Once inflation is done, the result is delivered on the main thread to all registered {@link
+ * Callback Callbacks}. Callbacks added after that are called right away.</p><p>The handle is not thread-safe and is
+ * meant to be used from the main thread only, which is also where its state changes.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public class PendingOverlays {
+
+    private final Handler mMainHandler;
+    private final List<Callback> mCallbacks = new ArrayList<>(2);
+
+    private boolean mIsDone;
+    private List<RhythmOverlay> mOverlays;
+    private RhythmInflationException mError;
+
+    PendingOverlays() {
+        mMainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Check if inflation has finished, either successfully or not
+     *
+     * @return true if the result is available
+     */
+    @MainThread
+    public boolean isDone() {
+        return mIsDone;
+    }
+
+    /**
+     * Get inflated overlays
+     *
+     * @return A list of inflated overlays, or <code>null</code> if inflation is still in progress or has failed
+     */
+    @MainThread
+    public List<RhythmOverlay> getOverlays() {
+        return mOverlays;
+    }
+
+    /**
+     * Get the error that happened during inflation
+     *
+     * @return Inflation error, or <code>null</code> if inflation is still in progress or has succeeded
+     */
+    @MainThread
+    public RhythmInflationException getError() {
+        return mError;
+    }
+
+    /**
+     * Register a callback to be notified when inflation is done. If it's already done, the callback is called
+     * immediately.
+     *
+     * @param callback Callback to notify on the main thread
+     * @return this for chaining
+     */
+    @MainThread
+    public PendingOverlays addCallback(@NonNull Callback callback) {
+        if (mIsDone) {
+            dispatch(callback);
+        } else {
+            mCallbacks.add(callback);
+        }
+        return this;
+    }
+
+    /**
+     * Called from a background thread to post the result to the main thread
+     */
+    void postResult(final List<RhythmOverlay> overlays, final RhythmInflationException error) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mOverlays = overlays;
+                mError = error;
+                mIsDone = true;
+                for (int i = 0, size = mCallbacks.size(); i < size; i++) {
+                    dispatch(mCallbacks.get(i));
+                }
+                mCallbacks.clear();
+            }
+        });
+    }
+
+    private void dispatch(Callback callback) {
+        if (mError == null) {
+            callback.onOverlaysInflated(mOverlays);
+        } else {
+            callback.onInflationFailed(mError);
+        }
+    }
+
+    /**
+     * A callback to receive the result of asynchronous inflation on the main thread
+     */
+    public interface Callback {
+
+        /**
+         * Called on the main thread when overlays are successfully inflated
+         *
+         * @param overlays A list of inflated overlays
+         */
+        void onOverlaysInflated(List<RhythmOverlay> overlays);
+
+        /**
+         * Called on the main thread if inflation has failed
+         *
+         * @param error Error describing what went wrong, usually with the line number
+         */
+        void onInflationFailed(RhythmInflationException error);
+    }
+}
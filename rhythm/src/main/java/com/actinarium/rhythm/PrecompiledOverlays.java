@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Runtime support for overlay configs precompiled into Java at build time. The generated code replays the config
+ * block by block and line by line, with variables already resolved and lines already split into arguments, so there's
+ * nothing left to read or parse. Layers are still created by the factories registered in provided {@link
+ * RhythmOverlayInflater}, and nested the same way the inflater would do it, so the result is the same as of {@link
+ * RhythmOverlayInflater#inflate(int)} for the same config.</p><p>This class is not meant to be used directly &mdash;
+ * the calls are generated by the <code>GenerateRhythmOverlays</code> Gradle task.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public class PrecompiledOverlays {
+
+    protected final RhythmOverlayInflater mInflater;
+    private final List<RhythmOverlay> mOverlays = new ArrayList<>();
+    // Groups are shared between the overlays built here only
+    private final SubtreePool mSubtreePool;
+    private Map<String, String> mGlobalVars = Collections.emptyMap();
+
+    // State of the block being built
+    private RhythmOverlay mOverlay;
+    private LayerTreeAssembler mAssembler;
+    private Map<String, String> mVars;
+    private int mOverlayLineNumber;
+    private long mOverlayStartTime;
+
+    /**
+     * Start building overlays from a precompiled config
+     *
+     * @param inflater inflater whose factories and settings to use
+     */
+    public PrecompiledOverlays(@NonNull RhythmOverlayInflater inflater) {
+        mInflater = inflater;
+        mSubtreePool = inflater.newSubtreePool();
+    }
+
+    /**
+     * Declare global variables. Their values are already resolved, and they're only used for magic variables, if
+     * enabled in the inflater.
+     *
+     * @param namesAndValues variable names (including <code>@</code>) and values, alternating
+     * @return this for chaining
+     */
+    public PrecompiledOverlays setGlobalVariables(String... namesAndValues) {
+        if (mInflater.mAreMagicVariablesEnabled) {
+            mGlobalVars = toMap(namesAndValues, new VariableScope(null));
+        }
+        return this;
+    }
+
+    /**
+     * Complete the previous overlay, if any, and start a new one
+     *
+     * @param lineNumber          index of the line where the overlay block starts
+     * @param title               overlay title, or <code>null</code> if the block has no title
+     * @param localNamesAndValues local variable names (including <code>@</code>) and values, alternating. Their values
+     *                            are already resolved, and they're only used for magic variables, if enabled
+     * @return this for chaining
+     */
+    public PrecompiledOverlays startOverlay(int lineNumber, String title, String... localNamesAndValues) {
+        finishOverlay();
+
+        final InflationListener listener = mInflater.mListener;
+        if (listener != null) {
+            listener.onBlockStarted(lineNumber);
+            mOverlayStartTime = System.nanoTime();
+        }
+
+        mOverlay = new RhythmOverlay();
+        if (title != null) {
+            mOverlay.setTitle(title);
+        }
+        mAssembler = new LayerTreeAssembler(mOverlay, mSubtreePool);
+        mOverlayLineNumber = lineNumber;
+        mVars = localNamesAndValues.length == 0 || !mInflater.mAreMagicVariablesEnabled
+                ? mGlobalVars
+                : toMap(localNamesAndValues, new VariableScope(mGlobalVars));
+        return this;
+    }
+
+    /**
+     * Inflate a layer and add it to the current overlay
+     *
+     * @param lineNumber         index of the layer's config line
+     * @param indent             number of leading whitespace chars in the config line
+     * @param layerType          layer type
+     * @param argumentsAndValues argument names and resolved values, alternating. Value is <code>null</code> for
+     *                           arguments declared without a value
+     * @return this for chaining
+     */
+    public PrecompiledOverlays addLayer(int lineNumber, int indent, String layerType, String... argumentsAndValues) {
+        final Map<String, String> arguments = toMap(argumentsAndValues, new ArgumentsMap(argumentsAndValues.length / 2));
+        final RhythmOverlayInflater.LayerConfig config = new RhythmOverlayInflater.LayerConfig(
+                layerType, indent, mInflater.createArgumentsBundle(layerType, arguments, mVars));
+        mAssembler.addLayer(mInflater.inflateLayerInternal(config, lineNumber), indent, config);
+        return this;
+    }
+
+    /**
+     * Complete the last overlay and get all built overlays
+     *
+     * @return A list of Rhythm overlays
+     */
+    public List<RhythmOverlay> finish() {
+        finishOverlay();
+        return mOverlays;
+    }
+
+    private void finishOverlay() {
+        if (mOverlay == null) {
+            return;
+        }
+        mAssembler.finish();
+        mOverlays.add(mOverlay);
+
+        final InflationListener listener = mInflater.mListener;
+        if (listener != null) {
+            listener.onBlockFinished(mOverlayLineNumber, mOverlay, System.nanoTime() - mOverlayStartTime);
+        }
+        mOverlay = null;
+        mAssembler = null;
+    }
+
+    private static Map<String, String> toMap(String[] keysAndValues, Map<String, String> map) {
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+
+}
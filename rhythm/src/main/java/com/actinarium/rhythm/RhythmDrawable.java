@@ -16,14 +16,21 @@
 
 package com.actinarium.rhythm;
 
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
+import android.graphics.Picture;
 import android.graphics.PixelFormat;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
 /**
  * <p>Renders the currently assigned {@link RhythmOverlay} and serves as an adapter between Rhythm (which sets the
  * overlay to draw by this drawable at the moment) and the views where the overlay (grids, keylines etc) must be
@@ -36,15 +43,56 @@ import android.support.annotation.Nullable;
  * respond correctly to state and level changes (e.g. pressing a decorated button won’t highlight it). But since
  * decoration is mostly intended for ViewGroups, it’s unlikely that this should be an issue under normal use.</p>
  * <p>Normally you shouldn’t extend this class. If you need to perform custom drawing, consider creating a custom {@link
- * RhythmSpecLayer} implementation instead.</p>
+ * RhythmSpecLayer} implementation instead.</p> <p>By default the overlay is drawn layer by layer on every frame. For
+ * heavy overlays on views that are redrawn often (e.g. while scrolling), consider enabling {@link
+ * #CACHE_MODE_COMPILED compiled}, {@link #CACHE_MODE_DISPLAY_LIST display list}, or {@link #CACHE_MODE_BITMAP bitmap}
+ * cache mode.</p>
  *
  * @author Paul Danyliuk
  */
 public class RhythmDrawable extends Drawable {
 
+    /**
+     * Draw the overlay layer by layer on every frame. Default mode
+     */
+    public static final int CACHE_MODE_NONE = 0;
+    /**
+     * Draw the overlay into a bitmap the size of the drawable once, and then only draw that bitmap until the overlay or
+     * the bounds change. Takes 4 bytes per pixel of the drawable, see {@link #getCacheMemoryUsage()}. The result
+     * matches direct drawing unless the canvas is scaled or rotated, in which case the bitmap is scaled or rotated
+     * instead of the lines.
+     */
+    public static final int CACHE_MODE_BITMAP = 1;
+    /**
+     * Record the draw operations of the overlay into a {@link Picture} once, and then only replay the recording until
+     * the overlay or the bounds change, so that layers are not walked on every frame. Unlike {@link
+     * #CACHE_MODE_BITMAP}, lines are still rendered at full resolution when the canvas is scaled. Before API 23,
+     * hardware accelerated canvas can't draw pictures, so the overlay is drawn directly there.
+     */
+    public static final int CACHE_MODE_DISPLAY_LIST = 2;
+    /**
+     * Flatten the overlay into a list of primitives once per bounds with {@link RhythmOverlay#compile(Rect)}, and then
+     * draw that list in a single loop instead of walking the layers on every frame. Still drawn directly, so it takes
+     * no memory for pixels and works the same on any canvas. Compiled overlays are kept by the overlay itself and
+     * shared by all drawables it's set to.
+     */
+    public static final int CACHE_MODE_COMPILED = 3;
+
     protected RhythmOverlay mOverlay;
     protected Drawable mDecorated;
 
+    @CacheMode
+    protected int mCacheMode = CACHE_MODE_NONE;
+    /**
+     * Rasterized overlay for bitmap cache mode, or null if not created yet or released
+     */
+    private Bitmap mCacheBitmap;
+    /**
+     * Recorded overlay for display list cache mode, or null if not recorded yet or released
+     */
+    private Picture mCachePicture;
+    private boolean mIsCacheValid;
+
     /**
      * Create a Rhythm drawable for given Rhythm overlay. You can then change the displayed overlay via {@link
      * #setOverlay(RhythmOverlay)} method.
@@ -64,8 +112,137 @@ public class RhythmDrawable extends Drawable {
 
         // Draw overlay if present
         if (mOverlay != null) {
-            mOverlay.draw(canvas, getBounds());
+            final Rect bounds = getBounds();
+            if (mCacheMode == CACHE_MODE_BITMAP && prepareCacheBitmap(bounds)) {
+                canvas.drawBitmap(mCacheBitmap, bounds.left, bounds.top, null);
+            } else if (mCacheMode == CACHE_MODE_DISPLAY_LIST && bounds.width() > 0 && bounds.height() > 0) {
+                drawDisplayList(canvas, bounds);
+            } else if (mCacheMode == CACHE_MODE_COMPILED) {
+                mOverlay.compile(bounds).draw(canvas);
+            } else {
+                mOverlay.draw(canvas, bounds);
+            }
+        }
+    }
+
+    /**
+     * Make sure the cache bitmap matches the bounds and has the current overlay drawn
+     *
+     * @return true if the cache bitmap is ready to draw, false if the overlay must be drawn directly
+     */
+    private boolean prepareCacheBitmap(Rect bounds) {
+        final int width = bounds.width();
+        final int height = bounds.height();
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+
+        if (mCacheBitmap == null || mCacheBitmap.getWidth() != width || mCacheBitmap.getHeight() != height) {
+            releaseCache();
+            try {
+                mCacheBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            } catch (OutOfMemoryError e) {
+                // The cache is only an optimization, so just keep drawing directly
+                return false;
+            }
+        }
+
+        if (!mIsCacheValid) {
+            mCacheBitmap.eraseColor(0);
+            final Canvas cacheCanvas = new Canvas(mCacheBitmap);
+            cacheCanvas.translate(-bounds.left, -bounds.top);
+            mOverlay.draw(cacheCanvas, bounds);
+            mIsCacheValid = true;
+        }
+        return true;
+    }
+
+    /**
+     * Replay the recorded overlay, recording it first if needed
+     */
+    private void drawDisplayList(Canvas canvas, Rect bounds) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M && canvas.isHardwareAccelerated()) {
+            mOverlay.draw(canvas, bounds);
+            return;
+        }
+        if (mCachePicture == null || !mIsCacheValid) {
+            releaseCache();
+            mCachePicture = new Picture();
+            final Canvas recordingCanvas = mCachePicture.beginRecording(bounds.width(), bounds.height());
+            try {
+                recordingCanvas.translate(-bounds.left, -bounds.top);
+                mOverlay.draw(recordingCanvas, bounds);
+            } finally {
+                mCachePicture.endRecording();
+            }
+            mIsCacheValid = true;
+        }
+        final int saveCount = canvas.save();
+        canvas.translate(bounds.left, bounds.top);
+        canvas.drawPicture(mCachePicture);
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * Get cache mode of this drawable
+     *
+     * @return One of {@link #CACHE_MODE_NONE}, {@link #CACHE_MODE_BITMAP}, {@link #CACHE_MODE_DISPLAY_LIST}, or {@link
+     * #CACHE_MODE_COMPILED}
+     */
+    @CacheMode
+    public int getCacheMode() {
+        return mCacheMode;
+    }
+
+    /**
+     * Set how the overlay is drawn on each frame. See {@link #CACHE_MODE_NONE}, {@link #CACHE_MODE_BITMAP}, {@link
+     * #CACHE_MODE_DISPLAY_LIST}, and {@link #CACHE_MODE_COMPILED}. Switching to another mode releases the cache.
+     *
+     * @param cacheMode One of {@link #CACHE_MODE_NONE}, {@link #CACHE_MODE_BITMAP}, {@link #CACHE_MODE_DISPLAY_LIST},
+     *                  or {@link #CACHE_MODE_COMPILED}
+     */
+    public void setCacheMode(@CacheMode int cacheMode) {
+        if (mCacheMode != cacheMode) {
+            mCacheMode = cacheMode;
+            releaseCache();
+            invalidateSelf();
+        }
+    }
+
+    /**
+     * Redraw the overlay into the cache on the next frame. Call this if you modify layers of the current overlay, since
+     * the drawable can't detect that. Changing the overlay or the bounds invalidates the cache automatically.
+     */
+    public void invalidateCache() {
+        mIsCacheValid = false;
+        if (mOverlay != null) {
+            mOverlay.invalidateCompiled();
+        }
+        invalidateSelf();
+    }
+
+    /**
+     * Release the memory held by the cache. The cache is created again on the next frame if cache mode is still
+     * enabled. Call this from {@link android.content.ComponentCallbacks#onLowMemory()} or
+     * <code>ComponentCallbacks2.onTrimMemory()</code>, or when the drawable is no longer shown.
+     */
+    public void releaseCache() {
+        if (mCacheBitmap != null) {
+            mCacheBitmap.recycle();
+            mCacheBitmap = null;
         }
+        mCachePicture = null;
+        mIsCacheValid = false;
+    }
+
+    /**
+     * Get the memory currently held by the cache, so that apps with many drawables can keep their total in check
+     *
+     * @return Size of the cache bitmap in bytes, or 0 if there's no bitmap at the moment. Recorded display lists are
+     * not counted, since their size can't be measured, but it's normally far smaller than that of a bitmap
+     */
+    public int getCacheMemoryUsage() {
+        return mCacheBitmap != null ? mCacheBitmap.getRowBytes() * mCacheBitmap.getHeight() : 0;
     }
 
     /**
@@ -84,6 +261,10 @@ public class RhythmDrawable extends Drawable {
      */
     public void setOverlay(@Nullable RhythmOverlay overlay) {
         mOverlay = overlay;
+        if (mOverlay != null) {
+            mOverlay.onBoundsChanged(getBounds());
+        }
+        mIsCacheValid = false;
         invalidateSelf();
     }
 
@@ -174,5 +355,19 @@ public class RhythmDrawable extends Drawable {
         if (mDecorated != null) {
             mDecorated.setBounds(bounds);
         }
+        // Let the layers compute their geometry now rather than on the next frame
+        if (mOverlay != null) {
+            mOverlay.onBoundsChanged(bounds);
+        }
+        // The bitmap is reused if the size stays the same, but the overlay must be drawn again
+        mIsCacheValid = false;
+    }
+
+    /**
+     * Type definition for cache modes
+     */
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({CACHE_MODE_NONE, CACHE_MODE_BITMAP, CACHE_MODE_DISPLAY_LIST, CACHE_MODE_COMPILED})
+    public @interface CacheMode {
     }
 }
@@ -16,8 +16,13 @@
 
 package com.actinarium.rhythm;
 
+import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.support.annotation.NonNull;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Defines a single overlay configuration, i.e. which spec layers (grid lines, keylines etc) must be drawn in the {@link
  * RhythmDrawable}(s) where this overlay is currently set. Composed of granular {@link RhythmSpecLayer}s, which hold
@@ -27,8 +32,18 @@ import android.support.annotation.NonNull;
  */
 public class RhythmOverlay extends AbstractSpecLayerGroup<RhythmOverlay> {
 
+    /**
+     * Maximum number of compiled overlays kept, e.g. for views of different sizes sharing this overlay
+     */
+    private static final int MAX_COMPILED = 4;
+
     protected String mTitle;
 
+    /**
+     * Compiled overlays by bounds, least recently used first, or null if none are compiled
+     */
+    private LinkedHashMap<Rect, CompiledOverlay> mCompiled;
+
     /**
      * Create a new overlay
      */
@@ -76,10 +91,63 @@ public class RhythmOverlay extends AbstractSpecLayerGroup<RhythmOverlay> {
      * @return this for chaining
      */
     public RhythmOverlay addLayersFrom(@NonNull RhythmOverlay source) {
+        if (source instanceof LazyRhythmOverlay) {
+            ((LazyRhythmOverlay) source).inflate();
+        }
         mLayers.addAll(source.mLayers);
+        mCompiled = null;
         return this;
     }
 
+    @Override
+    public RhythmOverlay addLayer(RhythmSpecLayer layer) {
+        mCompiled = null;
+        return super.addLayer(layer);
+    }
+
+    /**
+     * <p>Flatten the layer tree into a list of primitives for provided bounds, so that it can be drawn in a single loop
+     * with {@link CompiledOverlay#draw(Canvas)}, pixel-identical to {@link #draw(Canvas, Rect)}. Results are cached for
+     * a few most recently used bounds.</p><p>The compiled overlay doesn't reflect changes of layer geometry made after
+     * compiling, so if you modify the layers (other than adding them to this overlay, which is detected), call {@link
+     * #invalidateCompiled()}. If this overlay {@linkplain #isCompilable() can't be compiled}, the result just draws it
+     * as is.</p>
+     *
+     * @param bounds Bounds to compile the overlay for
+     * @return Compiled overlay
+     */
+    public CompiledOverlay compile(@NonNull Rect bounds) {
+        if (mCompiled == null) {
+            mCompiled = new LinkedHashMap<Rect, CompiledOverlay>(MAX_COMPILED * 2, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Rect, CompiledOverlay> eldest) {
+                    return size() > MAX_COMPILED;
+                }
+            };
+        }
+        CompiledOverlay compiled = mCompiled.get(bounds);
+        if (compiled == null) {
+            final OverlayCompiler compiler = new OverlayCompiler();
+            // Goes through the same check as children, so that overlays that can't be compiled are drawn as is
+            compiler.addLayer(this, bounds);
+            compiled = compiler.build();
+            mCompiled.put(new Rect(bounds), compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Discard overlays compiled with {@link #compile(Rect)}, so that they are compiled again when requested
+     */
+    public void invalidateCompiled() {
+        mCompiled = null;
+    }
+
+    @Override
+    public boolean isCompilable() {
+        return getClass() == RhythmOverlay.class;
+    }
+
     @Override
     public String toString() {
         return mTitle != null ? mTitle : "Untitled overlay@" + Integer.toHexString(hashCode());
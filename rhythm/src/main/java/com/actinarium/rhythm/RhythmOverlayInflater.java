@@ -20,7 +20,9 @@ import android.content.Context;
 import android.support.annotation.NonNull;
 import android.support.annotation.RawRes;
 import android.util.DisplayMetrics;
+import com.actinarium.rhythm.config.ConfigSyntax;
 import com.actinarium.rhythm.internal.ReaderUtils;
+import com.actinarium.rhythm.internal.RuntimeIOException;
 import com.actinarium.rhythm.layer.Columns;
 import com.actinarium.rhythm.layer.DimensionsLabel;
 import com.actinarium.rhythm.layer.Fill;
@@ -29,15 +31,34 @@ import com.actinarium.rhythm.layer.Inset;
 import com.actinarium.rhythm.layer.Keyline;
 import com.actinarium.rhythm.layer.RatioKeyline;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Pattern;
 
+import static com.actinarium.rhythm.config.ConfigSyntax.findKeyEnd;
+import static com.actinarium.rhythm.config.ConfigSyntax.findTokenEnd;
+import static com.actinarium.rhythm.config.ConfigSyntax.hasValue;
+import static com.actinarium.rhythm.config.ConfigSyntax.isBlank;
+import static com.actinarium.rhythm.config.ConfigSyntax.isBlankOrComment;
+import static com.actinarium.rhythm.config.ConfigSyntax.skipSeparators;
+
 /**
  * <p>A default inflater that creates {@linkplain RhythmOverlay}s from text configuration using registered layer
  * factories. Supports inflating multiple overlays from configuration files (see <a
@@ -58,12 +79,14 @@ public class RhythmOverlayInflater {
     private static final int INITIAL_FACTORIES_CAPACITY = 16;
 
     /**
-     * A regex to search for arguments in configuration string by a following template: key[=value]
+     * A regex to search for arguments in configuration string by a following template: key[=value]. No longer used by
+     * the inflater itself, which tokenizes the lines by hand, but kept for subclasses relying on it.
      */
     protected static final Pattern PATTERN_ARGUMENTS = Pattern.compile("([^\\s=]+)(?:=([^\\s]+))?");
 
     /**
-     * A regex to validate and parse variables in configuration string by a following template: @variable=value
+     * A regex to validate and parse variables in configuration string by a following template: @variable=value. No
+     * longer used by the inflater itself (see {@link #findVariableSeparator(String)}), but kept for subclasses.
      */
     protected static final Pattern PATTERN_VARIABLES = Pattern.compile("(@[\\w]+)=(.*)");
 
@@ -72,10 +95,44 @@ public class RhythmOverlayInflater {
      */
     private static final int NOT_STARTED = -1;
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Shared background executor for asynchronous inflation, created on first use
+     */
+    private static Executor sAsyncExecutor;
+
     protected Context mContext;
     protected DisplayMetrics mDisplayMetrics;
-    protected Map<String, RhythmSpecLayerFactory> mFactories;
+    /**
+     * Registered factories, read-only. Use {@link #registerFactory(String, RhythmSpecLayerFactory)} and {@link
+     * #addAlias(String, String)} to modify them, so that the lookup snapshot is rebuilt
+     */
+    protected final Map<String, RhythmSpecLayerFactory> mFactories;
+    private final Map<String, RhythmSpecLayerFactory> mRegisteredFactories;
     protected boolean mAreMagicVariablesEnabled = false;
+    protected InflationListener mListener;
+    protected boolean mIsFrozen;
+
+    /**
+     * Whether identical layer groups are shared between overlays inflated in a single call
+     */
+    private volatile boolean mIsSubtreeSharingEnabled;
+
+    /**
+     * Snapshot of {@link #mFactories} used for lookups during inflation. Built on first use after registration changes
+     */
+    private volatile FactoryRegistry mFactoryRegistry;
+
+    /**
+     * On-disk cache of parsed configs, or null if configs are always parsed
+     */
+    private volatile OverlaySnapshotCache mSnapshotCache;
+
+    /**
+     * Objects reused between lines, kept per thread to be reused by the next blocks too
+     */
+    private final ThreadLocal<InflationScratch> mScratchPool = new ThreadLocal<>();
 
     /**
      * <p>Create a new instance of default overlay inflater. It comes pre-configured to inflate all bundled {@link
@@ -99,20 +156,58 @@ public class RhythmOverlayInflater {
      * @see #RhythmOverlayInflater(Context)
      */
     public static RhythmOverlayInflater createDefault(Context context) {
+        return createDefault(context, null);
+    }
+
+    /**
+     * Same as {@link #createDefault(Context)}, but keeps cached layers in provided shared cache instead of caches of
+     * its own. Use this to share identical layers between several inflaters, e.g. per-window inflaters on multi-display
+     * setups, which will still get the layers for their own display densities.
+     *
+     * @param context     Context
+     * @param sharedCache cache to keep cached layers in, e.g. {@link SharedLayerCache#getInstance()}, or null for
+     *                    caches of this inflater's own
+     * @return a new overlay inflater instance configured to inflate bundled spec layers
+     */
+    public static RhythmOverlayInflater createDefault(Context context, SharedLayerCache sharedCache) {
         final RhythmOverlayInflater inflater = new RhythmOverlayInflater(context);
 
         // Register bundled spec layers. Wrap keyline, fill, grid, and ratio keyline factories in caching decorators
-        inflater.mFactories.put(GridLines.Factory.LAYER_TYPE, new SimpleCacheFactory<>(new GridLines.Factory()));
-        inflater.mFactories.put(Keyline.Factory.LAYER_TYPE, new SimpleCacheFactory<>(new Keyline.Factory()));
-        inflater.mFactories.put(RatioKeyline.Factory.LAYER_TYPE, new SimpleCacheFactory<>(new RatioKeyline.Factory()));
-        inflater.mFactories.put(Fill.Factory.LAYER_TYPE, new SimpleCacheFactory<>(new Fill.Factory()));
-        inflater.mFactories.put(Inset.Factory.LAYER_TYPE, new Inset.Factory());
-        inflater.mFactories.put(Columns.Factory.LAYER_TYPE, new Columns.Factory());
-        inflater.mFactories.put(DimensionsLabel.Factory.LAYER_TYPE, new DimensionsLabel.Factory());
+        if (sharedCache != null) {
+            // Shared caches are partitioned by factory instance, so all inflaters must decorate the same instances
+            inflater.registerFactory(GridLines.Factory.LAYER_TYPE,
+                    new SimpleCacheFactory<>(SharedFactories.GRID_LINES, sharedCache));
+            inflater.registerFactory(Keyline.Factory.LAYER_TYPE,
+                    new SimpleCacheFactory<>(SharedFactories.KEYLINE, sharedCache));
+            inflater.registerFactory(RatioKeyline.Factory.LAYER_TYPE,
+                    new SimpleCacheFactory<>(SharedFactories.RATIO_KEYLINE, sharedCache));
+            inflater.registerFactory(Fill.Factory.LAYER_TYPE,
+                    new SimpleCacheFactory<>(SharedFactories.FILL, sharedCache));
+        } else {
+            inflater.registerFactory(GridLines.Factory.LAYER_TYPE, new SimpleCacheFactory<>(new GridLines.Factory()));
+            inflater.registerFactory(Keyline.Factory.LAYER_TYPE, new SimpleCacheFactory<>(new Keyline.Factory()));
+            inflater.registerFactory(RatioKeyline.Factory.LAYER_TYPE,
+                    new SimpleCacheFactory<>(new RatioKeyline.Factory()));
+            inflater.registerFactory(Fill.Factory.LAYER_TYPE, new SimpleCacheFactory<>(new Fill.Factory()));
+        }
+        inflater.registerFactory(Inset.Factory.LAYER_TYPE, new Inset.Factory());
+        inflater.registerFactory(Columns.Factory.LAYER_TYPE, new Columns.Factory());
+        inflater.registerFactory(DimensionsLabel.Factory.LAYER_TYPE, new DimensionsLabel.Factory());
 
         return inflater;
     }
 
+    /**
+     * Bundled factories decorated by caching factories of all inflaters using shared layer caches. These factories are
+     * stateless, so a single instance of each serves all inflaters
+     */
+    private static final class SharedFactories {
+        static final GridLines.Factory GRID_LINES = new GridLines.Factory();
+        static final Keyline.Factory KEYLINE = new Keyline.Factory();
+        static final RatioKeyline.Factory RATIO_KEYLINE = new RatioKeyline.Factory();
+        static final Fill.Factory FILL = new Fill.Factory();
+    }
+
     /**
      * Create a new instance of overlay inflater with no factories registered. Call this constructor only if you need a
      * blank inflater that you are going to configure from scratch (i.e. by registering all the required factories with
@@ -125,7 +220,8 @@ public class RhythmOverlayInflater {
     public RhythmOverlayInflater(Context context) {
         mContext = context.getApplicationContext();
         mDisplayMetrics = mContext.getResources().getDisplayMetrics();
-        mFactories = new HashMap<>(INITIAL_FACTORIES_CAPACITY);
+        mRegisteredFactories = new HashMap<>(INITIAL_FACTORIES_CAPACITY);
+        mFactories = Collections.unmodifiableMap(mRegisteredFactories);
     }
 
     /**
@@ -144,6 +240,78 @@ public class RhythmOverlayInflater {
         return this;
     }
 
+    /**
+     * <p>Enable or disable sharing identical layer groups (e.g. {@link Inset} and {@link Columns} blocks) between
+     * overlays of a single config. When enabled, each {@link AbstractSpecLayerGroup} made entirely of shared layers is
+     * {@linkplain AbstractSpecLayerGroup#freeze() frozen} once all its children are inflated, and if an identical
+     * group has already been inflated in the same call, that group is used instead. Identical means declared with the
+     * same layer type and arguments, and containing the same child layer instances, so this only pays off when leaf
+     * layers are cached too, as they are in {@link #createDefault(Context)}.</p><p>Disabled by default, since shared
+     * groups can't be modified afterwards. Groups are only pooled for the duration of an inflation call (or until all
+     * lazy overlays of the call are inflated), so re-inflating configs doesn't make the pool grow.</p>
+     *
+     * @param enabled true to enable structural sharing of layer groups, false to disable it
+     * @return this for chaining
+     */
+    public RhythmOverlayInflater setSubtreeSharingEnabled(boolean enabled) {
+        mIsSubtreeSharingEnabled = enabled;
+        return this;
+    }
+
+    /**
+     * <p>Set a cache to store parsed configs in, so that the next time the same config is inflated with {@link
+     * #inflate(List)} or {@link #inflate(String)} (e.g. on the next app launch) its layers are rebuilt without parsing
+     * the text. Useful for configs loaded from files or downloaded at runtime &mdash; configs from <code>res/raw</code>
+     * are better compiled at build time. See {@link OverlaySnapshotCache} for details.</p><p>Disabled by default, and
+     * ignored if {@link #canReuseConfigs()} returns false, since replayed layers don't go through {@link
+     * #parseConfigInternal(String, Map, int)}.</p>
+     *
+     * @param snapshotCache snapshot cache, e.g. {@link OverlaySnapshotCache#inCacheDir(Context)}, or null to disable
+     *                      caching
+     * @return this for chaining
+     */
+    public RhythmOverlayInflater setSnapshotCache(OverlaySnapshotCache snapshotCache) {
+        mSnapshotCache = snapshotCache;
+        return this;
+    }
+
+    /**
+     * Make a pool to share layer groups within a single inflation call
+     *
+     * @return a new pool of shared layer groups, or null if subtree sharing is disabled
+     */
+    SubtreePool newSubtreePool() {
+        return mIsSubtreeSharingEnabled ? new SubtreePool(getFactoryRegistry()) : null;
+    }
+
+    /**
+     * Set a listener to be notified about inflation progress and timings, e.g. {@link InflationProfiler}. The listener
+     * is also registered with all {@link SimpleCacheFactory SimpleCacheFactories} in this inflater to report cache hits
+     * and misses. With no listener set, the inflater doesn't take any measurements.
+     *
+     * @param listener inflation listener, or <code>null</code> to remove the current one
+     * @return this for chaining
+     */
+    public RhythmOverlayInflater setInflationListener(InflationListener listener) {
+        mListener = listener;
+        for (RhythmSpecLayerFactory factory : mFactories.values()) {
+            if (factory instanceof SimpleCacheFactory) {
+                ((SimpleCacheFactory) factory).setInflationListener(listener);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Start a new incremental inflation session, which remembers layers inflated in previous passes and reuses them for
+     * unchanged lines. Handy for live editing the config, e.g. re-inflating the overlay on every change.
+     *
+     * @return a new incremental inflation session backed by this inflater
+     */
+    public InflationSession newSession() {
+        return new InflationSession(this);
+    }
+
     /**
      * Register a factory for provided layer type. Use this method to register factories for your custom spec layers or
      * override default behavior. You can add the same factory for multiple layer types, e.g. for aliasing.
@@ -153,7 +321,12 @@ public class RhythmOverlayInflater {
      * @return this for chaining
      */
     public RhythmOverlayInflater registerFactory(@NonNull String layerType, @NonNull RhythmSpecLayerFactory factory) {
-        mFactories.put(layerType, factory);
+        checkNotFrozen();
+        mRegisteredFactories.put(layerType, factory);
+        mFactoryRegistry = null;
+        if (mListener != null && factory instanceof SimpleCacheFactory) {
+            ((SimpleCacheFactory) factory).setInflationListener(mListener);
+        }
         return this;
     }
 
@@ -167,15 +340,54 @@ public class RhythmOverlayInflater {
      * @return this for chaining
      */
     public RhythmOverlayInflater addAlias(@NonNull String existingLayerType, @NonNull String aliasLayerType) {
+        checkNotFrozen();
         RhythmSpecLayerFactory factory = mFactories.get(existingLayerType);
         if (factory != null) {
-            mFactories.put(aliasLayerType, factory);
+            mRegisteredFactories.put(aliasLayerType, factory);
+            mFactoryRegistry = null;
         } else {
             throw new IllegalArgumentException("No factory registered for type \"" + existingLayerType + "\"");
         }
         return this;
     }
 
+    /**
+     * Finish configuring this inflater. After this call no more factories or aliases can be registered, and the
+     * inflater can be safely shared between threads, e.g. to inflate configs in the background while also inflating
+     * on the main thread. Calling this is optional &mdash; inflation is just as fast without it.
+     *
+     * @return this for chaining
+     */
+    public RhythmOverlayInflater freeze() {
+        if (!mIsFrozen) {
+            mFactoryRegistry = new FactoryRegistry(mFactories);
+            mIsFrozen = true;
+        }
+        return this;
+    }
+
+    private void checkNotFrozen() {
+        if (mIsFrozen) {
+            throw new IllegalStateException("This inflater is frozen and cannot be configured any further");
+        }
+    }
+
+    /**
+     * Get the snapshot of registered factories for lookups, building it if registration has changed since the last
+     * inflation
+     *
+     * @return factory registry
+     */
+    private FactoryRegistry getFactoryRegistry() {
+        FactoryRegistry registry = mFactoryRegistry;
+        if (registry == null) {
+            // If multiple threads get here at once, each builds an equal snapshot, which is harmless
+            registry = new FactoryRegistry(mFactories);
+            mFactoryRegistry = registry;
+        }
+        return registry;
+    }
+
     /**
      * Inflate a Rhythm configuration file into a list of {@link RhythmOverlay RhythmOverlays}, which you can then
      * assign to a group, or make sub-lists of and assign to different groups.
@@ -185,8 +397,47 @@ public class RhythmOverlayInflater {
      * @see #inflate(List)
      */
     public List<RhythmOverlay> inflate(@RawRes int rawResId) {
-        List<String> lines = ReaderUtils.readLines(mContext, rawResId);
-        return inflate(lines);
+        final InputStream inputStream = mContext.getResources().openRawResource(rawResId);
+        try {
+            // Stream the file block by block instead of reading it into a list of lines first
+            List<RhythmOverlay> overlays = new ArrayList<>();
+            Iterator<RhythmOverlay> iterator = inflate(inputStream);
+            while (iterator.hasNext()) {
+                overlays.add(iterator.next());
+            }
+            return overlays;
+        } finally {
+            ReaderUtils.closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * <p>Same as {@link #inflate(int)}, but reads the configuration from provided input stream, and inflates overlays
+     * lazily one by one as the returned iterator is advanced. Each overlay is inflated as soon as the empty line
+     * terminating its block is read, so only one block at a time is held in memory, and the first overlay is available
+     * before the rest of the stream is read.</p><p>The stream is read as UTF-8, same as raw resources. It is not closed
+     * &mdash; you have to close it yourself once done iterating.</p>
+     *
+     * @param inputStream Input stream with configuration, must follow the same syntax rules as the configuration file
+     * @return An iterator over overlays inflated on demand. Throws {@link RhythmInflationException} from {@link
+     * Iterator#hasNext()} and {@link Iterator#next()} if the config is malformed, and {@link RuntimeIOException} if the
+     * stream cannot be read.
+     * @see #inflate(Reader)
+     */
+    public Iterator<RhythmOverlay> inflate(InputStream inputStream) {
+        return inflate(new InputStreamReader(inputStream, UTF_8));
+    }
+
+    /**
+     * Same as {@link #inflate(InputStream)}, but reads the configuration from provided reader. The reader is not closed
+     * &mdash; you have to close it yourself once done iterating.
+     *
+     * @param reader Reader with configuration, must follow the same syntax rules as the configuration file
+     * @return An iterator over overlays inflated on demand
+     * @see #inflate(InputStream)
+     */
+    public Iterator<RhythmOverlay> inflate(Reader reader) {
+        return new OverlayIterator(reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader));
     }
 
     /**
@@ -216,8 +467,231 @@ public class RhythmOverlayInflater {
      * @see #inflate(String)
      */
     public List<RhythmOverlay> inflate(List<String> configStrings) {
+        final OverlaySnapshotCache snapshotCache = mSnapshotCache;
+        // Snapshots are replayed without parsing, which would skip overridden parsing methods
+        if (snapshotCache == null || !canReuseConfigs()) {
+            return inflateInternal(configStrings, false, null, null);
+        }
+
+        // Rebuild from the snapshot if this config has been parsed before, otherwise parse and record a new snapshot
+        final byte[] key = snapshotCache.computeKey(this, configStrings);
+        final OverlaySnapshot cachedSnapshot = snapshotCache.load(key);
+        if (cachedSnapshot != null) {
+            return cachedSnapshot.replay(this);
+        }
+        final OverlaySnapshot snapshot = new OverlaySnapshot();
+        final List<RhythmOverlay> overlays = inflateInternal(configStrings, false, null, snapshot);
+        if (snapshot.isReplayable()) {
+            snapshotCache.save(key, snapshot);
+        }
+        return overlays;
+    }
+
+    /**
+     * <p>Same as {@link #inflate(int)}, but inflates the overlays on a background thread and delivers the result on
+     * the main thread via returned handle, which you can attach callbacks to, or pass to {@code
+     * RhythmGroup.addOverlays()} directly. Use this to keep overlay inflation off your app's startup path.</p><p>Uses a
+     * single background thread shared by all inflaters. <b>Note:</b> don't register factories or change inflater
+     * settings until inflation is done.</p>
+     *
+     * @param rawResId Raw configuration file with syntax according to the docs
+     * @return A handle to obtain inflated overlays or the inflation error
+     * @see #inflateAsync(int, Executor)
+     */
+    public PendingOverlays inflateAsync(@RawRes final int rawResId) {
+        return inflateAsync(rawResId, getDefaultAsyncExecutor());
+    }
+
+    /**
+     * Same as {@link #inflateAsync(int)}, but inflates the overlays using provided executor.
+     *
+     * @param rawResId Raw configuration file with syntax according to the docs
+     * @param executor Executor to run inflation on
+     * @return A handle to obtain inflated overlays or the inflation error
+     */
+    public PendingOverlays inflateAsync(@RawRes final int rawResId, @NonNull Executor executor) {
+        return inflateAsyncInternal(new Callable<List<RhythmOverlay>>() {
+            @Override
+            public List<RhythmOverlay> call() {
+                return inflate(rawResId);
+            }
+        }, executor);
+    }
+
+    /**
+     * Same as {@link #inflateAsync(int)}, but accepts a string for the whole overlay configuration file.
+     *
+     * @param configString Configuration file passed in whole as a string
+     * @return A handle to obtain inflated overlays or the inflation error
+     * @see #inflateAsync(String, Executor)
+     */
+    public PendingOverlays inflateAsync(String configString) {
+        return inflateAsync(configString, getDefaultAsyncExecutor());
+    }
+
+    /**
+     * Same as {@link #inflateAsync(String)}, but inflates the overlays using provided executor.
+     *
+     * @param configString Configuration file passed in whole as a string
+     * @param executor     Executor to run inflation on
+     * @return A handle to obtain inflated overlays or the inflation error
+     */
+    public PendingOverlays inflateAsync(final String configString, @NonNull Executor executor) {
+        return inflateAsyncInternal(new Callable<List<RhythmOverlay>>() {
+            @Override
+            public List<RhythmOverlay> call() {
+                return inflate(configString);
+            }
+        }, executor);
+    }
+
+    private PendingOverlays inflateAsyncInternal(final Callable<List<RhythmOverlay>> task, Executor executor) {
+        final PendingOverlays pendingOverlays = new PendingOverlays();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pendingOverlays.postResult(task.call(), null);
+                } catch (RhythmInflationException e) {
+                    pendingOverlays.postResult(null, e);
+                } catch (Exception e) {
+                    // Deliver other errors (e.g. missing resource or IO failure) the same way
+                    pendingOverlays.postResult(null, new RhythmInflationException("Error inflating overlays: " + e.getMessage(), e));
+                }
+            }
+        });
+        return pendingOverlays;
+    }
+
+    private static synchronized Executor getDefaultAsyncExecutor() {
+        if (sAsyncExecutor == null) {
+            sAsyncExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable r) {
+                    final Thread thread = new Thread(r, "RhythmOverlayInflater");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sAsyncExecutor;
+    }
+
+    /**
+     * <p>Same as {@link #inflate(List)}, but inflates the overlay blocks in parallel on provided executor, and then
+     * waits for all of them to complete. Global variables are still read on the calling thread first. Might be
+     * worthwhile for large configs on multi-core devices, e.g. with an executor backed by a thread pool sized to the
+     * number of available processors.</p><p>If any blocks fail to inflate, the error for the earliest failing line is
+     * thrown, just like with sequential inflation. <b>Note:</b> all registered factories must be safe to call from
+     * multiple threads (bundled factories and {@link SimpleCacheFactory} are), and no factories may be registered while
+     * inflation is in progress.</p>
+     *
+     * @param configStrings Configuration file split as separate lines. Must follow the same syntax rules as the
+     *                      configuration file
+     * @param executor      Executor to inflate the blocks on
+     * @return A list of inflated Rhythm overlays, in the same order as in the config
+     * @see #inflate(List)
+     */
+    public List<RhythmOverlay> inflate(List<String> configStrings, @NonNull Executor executor) {
+        // Lazy overlays are exactly the block descriptors we need, so get those and inflate them concurrently
+        final List<RhythmOverlay> overlays = inflateInternal(configStrings, true, null, null);
+        final int count = overlays.size();
+        final CountDownLatch latch = new CountDownLatch(count);
+        final RuntimeException[] errors = new RuntimeException[count];
+
+        for (int i = 0; i < count; i++) {
+            final LazyRhythmOverlay overlay = (LazyRhythmOverlay) overlays.get(i);
+            final int index = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        overlay.inflate();
+                    } catch (RuntimeException e) {
+                        errors[index] = e;
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RhythmInflationException("Interrupted while waiting for overlays to inflate", e);
+        }
+
+        // Blocks go in file order, so the first failed block has the earliest failing line
+        for (int i = 0; i < count; i++) {
+            if (errors[i] != null) {
+                throw errors[i];
+            }
+        }
+        return overlays;
+    }
+
+    /**
+     * <p>Same as {@link #inflate(int)}, but defers inflation of each overlay until it's actually needed. This method
+     * only reads global variables and determines where each overlay block starts and ends, returning lightweight
+     * {@link LazyRhythmOverlay} handles that inflate themselves when first drawn, measured, or selected in a group.
+     * Use this if you have lots of overlays in your config but normally only look at a few of them.</p><p>Since blocks
+     * are not parsed upfront, errors in overlay blocks (except for global variables) are reported only when the
+     * respective overlay is inflated, yet still with the original line numbers.</p>
+     *
+     * @param rawResId Raw configuration file with syntax according to the docs
+     * @return A list of lazily inflated Rhythm overlays
+     * @see #inflateLazily(List)
+     */
+    public List<RhythmOverlay> inflateLazily(@RawRes int rawResId) {
+        List<String> lines = ReaderUtils.readLines(mContext, rawResId);
+        return inflateLazily(lines);
+    }
+
+    /**
+     * Same as {@link #inflateLazily(int)}, but accepts a string for the whole overlay configuration file.
+     *
+     * @param configString Configuration file passed in whole as a string. Must follow the same syntax rules as the
+     *                     configuration file, e.g. overlays must be separated by an empty line
+     * @return A list of lazily inflated Rhythm overlays
+     * @see #inflateLazily(int)
+     */
+    public List<RhythmOverlay> inflateLazily(String configString) {
+        List<String> configStrings = Arrays.asList(configString.split("\\r?\\n"));
+        return inflateLazily(configStrings);
+    }
+
+    /**
+     * Same as {@link #inflateLazily(int)}, but accepts the configuration file already split in lines as strings. The
+     * list is retained by the returned overlays until they are inflated, therefore it <b>must not</b> be mutated.
+     *
+     * @param configStrings Configuration file split as separate lines. Must follow the same syntax rules as the
+     *                      configuration file
+     * @return A list of lazily inflated Rhythm overlays
+     * @see #inflateLazily(int)
+     */
+    public List<RhythmOverlay> inflateLazily(List<String> configStrings) {
+        return inflateInternal(configStrings, true, null, null);
+    }
+
+    /**
+     * Walks over the lines and determines how the config should be split into separate overlays, then either inflates
+     * each block right away or wraps it into a {@link LazyRhythmOverlay}.
+     *
+     * @param configStrings Configuration file split as separate lines
+     * @param isLazy        true to defer inflation of each block until it's needed
+     * @param session       incremental inflation session to reuse layers from, or null
+     * @param snapshot      snapshot to record the parsed config into, or null
+     * @return A list of Rhythm overlays
+     */
+    List<RhythmOverlay> inflateInternal(List<String> configStrings, boolean isLazy, InflationSession session,
+                                        OverlaySnapshot snapshot) {
         List<RhythmOverlay> overlays = new ArrayList<>();
-        Map<String, String> globalVars = new HashMap<>();
+        // Root scope, so that magic variables are collected once for all blocks without local variables
+        Map<String, String> globalVars = new VariableScope(null);
+        // Groups are shared between the blocks of this config only
+        final SubtreePool subtreePool = newSubtreePool();
         final int len = configStrings.size();
         int overlayStart = NOT_STARTED;
 
@@ -228,40 +702,24 @@ public class RhythmOverlayInflater {
         for (; i < len; i++) {
             final String line = configStrings.get(i);
 
-            if (isEmptyOrComment(line.trim())) {
-                continue;
-            }
-
-            if (line.charAt(0) == '@') {
-                // Variable declaration. Let's check and parse it
-                Matcher matcher = PATTERN_VARIABLES.matcher(line);
-                if (!matcher.matches()) {
-                    // Oops, bad variable syntax
-                    throw new RhythmInflationException(
-                            "Malformed variable declaration.\nExpected syntax is @name=value where name may contain only letters, digits, and/or underscores."
-                    ).setLineNumber(i);
-                }
-
-                // Otherwise we're fine
-                String name = matcher.group(1);
-                String value = resolveVariableInternal(globalVars, matcher.group(2), i);
-
-                globalVars.put(name, value);
-            } else {
+            if (!readGlobalVariable(line, globalVars, i)) {
                 // Found a non-variable-declaration, non-empty line
                 break;
             }
         }
+        if (snapshot != null) {
+            snapshot.setGlobalVariables(globalVars);
+        }
 
         // Now read the remaining lines, separating blocks by empty lines, and inflate the blocks as we go
         for (; i < len; i++) {
             final String line = configStrings.get(i);
-            if (line.trim().length() == 0) {
+            if (isBlank(line)) {
                 // We encountered an empty line, meaning this is the end of the previous block if the latter is present
                 if (overlayStart != NOT_STARTED) {
                     // There was a block, so now it's terminated and we should inflate it.
-                    final RhythmOverlay previousBlock = inflateOverlayInternal(configStrings.subList(overlayStart, i), globalVars, overlayStart);
-                    overlays.add(previousBlock);
+                    overlays.add(makeOverlay(configStrings.subList(overlayStart, i), globalVars, overlayStart, isLazy,
+                            session, snapshot, subtreePool));
                     overlayStart = NOT_STARTED;
                 }
             } else if (overlayStart == NOT_STARTED && !isEmptyOrComment(line)) {
@@ -272,13 +730,72 @@ public class RhythmOverlayInflater {
 
         // If we reached the end of the file, and have a block started, inflate it
         if (overlayStart != NOT_STARTED) {
-            final RhythmOverlay previousBlock = inflateOverlayInternal(configStrings.subList(overlayStart, len), globalVars, overlayStart);
-            overlays.add(previousBlock);
+            overlays.add(makeOverlay(configStrings.subList(overlayStart, len), globalVars, overlayStart, isLazy, session,
+                    snapshot, subtreePool));
         }
 
         return overlays;
     }
 
+    private RhythmOverlay makeOverlay(List<String> block, Map<String, String> globalVars, int offset, boolean isLazy,
+                                      InflationSession session, OverlaySnapshot snapshot, SubtreePool subtreePool) {
+        if (isLazy) {
+            return new LazyRhythmOverlay(this, block, globalVars, offset, subtreePool);
+        } else if (session != null || snapshot != null) {
+            return inflateOverlayInternal(block, globalVars, offset, session, snapshot, subtreePool);
+        } else {
+            return inflateBlock(block, globalVars, offset, subtreePool);
+        }
+    }
+
+    /**
+     * Inflate a block of a config with {@link #inflateOverlayInternal(List, Map, int)}, or with provided pool to share
+     * layer groups with other blocks of the same config
+     *
+     * @param subtreePool pool of groups shared within the config, or null if subtree sharing is disabled
+     */
+    RhythmOverlay inflateBlock(List<String> block, Map<String, String> globalVars, int offset,
+                               SubtreePool subtreePool) {
+        return subtreePool != null
+                ? inflateOverlayInternal(block, globalVars, offset, null, null, subtreePool)
+                : inflateOverlayInternal(block, globalVars, offset);
+    }
+
+    /**
+     * Process a line from the beginning of the file, where global variables are declared
+     *
+     * @param line       config line
+     * @param globalVars map of global variables to put the declared variable into
+     * @param lineNumber line number to report in case of error
+     * @return true if the line is empty, a comment, or a global variable declaration, false if it's the first line of
+     * the first overlay block
+     */
+    private boolean readGlobalVariable(String line, Map<String, String> globalVars, int lineNumber) {
+        if (isBlankOrComment(line)) {
+            return true;
+        }
+
+        if (line.charAt(0) != '@') {
+            return false;
+        }
+
+        // Variable declaration. Let's check and parse it
+        final int separator = findVariableSeparator(line);
+        if (separator == -1) {
+            // Oops, bad variable syntax
+            throw new RhythmInflationException(
+                    "Malformed variable declaration.\nExpected syntax is @name=value where name may contain only letters, digits, and/or underscores."
+            ).setLineNumber(lineNumber);
+        }
+
+        // Otherwise we're fine
+        String name = line.substring(0, separator);
+        String value = resolveVariableInternal(globalVars, line.substring(separator + 1), lineNumber);
+
+        globalVars.put(name, value);
+        return true;
+    }
+
     /**
      * Inflate a single overlay from overlay configuration string according to the syntax spec.
      *
@@ -338,27 +855,50 @@ public class RhythmOverlayInflater {
      * @return inflated Rhythm overlay
      */
     protected RhythmOverlay inflateOverlayInternal(List<String> configStrings, @NonNull Map<String, String> globalVars, int offset) {
-        // initialize stacks for parents and indents. Since there's no adequate stack implementations out there for API 8+, make own.
-        // Assume there rarely will be more than 4-deep hierarchy
-        int size = 4;
-        int[] indents = new int[size];
-        RhythmSpecLayerParent[] parents = new RhythmSpecLayerParent[size];
-        int headIndex = 0;
-
-        // at the bottom of the stack we have the new RhythmOverlay object
+        return inflateOverlayInternal(configStrings, globalVars, offset, null, null, newSubtreePool());
+    }
+
+    /**
+     * Same as {@link #inflateOverlayInternal(List, Map, int)}, but takes leaf layers for unchanged lines from provided
+     * incremental inflation session instead of parsing and inflating those lines again, and/or records the parsed
+     * block into provided snapshot, and shares layer groups with other blocks via provided pool.
+     *
+     * @param session     incremental inflation session, or null to inflate every line
+     * @param snapshot    snapshot to record the parsed block into, or null
+     * @param subtreePool pool of groups shared within the config, or null if subtree sharing is disabled
+     */
+    RhythmOverlay inflateOverlayInternal(List<String> configStrings, @NonNull Map<String, String> globalVars, int offset,
+                                         InflationSession session, OverlaySnapshot snapshot, SubtreePool subtreePool) {
+        final InflationListener listener = mListener;
+        final long blockStartTime;
+        if (listener != null) {
+            listener.onBlockStarted(offset);
+            blockStartTime = System.nanoTime();
+        } else {
+            blockStartTime = 0;
+        }
+
         final RhythmOverlay overlay = new RhythmOverlay();
-        parents[0] = overlay;
-        indents[0] = -1;
+        final LayerTreeAssembler assembler = new LayerTreeAssembler(overlay, subtreePool);
+        if (snapshot != null) {
+            snapshot.startOverlay(offset);
+        }
 
         // At first assume there are no local overrides, so reusing global vars map for now
         Map<String, String> localVars = globalVars;
         boolean hasLocalVars = false;
 
+        // Layers reusable in this block, picked from the session once all variables are known
+        InflationSession.Scope reusableLayers = null;
+
+        // Objects reused between lines, so that parsing doesn't leave garbage behind
+        final InflationScratch scratch = canReuseConfigs() ? InflationScratch.obtain(mScratchPool) : null;
+
         // Read line by line, evaluate line types, parse and nest
         for (int i = 0, lines = configStrings.size(); i < lines; i++) {
             String line = configStrings.get(i);
 
-            if (isEmptyOrComment(line.trim())) {
+            if (isBlankOrComment(line)) {
                 // Empty or comment line, no-op (btw there should be no empty lines here if inflating the whole file)
                 continue;
             }
@@ -366,24 +906,27 @@ public class RhythmOverlayInflater {
             final int lineNumber = i + offset;
             if (line.charAt(0) == '@') {
                 // This is a local variable. And all variables must be declared before any overlay lines.
-                if (overlay.size() != 0) {
+                if (assembler.hasLayers()) {
                     throw new RhythmInflationException(
                             "Unexpected variable declaration.\nVariables must be declared before spec layers."
                     ).setLineNumber(lineNumber);
                 }
 
-                // If it's the first local var, copy the global vars map where we'll be adding/overwriting values
+                // If it's the first local var, make a local scope where we'll be adding/shadowing values
                 if (!hasLocalVars) {
-                    localVars = new HashMap<>(globalVars);
+                    localVars = new VariableScope(globalVars);
                     hasLocalVars = true;
                 }
 
                 // Let's check and parse
-                Matcher matcher = PATTERN_VARIABLES.matcher(line);
-                if (matcher.matches()) {
-                    String name = matcher.group(1);
-                    String value = resolveVariableInternal(localVars, matcher.group(2), lineNumber);
+                final int separator = findVariableSeparator(line);
+                if (separator != -1) {
+                    String name = line.substring(0, separator);
+                    String value = resolveVariableInternal(localVars, line.substring(separator + 1), lineNumber);
                     localVars.put(name, value);
+                    if (snapshot != null) {
+                        snapshot.addLocalVariable(name, value);
+                    }
                 } else {
                     // Oops, bad variable syntax
                     throw new RhythmInflationException(
@@ -392,7 +935,7 @@ public class RhythmOverlayInflater {
                 }
             } else if (line.charAt(0) == '#') {
                 // Looks like a title. A title should be the first non-empty line, and there should be no multiple titles per block
-                if (overlay.getTitle() != null || hasLocalVars || overlay.size() != 0) {
+                if (overlay.getTitle() != null || hasLocalVars || assembler.hasLayers()) {
                     throw new RhythmInflationException(
                             "Unexpected overlay title.\nThere can be only one title per overlay, and it must be the first line. Did you forget an empty newline before starting a new overlay?"
                     ).setLineNumber(lineNumber);
@@ -404,45 +947,55 @@ public class RhythmOverlayInflater {
                     overlay.setTitle(title);
                 }
             } else {
-                // Otherwise assume the line is a spec layer, try parsing and inflating it as a separate layer
-                LayerConfig config = parseConfigInternal(line, localVars, lineNumber);
-
-                // If indent is <= indent of parent layer, then go up the hierarchy. Won't underflow b/c indents[0] is -1
-                while (config.getIndent() <= indents[headIndex]) {
-                    headIndex--;
-                    // we could clean up the stacks but there's really no need
+                // Otherwise assume the line is a spec layer, try parsing and inflating it as a separate layer,
+                // unless it's unchanged since the last pass of incremental inflation
+                if (session != null && reusableLayers == null) {
+                    reusableLayers = session.getScope(localVars);
                 }
-
-                RhythmSpecLayer thisLayer = inflateLayerInternal(config, lineNumber);
-                parents[headIndex].addLayer(thisLayer);
-
-                // if this is a layer group, add it to the stack
-                if (thisLayer instanceof RhythmSpecLayerParent) {
-                    headIndex++;
-                    // if arrays run out of space, grow it twice (a-la ArrayList)
-                    if (headIndex >= size) {
-                        int newSize = size * 2;
-                        int[] newIndents = new int[newSize];
-                        RhythmSpecLayerParent[] newParents = new RhythmSpecLayerParent[newSize];
-                        System.arraycopy(indents, 0, newIndents, 0, size);
-                        System.arraycopy(parents, 0, newParents, 0, size);
-                        indents = newIndents;
-                        parents = newParents;
-                        size = newSize;
+                RhythmSpecLayer thisLayer = reusableLayers != null ? reusableLayers.reuse(line) : null;
+                LayerConfig config = null;
+                final int indent;
+                if (thisLayer != null) {
+                    indent = skipSeparators(line, 0, line.length());
+                } else {
+                    final long parseStartTime = listener != null ? System.nanoTime() : 0;
+                    config = scratch != null
+                            ? parseConfigInternal(line, localVars, lineNumber, scratch)
+                            : parseConfigInternal(line, localVars, lineNumber);
+                    if (listener != null) {
+                        listener.onLineParsed(lineNumber, config.getLayerType(), System.nanoTime() - parseStartTime);
+                    }
+                    indent = config.getIndent();
+                    thisLayer = inflateLayerInternal(config, lineNumber);
+                    if (snapshot != null) {
+                        snapshot.addLayer(lineNumber, config);
+                    }
+                    if (reusableLayers != null) {
+                        reusableLayers.retain(line, thisLayer);
                     }
-                    parents[headIndex] = (RhythmSpecLayerParent) thisLayer;
-                    indents[headIndex] = config.getIndent();
                 }
+
+                assembler.addLayer(thisLayer, indent, config);
             }
         }
+        assembler.finish();
 
         // If there are only variables and nothing else, seems like the user tried to declare global variables between overlay blocks
-        if (hasLocalVars && overlay.size() == 0 && overlay.getTitle() == null) {
+        if (hasLocalVars && !assembler.hasLayers() && overlay.getTitle() == null) {
             throw new RhythmInflationException(
                     "Unexpected variable declaration.\nGlobal variables must be declared before all overlay blocks."
             ).setLineNumber(offset);
         }
 
+        if (scratch != null) {
+            scratch.recycle(mScratchPool);
+        }
+        if (snapshot != null) {
+            snapshot.setTitle(overlay.getTitle());
+        }
+        if (listener != null) {
+            listener.onBlockFinished(offset, overlay, System.nanoTime() - blockStartTime);
+        }
         return overlay;
     }
 
@@ -467,7 +1020,7 @@ public class RhythmOverlayInflater {
      * @return inflated layer
      */
     protected RhythmSpecLayer inflateLayerInternal(LayerConfig config, int lineNumber) {
-        RhythmSpecLayerFactory factory = mFactories.get(config.getLayerType());
+        RhythmSpecLayerFactory factory = getFactoryRegistry().get(config.getLayerType());
         if (factory == null) {
             Object[] knownLayers = mFactories.keySet().toArray();
             throw new RhythmInflationException(
@@ -475,7 +1028,14 @@ public class RhythmOverlayInflater {
             ).setLineNumber(lineNumber);
         }
         try {
-            return factory.getForArguments(config.getArgumentsBundle());
+            final InflationListener listener = mListener;
+            if (listener == null) {
+                return factory.getForArguments(config.getArgumentsBundle());
+            }
+            final long startTime = System.nanoTime();
+            final RhythmSpecLayer layer = factory.getForArguments(config.getArgumentsBundle());
+            listener.onLayerInflated(lineNumber, config.getLayerType(), factory, System.nanoTime() - startTime);
+            return layer;
         } catch (RhythmInflationException e) {
             // Set line number and rethrow
             throw e.setLineNumber(lineNumber);
@@ -500,34 +1060,203 @@ public class RhythmOverlayInflater {
      * @return layer config object with layer configuration and metadata
      */
     protected LayerConfig parseConfigInternal(String configString, @NonNull Map<String, String> vars, int lineNumber) {
-        // We can parse everything using pattern matcher. The first match would be our layer name
-        Matcher matcher = PATTERN_ARGUMENTS.matcher(configString);
+        return parseConfigInternal(configString, vars, lineNumber, null);
+    }
 
-        if (!matcher.find()) {
+    /**
+     * <p>Whether the inflater may reuse layer configs, their arguments bundles, and argument tokens from one layer line
+     * to the next, so that parsing a block doesn't leave garbage behind. When reusing, layer lines of overlay blocks
+     * are parsed internally rather than with {@link #parseConfigInternal(String, Map, int)}, and the configs given to
+     * {@link #inflateLayerInternal(LayerConfig, int)} are only valid until it returns. This also enables the {@linkplain
+     * #setSnapshotCache(OverlaySnapshotCache) snapshot cache}.</p><p>Since subclasses may override parsing methods,
+     * reusing is opt-in per class and is only enabled for this class itself. Subclasses that don't override any of
+     * those methods can opt in by returning <code>getClass() == MyInflater.class</code>. Inflaters with factories that
+     * keep the bundles they get should override this method to return <code>false</code>.</p>
+     *
+     * @return true only for instances of this exact class by default
+     */
+    protected boolean canReuseConfigs() {
+        return getClass() == RhythmOverlayInflater.class;
+    }
+
+    /**
+     * Same as {@link #parseConfigInternal(String, Map, int)}, but reuses provided objects for the tokens, the config,
+     * and indexed bundles
+     *
+     * @param scratch objects reused between lines of the block, or null to create new ones
+     */
+    LayerConfig parseConfigInternal(String configString, @NonNull Map<String, String> vars, int lineNumber,
+                                    InflationScratch scratch) {
+        // A single pass over the line's chars, equivalent to repeatedly applying PATTERN_ARGUMENTS with find(), but
+        // without a matcher and without allocating anything but the resulting tokens. The first token is layer name
+        final int len = configString.length();
+        int start = skipSeparators(configString, 0, len);
+
+        if (start == len) {
             // The whole layer line is malformed
             throw new RhythmInflationException(
                     "Malformed spec layer declaration.\nExpected format is <layer_name> <arg1>=<val1> <arg2>=<val2>..."
             ).setLineNumber(lineNumber);
         }
 
-        final String specLayerType = matcher.group();
-        final int spaces = matcher.start();
-        final Map<String, String> arguments = new HashMap<>();
+        final int spaces = start;
+        // Just like the pattern, layer name token may be in the form of key=value, which is then taken as a whole
+        int end = findKeyEnd(configString, start, len);
+        if (hasValue(configString, end, len)) {
+            end = findTokenEnd(configString, end + 1, len);
+        }
+        // For known layer types, take the registered type string instead of allocating a substring
+        String specLayerType = getFactoryRegistry().findType(configString, start, end);
+        if (specLayerType == null) {
+            specLayerType = configString.substring(start, end);
+        }
+        // Factories declaring their arguments get them in fixed slots instead of a map
+        final ArgumentsSchema schema = getFactoryRegistry().getArgumentsSchema(specLayerType);
+        if (schema != null) {
+            final ArgumentsBundle arguments = parseIndexedArguments(configString, end, specLayerType, schema, vars,
+                    lineNumber, scratch);
+            return newLayerConfig(specLayerType, spaces, arguments, scratch);
+        }
+
+        final Map<String, String> arguments = new ArgumentsMap();
 
-        while (matcher.find()) {
-            String key = matcher.group(1);
-            // Since we're already resolving variables in inflater and not lazily upon reading from arguments,
-            // let's be consistent and do the same for individual args as well.
-            String value = resolveVariableInternal(vars, matcher.group(2), lineNumber);
+        while ((start = skipSeparators(configString, end, len)) != len) {
+            end = findKeyEnd(configString, start, len);
+            String key = token(configString, start, end, scratch);
+            String value = null;
+            if (hasValue(configString, end, len)) {
+                start = end + 1;
+                end = findTokenEnd(configString, start, len);
+                // Since we're already resolving variables in inflater and not lazily upon reading from arguments,
+                // let's be consistent and do the same for individual args as well.
+                value = resolveVariableInternal(vars, token(configString, start, end, scratch), lineNumber);
+            }
             arguments.put(key, value);
         }
 
+        return newLayerConfig(specLayerType, spaces, createArgumentsBundle(specLayerType, arguments, vars), scratch);
+    }
+
+    private static LayerConfig newLayerConfig(String layerType, int indent, ArgumentsBundle argumentsBundle,
+                                              InflationScratch scratch) {
+        return scratch != null
+                ? scratch.getConfig(layerType, indent, argumentsBundle)
+                : new LayerConfig(layerType, indent, argumentsBundle);
+    }
+
+    /**
+     * Cut a token from the line, taking a pooled string if possible
+     */
+    private static String token(String line, int start, int end, InflationScratch scratch) {
+        return scratch != null ? scratch.mTokens.get(line, start, end) : line.substring(start, end);
+    }
+
+    /**
+     * Read the arguments of a layer line into the slots of provided schema and validate them. Same as the map-based
+     * part of {@link #parseConfigInternal(String, Map, int)}, but without a map.
+     *
+     * @param configString configuration string
+     * @param end          index after the layer type in the string
+     * @param layerType    layer type
+     * @param schema       arguments schema declared by the layer's factory
+     * @param vars         map of @key-&gt;value variables visible to the layer
+     * @param lineNumber   line number to report in case of error
+     * @param scratch      objects reused between lines of the block, or null
+     * @return arguments bundle to pass to the layer's factory
+     */
+    private ArgumentsBundle parseIndexedArguments(String configString, int end, String layerType,
+                                                  ArgumentsSchema schema, @NonNull Map<String, String> vars,
+                                                  int lineNumber, InflationScratch scratch) {
+        final int len = configString.length();
+        final IndexedArgumentsBundle scratchBundle;
+        final String[] values;
+        if (scratch != null) {
+            scratchBundle = scratch.getBundle(schema, mDisplayMetrics);
+            values = scratchBundle.mValues;
+            Arrays.fill(values, null);
+        } else {
+            scratchBundle = null;
+            values = new String[schema.size()];
+        }
+        long declaredMask = 0;
+        List<String> unknownArguments = null;
+
+        int start;
+        while ((start = skipSeparators(configString, end, len)) != len) {
+            end = findKeyEnd(configString, start, len);
+            final int index = schema.indexOf(configString, start, end);
+            if (index == -1) {
+                // Report unknown arguments only after the whole line is read, same as if the factory did it
+                if (unknownArguments == null) {
+                    unknownArguments = new ArrayList<>();
+                }
+                unknownArguments.add(configString.substring(start, end));
+            }
+            String value = null;
+            if (hasValue(configString, end, len)) {
+                start = end + 1;
+                end = findTokenEnd(configString, start, len);
+                value = resolveVariableInternal(vars, token(configString, start, end, scratch), lineNumber);
+            }
+            if (index != -1) {
+                values[index] = value;
+                declaredMask |= 1L << index;
+            }
+        }
+
+        try {
+            if (unknownArguments != null) {
+                throw schema.unknownArguments(unknownArguments);
+            }
+            // Same fallback as in MagicVariablesArgumentsBundle, but resolved right away
+            if (mAreMagicVariablesEnabled) {
+                final MagicVariableTable magicVariables = MagicVariableTable.of(vars, layerType);
+                for (int i = 0; i < values.length && !magicVariables.isEmpty(); i++) {
+                    final String value = (declaredMask & (1L << i)) == 0 ? magicVariables.get(schema.getName(i)) : null;
+                    if (value != null) {
+                        values[i] = value;
+                        declaredMask |= 1L << i;
+                    }
+                }
+            }
+            if (scratchBundle != null) {
+                scratchBundle.reset(declaredMask);
+                return scratchBundle;
+            }
+            return new IndexedArgumentsBundle(schema, values, declaredMask, mDisplayMetrics);
+        } catch (RhythmInflationException e) {
+            throw e.setLineNumber(lineNumber);
+        }
+    }
+
+    /**
+     * Wrap parsed arguments of a layer into an {@link ArgumentsBundle}. Developers can override this method to return
+     * a different implementation. Not used for layers whose factories declare an {@link ArgumentsSchema} when parsing
+     * text &mdash; those get an {@link IndexedArgumentsBundle}.
+     *
+     * @param layerType layer type the arguments are for
+     * @param arguments map of arguments with resolved values. Must not be mutated afterwards
+     * @param vars      map of @key-&gt;value variables visible to the layer
+     * @return arguments bundle to pass to the layer's factory
+     */
+    protected ArgumentsBundle createArgumentsBundle(String layerType, Map<String, String> arguments,
+                                                    @NonNull Map<String, String> vars) {
         // Experimental magic variables support integrated here:
-        ArgumentsBundle argumentsBundle = mAreMagicVariablesEnabled ?
-                new MagicVariablesArgumentsBundle(arguments, vars, specLayerType, mDisplayMetrics) :
+        return mAreMagicVariablesEnabled ?
+                new MagicVariablesArgumentsBundle(arguments, vars, layerType, mDisplayMetrics) :
                 new SimpleArgumentsBundle(arguments, mDisplayMetrics);
+    }
 
-        return new LayerConfig(specLayerType, spaces, argumentsBundle);
+    /**
+     * Validates a variable declaration line, which must be in the form of <code>@name=value</code>, where name may only
+     * contain letters, digits, and/or underscores. Does the same job as {@link #PATTERN_VARIABLES} but without a
+     * matcher.
+     *
+     * @param line variable declaration line, starting with '@'
+     * @return index of the '=' char separating the name from the value, or -1 if the declaration is malformed
+     */
+    protected static int findVariableSeparator(String line) {
+        return ConfigSyntax.findVariableSeparator(line);
     }
 
     /**
@@ -542,13 +1271,17 @@ public class RhythmOverlayInflater {
      */
     protected String resolveVariableInternal(@NonNull Map<String, String> vars, String value, int lineNumber) {
         if (value != null && value.length() != 0 && value.charAt(0) == '@') {
-            if (vars.containsKey(value)) {
-                value = vars.get(value);
-            } else {
+            final String resolved = vars.get(value);
+            // Declared variables always have values, but null values are still allowed in maps passed from outside
+            if (resolved == null && !vars.containsKey(value)) {
                 throw new RhythmInflationException(
                         "Cannot resolve variable " + value
                 ).setLineNumber(lineNumber);
             }
+            if (mListener != null) {
+                mListener.onVariableResolved(lineNumber, value);
+            }
+            return resolved;
         }
         return value;
     }
@@ -561,7 +1294,120 @@ public class RhythmOverlayInflater {
      * @return true if empty or comment
      */
     public static boolean isEmptyOrComment(String line) {
-        return line.length() == 0 || (line.charAt(0) == '/' && line.length() >= 2 && line.charAt(1) == '/');
+        return ConfigSyntax.isEmptyOrComment(line);
+    }
+
+    /**
+     * An iterator that reads configuration from a reader line by line, and inflates overlay blocks one at a time as
+     * they are requested. Follows the same rules as {@link #inflate(List)}: global variables are read once in the
+     * beginning, and then each block is terminated by an empty line or the end of the stream.
+     *
+     * @author Paul Danyliuk
+     */
+    protected class OverlayIterator implements Iterator<RhythmOverlay> {
+
+        private final BufferedReader mReader;
+        private final Map<String, String> mGlobalVars = new VariableScope(null);
+        // Groups are shared between the blocks read by this iterator only
+        private final SubtreePool mSubtreePool = newSubtreePool();
+        // Lines of the block being read, reused between blocks
+        private final List<String> mBlock = new ArrayList<>();
+
+        // Index of the next line to read
+        private int mLineIndex;
+        // A line that was read ahead when reading global variables and must be processed again
+        private String mPendingLine;
+        private boolean mAreGlobalVarsRead;
+        private boolean mIsDone;
+        private RhythmOverlay mNext;
+
+        protected OverlayIterator(BufferedReader reader) {
+            mReader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (mNext == null && !mIsDone) {
+                mNext = readNextOverlay();
+            }
+            return mNext != null;
+        }
+
+        @Override
+        public RhythmOverlay next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final RhythmOverlay next = mNext;
+            mNext = null;
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Inflated overlays cannot be removed");
+        }
+
+        /**
+         * Read lines up to the end of the next block and inflate it
+         *
+         * @return inflated overlay, or null if there are no more blocks
+         */
+        private RhythmOverlay readNextOverlay() {
+            String line;
+            if (!mAreGlobalVarsRead) {
+                while ((line = readLine()) != null && readGlobalVariable(line, mGlobalVars, mLineIndex - 1)) {
+                    // Keep reading global variables
+                }
+                // Put back the line that terminated global variables section, if any
+                mPendingLine = line;
+                mLineIndex--;
+                mAreGlobalVarsRead = true;
+            }
+
+            int overlayStart = NOT_STARTED;
+            while ((line = readLine()) != null) {
+                if (isBlank(line)) {
+                    // We encountered an empty line, meaning this is the end of the block if the latter is present
+                    if (overlayStart != NOT_STARTED) {
+                        return inflateBlock(overlayStart);
+                    }
+                    continue;
+                } else if (overlayStart == NOT_STARTED && !isEmptyOrComment(line)) {
+                    // It's a title, a var, or a layer, which starts a new block
+                    overlayStart = mLineIndex - 1;
+                }
+                if (overlayStart != NOT_STARTED) {
+                    mBlock.add(line);
+                }
+            }
+
+            // If we reached the end of the stream, and have a block started, inflate it
+            mIsDone = true;
+            return overlayStart != NOT_STARTED ? inflateBlock(overlayStart) : null;
+        }
+
+        private RhythmOverlay inflateBlock(int overlayStart) {
+            try {
+                return RhythmOverlayInflater.this.inflateBlock(mBlock, mGlobalVars, overlayStart, mSubtreePool);
+            } finally {
+                mBlock.clear();
+            }
+        }
+
+        private String readLine() {
+            mLineIndex++;
+            if (mPendingLine != null) {
+                final String line = mPendingLine;
+                mPendingLine = null;
+                return line;
+            }
+            try {
+                return mReader.readLine();
+            } catch (IOException e) {
+                throw new RuntimeIOException(e);
+            }
+        }
     }
 
     /**
@@ -576,6 +1422,11 @@ public class RhythmOverlayInflater {
         protected int mIndent;
         protected ArgumentsBundle mArgumentsBundle;
 
+        /**
+         * Whether this config is reused by the inflater for the next lines, and so must be copied to be kept
+         */
+        boolean mIsScratch;
+
         /**
          * Create layer config object for layer of given type, with known indent, and with pre-filled arguments bag
          *
@@ -615,5 +1466,16 @@ public class RhythmOverlayInflater {
         public ArgumentsBundle getArgumentsBundle() {
             return mArgumentsBundle;
         }
+
+        /**
+         * Get a config that can be kept after the layer is inflated
+         *
+         * @return this config, or its copy if this config is going to be reused
+         */
+        LayerConfig retain() {
+            return mIsScratch
+                    ? new LayerConfig(mLayerType, mIndent, IndexedArgumentsBundle.retain(mArgumentsBundle))
+                    : this;
+        }
     }
 }
@@ -24,7 +24,9 @@ import android.graphics.Rect;
  * holds the configuration of its appearance (hence the spec) and is also capable of drawing itself onto the provided
  * canvas (hence the layer). Unlike Drawables, where separate instances are required each time they are used, spec layer
  * instances are created per configuration and can be reused across many {@link RhythmDrawable}s (views,
- * overlays).</p><p>You can create custom spec layers by implementing this interface.</p>
+ * overlays).</p><p>You can create custom spec layers by implementing this interface. If the layer does expensive
+ * calculations based on the bounds (e.g. measures text), implement {@link BoundsAwareSpecLayer} to do them only when
+ * the bounds change.</p>
  */
 public interface RhythmSpecLayer {
 
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+/**
+ * <p>A {@link RhythmSpecLayerFactory} that declares the arguments it accepts up front. For layers of such factories,
+ * {@link RhythmOverlayInflater} reads config lines directly into an {@link IndexedArgumentsBundle}, where each
+ * argument has a fixed slot, and validates it in a single pass: unknown arguments, missing required arguments, and
+ * malformed values are reported before the factory is even called.</p><p>The factory should still accept any {@link
+ * ArgumentsBundle} (e.g. one created by a custom inflater) &mdash; use {@link ArgumentsSchema#bind(ArgumentsBundle)}
+ * to get an indexed bundle in any case:</p>
+ * <pre><code>
+ * public MyLayer getForArguments(ArgumentsBundle argsBundle) {
+ *     IndexedArgumentsBundle args = SCHEMA.bind(argsBundle);
+ *     return new MyLayer(args.getDimensionPixelSize(SLOT_SIZE, 0));
+ * }
+ * </code></pre>
+ * <p><b>Note:</b> the inflater reuses indexed bundles between lines, so don't keep the bundle passed to {@link
+ * #getForArguments(ArgumentsBundle)} after the method returns &mdash; use {@link IndexedArgumentsBundle#retain()} if
+ * you need to.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public interface SchemaSpecLayerFactory<T extends RhythmSpecLayer> extends RhythmSpecLayerFactory<T> {
+
+    /**
+     * Get the schema of arguments this factory accepts. Must always return the same fully declared schema.
+     *
+     * @return arguments schema
+     */
+    ArgumentsSchema getArgumentsSchema();
+
+}
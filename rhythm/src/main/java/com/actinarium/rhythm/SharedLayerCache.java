@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import android.support.annotation.NonNull;
+import android.util.DisplayMetrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>A layer cache that can be shared by several inflaters, e.g. by per-window inflaters on multi-display setups, so
+ * that they reuse identical layers instead of each inflating its own. Use it through {@link SimpleCacheFactory}:</p>
+ * <pre><code>
+ * inflater.registerFactory(GridLines.Factory.LAYER_TYPE,
+ *         new SimpleCacheFactory&lt;&gt;(new GridLines.Factory(), SharedLayerCache.getInstance()));
+ * </code></pre>
+ * <p>or simply create inflaters with {@link RhythmOverlayInflater#createDefault(android.content.Context,
+ * SharedLayerCache)}. Since arguments bundles are compared regardless of their display metrics, the cache is
+ * partitioned by density, scaled density, and horizontal dpi (used for <code>pt</code>, <code>in</code>, and
+ * <code>mm</code> values), so layers sized for one display are never returned for another. It's
+ * also partitioned by the decorated factory instance, so that differently configured factories never get each other's
+ * layers. To share layers between inflaters, decorate the same factory instance in each of them &mdash; {@link
+ * RhythmOverlayInflater#createDefault(android.content.Context, SharedLayerCache)} does that for bundled
+ * factories.</p><p>Lookups are lock-free and inserts only lock a segment of a partition, so the cache is safe and
+ * cheap to use from multiple threads. Layers are kept until {@link #clear()} is called.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public final class SharedLayerCache {
+
+    private static final SharedLayerCache sInstance = new SharedLayerCache();
+
+    private final ConcurrentMap<Partition, ConcurrentMap<ArgumentsBundle, RhythmSpecLayer>> mPartitions =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Get the process-wide shared cache
+     *
+     * @return shared layer cache
+     */
+    public static SharedLayerCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Create a separate layer cache, e.g. to share layers only within a group of inflaters. For a process-wide cache
+     * use {@link #getInstance()} instead.
+     */
+    public SharedLayerCache() {
+    }
+
+    /**
+     * Get the partition for layers of provided factory and display metrics, creating it if needed
+     *
+     * @param factory factory creating the layers, compared by identity
+     * @param metrics display metrics of the arguments bundles
+     * @return layers by arguments bundles
+     */
+    Partition getPartition(@NonNull RhythmSpecLayerFactory<?> factory, @NonNull DisplayMetrics metrics) {
+        final Partition key = new Partition(factory, metrics.density, metrics.scaledDensity, metrics.xdpi, null);
+        ConcurrentMap<ArgumentsBundle, RhythmSpecLayer> layers = mPartitions.get(key);
+        if (layers == null) {
+            layers = new ConcurrentHashMap<>();
+            final ConcurrentMap<ArgumentsBundle, RhythmSpecLayer> existing = mPartitions.putIfAbsent(key, layers);
+            if (existing != null) {
+                layers = existing;
+            }
+        }
+        return new Partition(factory, metrics.density, metrics.scaledDensity, metrics.xdpi, layers);
+    }
+
+    /**
+     * @return total number of cached layers in all partitions
+     */
+    public int size() {
+        int size = 0;
+        for (ConcurrentMap<ArgumentsBundle, RhythmSpecLayer> layers : mPartitions.values()) {
+            size += layers.size();
+        }
+        return size;
+    }
+
+    /**
+     * Remove all cached layers. Doesn't affect the layers already returned to the inflaters.
+     */
+    public void clear() {
+        for (ConcurrentMap<ArgumentsBundle, RhythmSpecLayer> layers : mPartitions.values()) {
+            layers.clear();
+        }
+    }
+
+    /**
+     * A partition of the cache for given factory instance, densities, and dpi. Used both as the key of a partition and,
+     * with the layers map, as a handle that caching factories keep to skip the partition lookup for the same metrics.
+     */
+    static final class Partition {
+        private final RhythmSpecLayerFactory<?> mFactory;
+        private final float mDensity;
+        private final float mScaledDensity;
+        private final float mXdpi;
+        final ConcurrentMap<ArgumentsBundle, RhythmSpecLayer> mLayers;
+
+        private Partition(RhythmSpecLayerFactory<?> factory, float density, float scaledDensity, float xdpi,
+                          ConcurrentMap<ArgumentsBundle, RhythmSpecLayer> layers) {
+            mFactory = factory;
+            mDensity = density;
+            mScaledDensity = scaledDensity;
+            mXdpi = xdpi;
+            mLayers = layers;
+        }
+
+        /**
+         * Check whether this partition holds layers for provided display metrics
+         */
+        boolean matches(DisplayMetrics metrics) {
+            return Float.compare(mDensity, metrics.density) == 0
+                    && Float.compare(mScaledDensity, metrics.scaledDensity) == 0
+                    && Float.compare(mXdpi, metrics.xdpi) == 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) { return true; }
+            if (o == null || getClass() != o.getClass()) { return false; }
+            Partition that = (Partition) o;
+            return mFactory == that.mFactory && Float.compare(mDensity, that.mDensity) == 0
+                    && Float.compare(mScaledDensity, that.mScaledDensity) == 0
+                    && Float.compare(mXdpi, that.mXdpi) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(mFactory);
+            result = 31 * result + Float.floatToIntBits(mDensity);
+            result = 31 * result + Float.floatToIntBits(mScaledDensity);
+            result = 31 * result + Float.floatToIntBits(mXdpi);
+            return result;
+        }
+    }
+
+}
@@ -16,24 +16,22 @@
 
 package com.actinarium.rhythm;
 
-import android.annotation.SuppressLint;
-import android.graphics.Color;
 import android.support.annotation.ColorInt;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.DisplayMetrics;
 import android.util.TypedValue;
-import android.view.Gravity;
 
+import java.util.HashMap;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * A basic implementation of {@link ArgumentsBundle}, which stores all arguments simply as a String-&gt;String key-value
  * map and parses them into required types when accessed by respective getter methods (meaning it also fails lazily).
- * Does not cache parsing results, so if the same arguments are requested multiple times, it may be a good idea to query
- * them once and store the result in a variable.
+ * Dimensions, colors, and gravity values are parsed once per argument, so querying e.g. both units and value of the
+ * same dimension argument doesn't parse the string twice. Parsed values are cached per key, which is safe since the
+ * arguments are immutable.
  *
  * @author Paul Danyliuk
  */
@@ -42,8 +40,17 @@ public class SimpleArgumentsBundle implements ArgumentsBundle {
     protected Map<String, String> mArguments;
     protected DisplayMetrics mMetrics;
 
+    /**
+     * A regex for the numeric part of a dimension value. No longer used by this class, which scans the number by hand,
+     * but kept for subclasses relying on it.
+     */
     protected static Pattern DIMEN_VALUE_PATTERN = Pattern.compile("^-?\\d*\\.?\\d+");
 
+    /**
+     * Parsed values by argument key, created on first typed access
+     */
+    private Map<String, ParsedArgument> mParsedArguments;
+
     /**
      * Create a new simple arguments bundle implementation from provided key-&gt;value map.
      *
@@ -129,8 +136,7 @@ public class SimpleArgumentsBundle implements ArgumentsBundle {
     @Override
     @ColorInt
     public int getColor(String key, @ColorInt int defaultValue) {
-        String rawValue = resolveArgument(key);
-        return rawValue != null ? Color.parseColor(rawValue) : defaultValue;
+        return getParsedArgument(key).getColor(defaultValue);
     }
 
     /**
@@ -138,62 +144,14 @@ public class SimpleArgumentsBundle implements ArgumentsBundle {
      * <code>top</code> or <code>center_vertical</code>
      */
     @Override
-    @SuppressLint("RtlHardcoded")
     public int getGravity(String key, int defaultValue) {
-        String gravityArg = resolveArgument(key);
-        if (gravityArg == null) {
-            return defaultValue;
-        } else if (gravityArg.equals("center")) {
-            return Gravity.CENTER;
-        } else if (gravityArg.equals("fill")) {
-            return Gravity.FILL;
-        } else {
-            // supported options
-            int gravity = 0;
-            if (gravityArg.contains("top")) {
-                gravity |= Gravity.TOP;
-            }
-            if (gravityArg.contains("bottom")) {
-                gravity |= Gravity.BOTTOM;
-            }
-            if (gravityArg.contains("center_vertical")) {
-                gravity |= Gravity.CENTER_VERTICAL;
-            }
-            if (gravityArg.contains("fill_vertical")) {
-                gravity |= Gravity.FILL_VERTICAL;
-            }
-            if (gravityArg.contains("left")) {
-                gravity |= Gravity.LEFT;
-            }
-            if (gravityArg.contains("right")) {
-                gravity |= Gravity.RIGHT;
-            }
-            if (gravityArg.contains("center_horizontal")) {
-                gravity |= Gravity.CENTER_HORIZONTAL;
-            }
-            if (gravityArg.contains("fill_horizontal")) {
-                gravity |= Gravity.FILL_HORIZONTAL;
-            }
-            return gravity;
-        }
+        return getParsedArgument(key).getGravity(defaultValue);
     }
 
     @Override
-    @SuppressLint("RtlHardcoded")
     @EdgeAffinity
     public int getEdgeAffinity(String key, @EdgeAffinity int defaultValue) {
-        String gravityArg = resolveArgument(key);
-        if ("top".equals(gravityArg)) {
-            return Gravity.TOP;
-        } else if ("left".equals(gravityArg)) {
-            return Gravity.LEFT;
-        } else if ("right".equals(gravityArg)) {
-            return Gravity.RIGHT;
-        } else if ("bottom".equals(gravityArg)) {
-            return Gravity.BOTTOM;
-        } else {
-            return defaultValue;
-        }
+        return ParsedArgument.parseEdgeAffinity(resolveArgument(key), defaultValue);
     }
 
     /**
@@ -204,27 +162,7 @@ public class SimpleArgumentsBundle implements ArgumentsBundle {
     @Override
     @DimensionUnits
     public int getDimensionUnits(String key) {
-        String value = resolveArgument(key);
-        if (value == null) {
-            return UNITS_NULL;
-        } else if (value.endsWith("dp") || value.endsWith("dip")) {
-            return UNITS_DP;
-        } else if (value.endsWith("px")) {
-            return UNITS_PX;
-        } else if (value.endsWith("%")) {
-            return UNITS_PERCENT;
-        } else if (value.endsWith("sp")) {
-            return UNITS_SP;
-        } else if (value.endsWith("pt")) {
-            return UNITS_PT;
-        } else if (value.endsWith("in")) {
-            return UNITS_IN;
-        } else if (value.endsWith("mm")) {
-            return UNITS_MM;
-        } else {
-            // assume raw number, try to parse as float
-            return UNITS_NUMBER;
-        }
+        return getParsedArgument(key).getDimensionUnits();
     }
 
     /**
@@ -234,16 +172,7 @@ public class SimpleArgumentsBundle implements ArgumentsBundle {
      */
     @Override
     public float getDimensionValue(String key, float defaultValue) {
-        String value = resolveArgument(key);
-        if (value == null) {
-            return defaultValue;
-        }
-        Matcher matcher = DIMEN_VALUE_PATTERN.matcher(value);
-        if (matcher.find()) {
-            return Float.parseFloat(matcher.group());
-        } else {
-            return defaultValue;
-        }
+        return getParsedArgument(key).getDimensionValue(defaultValue);
     }
 
     /**
@@ -253,12 +182,7 @@ public class SimpleArgumentsBundle implements ArgumentsBundle {
      */
     @Override
     public float getDimensionPixelExact(String key, float defaultValue) {
-        @DimensionUnits int units = getDimensionUnits(key);
-        if (units == UNITS_NULL) {
-            return defaultValue;
-        }
-        float rawValue = getDimensionValue(key, defaultValue);
-        return getDimensionPixelRaw(rawValue, units, mMetrics);
+        return getParsedArgument(key).getDimensionPixelExact(defaultValue, mMetrics);
     }
 
     /**
@@ -268,12 +192,7 @@ public class SimpleArgumentsBundle implements ArgumentsBundle {
      */
     @Override
     public int getDimensionPixelOffset(String key, int defaultValue) {
-        @DimensionUnits int units = getDimensionUnits(key);
-        if (units == UNITS_NULL) {
-            return defaultValue;
-        }
-        float rawValue = getDimensionValue(key, defaultValue);
-        return (int) getDimensionPixelRaw(rawValue, units, mMetrics);
+        return getParsedArgument(key).getDimensionPixelOffset(defaultValue, mMetrics);
     }
 
     /**
@@ -283,19 +202,28 @@ public class SimpleArgumentsBundle implements ArgumentsBundle {
      */
     @Override
     public int getDimensionPixelSize(String key, int defaultValue) {
-        @DimensionUnits int units = getDimensionUnits(key);
-        float rawValue = getDimensionValue(key, defaultValue);
-        float result = getDimensionPixelRaw(rawValue, units, mMetrics);
+        return getParsedArgument(key).getDimensionPixelSize(defaultValue, mMetrics);
+    }
 
-        final int res = (int) (result + 0.5f);
-        if (res != 0) { return res; }
-        if (rawValue == 0) { return 0; }
-        if (rawValue > 0) { return 1; }
-        return defaultValue;
+    /**
+     * Get the parsed value slot for provided key, resolving the argument on first access
+     */
+    private ParsedArgument getParsedArgument(String key) {
+        if (mParsedArguments == null) {
+            mParsedArguments = new HashMap<>();
+        }
+        ParsedArgument parsed = mParsedArguments.get(key);
+        if (parsed == null) {
+            parsed = new ParsedArgument(resolveArgument(key));
+            mParsedArguments.put(key, parsed);
+        }
+        return parsed;
     }
 
     /**
-     * Convert complex dimension value of provided units into pixels.
+     * Convert complex dimension value of provided units into pixels. Density-independent, point, inch, and millimeter
+     * units are converted here directly with the same math as {@link TypedValue#applyDimension(int, float,
+     * DisplayMetrics)}, while scaled pixels still go through the platform, which may scale fonts non-linearly.
      *
      * @param value   raw dimension value, e.g. <code>24f</code>
      * @param units   dimension units, one of {@link #UNITS_PX}, {@link #UNITS_DP}, {@link #UNITS_SP}, {@link
@@ -309,7 +237,7 @@ public class SimpleArgumentsBundle implements ArgumentsBundle {
     public static float getDimensionPixelRaw(float value, @DimensionUnits int units, DisplayMetrics metrics) {
         switch (units) {
             case UNITS_DP:
-                return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, value, metrics);
+                return value * metrics.density;
             case UNITS_PX:
             case UNITS_PERCENT:
             case UNITS_NUMBER:
@@ -318,11 +246,11 @@ public class SimpleArgumentsBundle implements ArgumentsBundle {
             case UNITS_SP:
                 return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, value, metrics);
             case UNITS_PT:
-                return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_PT, value, metrics);
+                return value * metrics.xdpi * (1.0f / 72);
             case UNITS_IN:
-                return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_IN, value, metrics);
+                return value * metrics.xdpi;
             case UNITS_MM:
-                return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_MM, value, metrics);
+                return value * metrics.xdpi * (1.0f / 25.4f);
             default:
                 return 0;
         }
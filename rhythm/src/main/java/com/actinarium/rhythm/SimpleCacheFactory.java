@@ -16,22 +16,144 @@
 
 package com.actinarium.rhythm;
 
-import java.util.HashMap;
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+import android.util.DisplayMetrics;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * A decorator for a spec layer factory that performs simple caching of previously inflated layers
+ * <p>A decorator for a spec layer factory that performs simple caching of previously inflated layers. Safe to use from
+ * multiple threads, e.g. when inflating blocks in parallel with {@link RhythmOverlayInflater#inflate(java.util.List,
+ * java.util.concurrent.Executor)}.</p><p>By default the cache keeps every layer it ever inflated. If many different
+ * configs are inflated over time (e.g. when editing configs live), limit the number of cached layers &mdash; the least
+ * recently used ones are then evicted &mdash; and/or let the garbage collector reclaim layers that aren't used by any
+ * overlay with {@link #VALUES_SOFT} or {@link #VALUES_WEAK}. Hit, miss, and eviction counters help to pick the
+ * size.</p><p>Alternatively, the layers can be kept in a {@link SharedLayerCache} instead, so that they are shared with
+ * other inflaters.</p>
  *
  * @author Paul Danyliuk
  */
 public class SimpleCacheFactory<T extends RhythmSpecLayer> implements RhythmSpecLayerFactory<T> {
 
+    /**
+     * Max size of a cache that never evicts layers to stay within its size
+     */
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    /**
+     * Cached layers are kept until evicted
+     */
+    public static final int VALUES_STRONG = 0;
+    /**
+     * Cached layers are kept with soft references, so they can be reclaimed when memory runs low
+     */
+    public static final int VALUES_SOFT = 1;
+    /**
+     * Cached layers are kept with weak references, so they are reclaimed as soon as no overlay uses them
+     */
+    public static final int VALUES_WEAK = 2;
+
     private RhythmSpecLayerFactory<T> mDecoratedFactory;
-    private Map<ArgumentsBundle, T> mCache;
+    private final int mMaxSize;
+    @ValueStrength
+    private final int mValueStrength;
+    private InflationListener mListener;
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
 
+    // Layers, or references to layers unless strong, in access order. Fields below are guarded by the map itself
+    private final LinkedHashMap<ArgumentsBundle, Object> mCache;
+    private final ReferenceQueue<T> mCollectedValues;
+    private long mEvictionCount;
+
+    // Shared cache to keep the layers in instead, if set, and its partition for the last seen display metrics
+    private final SharedLayerCache mSharedCache;
+    private volatile SharedLayerCache.Partition mLastPartition;
+
+    /**
+     * Create an unbounded cache, keeping all inflated layers
+     *
+     * @param decoratedFactory factory to inflate the layers on cache misses
+     */
     public SimpleCacheFactory(RhythmSpecLayerFactory<T> decoratedFactory) {
+        this(decoratedFactory, UNBOUNDED, VALUES_STRONG);
+    }
+
+    /**
+     * Create a cache with limited size and/or layers kept with soft or weak references
+     *
+     * @param decoratedFactory factory to inflate the layers on cache misses
+     * @param maxSize          max number of cached layers, after which the least recently used ones are evicted, or
+     *                         {@link #UNBOUNDED}
+     * @param valueStrength    how cached layers are referenced: {@link #VALUES_STRONG}, {@link #VALUES_SOFT}, or
+     *                         {@link #VALUES_WEAK}
+     */
+    public SimpleCacheFactory(RhythmSpecLayerFactory<T> decoratedFactory, int maxSize,
+                              @ValueStrength int valueStrength) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive, but was " + maxSize);
+        }
+        mDecoratedFactory = decoratedFactory;
+        mMaxSize = maxSize;
+        mValueStrength = valueStrength;
+        mSharedCache = null;
+        mCollectedValues = valueStrength != VALUES_STRONG ? new ReferenceQueue<T>() : null;
+        mCache = new LinkedHashMap<ArgumentsBundle, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ArgumentsBundle, Object> eldest) {
+                if (size() > mMaxSize) {
+                    mEvictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Create a caching factory that keeps the layers in a shared cache, so that the layers are reused by all inflaters
+     * sharing that cache, as long as they decorate the same factory instance and their display densities match
+     *
+     * @param decoratedFactory factory to inflate the layers on cache misses. Pass the same instance to caching
+     *                         factories of all inflaters that should share the layers
+     * @param sharedCache      cache to keep the layers in, e.g. {@link SharedLayerCache#getInstance()}
+     */
+    public SimpleCacheFactory(RhythmSpecLayerFactory<T> decoratedFactory, @NonNull SharedLayerCache sharedCache) {
         mDecoratedFactory = decoratedFactory;
-        mCache = new HashMap<>();
+        mMaxSize = UNBOUNDED;
+        mValueStrength = VALUES_STRONG;
+        mSharedCache = sharedCache;
+        mCollectedValues = null;
+        mCache = null;
+    }
+
+    /**
+     * Get the factory this cache delegates to on cache misses
+     *
+     * @return decorated factory
+     */
+    public RhythmSpecLayerFactory<T> getDecoratedFactory() {
+        return mDecoratedFactory;
+    }
+
+    /**
+     * Set a listener to report cache hits and misses to. There's no need to call this yourself &mdash; {@link
+     * RhythmOverlayInflater#setInflationListener(InflationListener)} does that for all caching factories registered in
+     * the inflater.
+     *
+     * @param listener inflation listener, or <code>null</code> to stop reporting
+     */
+    public void setInflationListener(InflationListener listener) {
+        mListener = listener;
     }
 
     /**
@@ -42,15 +164,198 @@ public class SimpleCacheFactory<T extends RhythmSpecLayer> implements RhythmSpec
      * @return layer for this configuration, either new or from cache
      */
     @Override
+    @SuppressWarnings("unchecked")
     public T getForArguments(ArgumentsBundle argsBundle) {
-        T layer = mCache.get(argsBundle);
+        final SharedLayerCache.Partition partition = mSharedCache != null
+                ? getPartition(argsBundle.getDisplayMetrics())
+                : null;
+        T layer = partition != null ? (T) partition.mLayers.get(argsBundle) : getCached(argsBundle);
+
+        final InflationListener listener = mListener;
         if (layer != null) {
+            mHitCount.incrementAndGet();
+            if (listener != null) {
+                listener.onCacheHit(this);
+            }
             return layer;
         }
+        mMissCount.incrementAndGet();
+        if (listener != null) {
+            listener.onCacheMiss(this);
+        }
 
-        // if cache miss, inflate the new one
+        // if cache miss, inflate the new one outside the lock. If another thread managed to put the same layer in the
+        // meantime, use that (and since the inflater may reuse the bundle for the next lines, keep its own copy)
         layer = mDecoratedFactory.getForArguments(argsBundle);
-        mCache.put(argsBundle, layer);
+        if (partition != null) {
+            final T existing = (T) partition.mLayers.putIfAbsent(IndexedArgumentsBundle.retain(argsBundle), layer);
+            return existing != null ? existing : layer;
+        }
+        synchronized (mCache) {
+            final T existing = unwrap(mCache.get(argsBundle));
+            if (existing != null) {
+                return existing;
+            }
+            final ArgumentsBundle key = IndexedArgumentsBundle.retain(argsBundle);
+            mCache.put(key, wrap(key, layer));
+        }
         return layer;
     }
+
+    private T getCached(ArgumentsBundle argsBundle) {
+        synchronized (mCache) {
+            expungeCollectedValues();
+            return unwrap(mCache.get(argsBundle));
+        }
+    }
+
+    /**
+     * Get the partition of the shared cache for provided metrics. Inflaters rarely change their metrics, so the last
+     * partition is kept to skip the lookup
+     */
+    private SharedLayerCache.Partition getPartition(DisplayMetrics metrics) {
+        SharedLayerCache.Partition partition = mLastPartition;
+        if (partition == null || !partition.matches(metrics)) {
+            partition = mSharedCache.getPartition(mDecoratedFactory, metrics);
+            mLastPartition = partition;
+        }
+        return partition;
+    }
+
+    /**
+     * Get the number of cached layers. Layers kept in a shared cache belong to all inflaters sharing it and aren't
+     * counted here &mdash; use {@link SharedLayerCache#size()} instead.
+     *
+     * @return number of layers currently in the cache, or 0 if the layers are kept in a shared cache
+     */
+    public int size() {
+        if (mSharedCache != null) {
+            return 0;
+        }
+        synchronized (mCache) {
+            expungeCollectedValues();
+            return mCache.size();
+        }
+    }
+
+    /**
+     * Remove all cached layers. Doesn't reset the counters. Does nothing if the layers are kept in a shared cache,
+     * since they belong to all inflaters sharing it &mdash; use {@link SharedLayerCache#clear()} instead.
+     */
+    public void clear() {
+        if (mSharedCache != null) {
+            return;
+        }
+        synchronized (mCache) {
+            mCache.clear();
+            // References to the removed layers may still be enqueued, but they'll be ignored
+        }
+    }
+
+    /**
+     * @return number of times a cached layer was returned
+     */
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * @return number of times a layer had to be inflated by the decorated factory
+     */
+    public long getMissCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * @return number of layers evicted to stay within max size or reclaimed by the garbage collector. Layers kept in a
+     * shared cache are never evicted
+     */
+    public long getEvictionCount() {
+        if (mSharedCache != null) {
+            return 0;
+        }
+        synchronized (mCache) {
+            return mEvictionCount;
+        }
+    }
+
+    private Object wrap(ArgumentsBundle key, T layer) {
+        switch (mValueStrength) {
+            case VALUES_SOFT:
+                return new SoftValue<>(key, layer, mCollectedValues);
+            case VALUES_WEAK:
+                return new WeakValue<>(key, layer, mCollectedValues);
+            default:
+                return layer;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T unwrap(Object value) {
+        if (value == null || mValueStrength == VALUES_STRONG) {
+            return (T) value;
+        }
+        return ((Reference<T>) value).get();
+    }
+
+    /**
+     * Remove the entries whose layers were reclaimed by the garbage collector. Must be called with the lock held
+     */
+    private void expungeCollectedValues() {
+        if (mCollectedValues == null) {
+            return;
+        }
+        Reference<? extends T> reference;
+        while ((reference = mCollectedValues.poll()) != null) {
+            final ArgumentsBundle key = ((KeyedValue) reference).getKey();
+            // The entry may have been replaced or removed since then
+            if (mCache.get(key) == reference) {
+                mCache.remove(key);
+                mEvictionCount++;
+            }
+        }
+    }
+
+    /**
+     * A reference to a cached layer that knows its key, so that its entry can be removed once the layer is reclaimed
+     */
+    private interface KeyedValue {
+        ArgumentsBundle getKey();
+    }
+
+    private static final class SoftValue<T> extends SoftReference<T> implements KeyedValue {
+        private final ArgumentsBundle mKey;
+
+        private SoftValue(ArgumentsBundle key, T layer, ReferenceQueue<? super T> queue) {
+            super(layer, queue);
+            mKey = key;
+        }
+
+        @Override
+        public ArgumentsBundle getKey() {
+            return mKey;
+        }
+    }
+
+    private static final class WeakValue<T> extends WeakReference<T> implements KeyedValue {
+        private final ArgumentsBundle mKey;
+
+        private WeakValue(ArgumentsBundle key, T layer, ReferenceQueue<? super T> queue) {
+            super(layer, queue);
+            mKey = key;
+        }
+
+        @Override
+        public ArgumentsBundle getKey() {
+            return mKey;
+        }
+    }
+
+    /**
+     * Type definition for the ways cached layers are referenced
+     */
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({VALUES_STRONG, VALUES_SOFT, VALUES_WEAK})
+    public @interface ValueStrength {
+    }
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>A pool of frozen layer groups used by {@link RhythmOverlayInflater} to share identical subtrees between overlays
+ * of a single config. Two groups are considered identical if they were declared with the same layer type and equal
+ * arguments, and have the very same child layer instances in the same order. Since groups are pooled bottom-up, once
+ * their children are known, identical nested subtrees collapse into a single instance too.</p><p>Children are compared
+ * by identity, so only the groups made entirely of shared layers (cached by {@link SimpleCacheFactory} or pooled here)
+ * are pooled &mdash; a group with a freshly inflated child is never identical to anything else, so it's left as is.
+ * A new pool is made for each inflation call, so that the pool doesn't outlive the config. Safe to use from multiple
+ * threads.</p>
+ *
+ * @author Paul Danyliuk
+ */
+final class SubtreePool {
+
+    private final FactoryRegistry mFactories;
+    private final ConcurrentMap<Key, AbstractSpecLayerGroup> mGroups = new ConcurrentHashMap<>();
+
+    /**
+     * Layers that may be children of pooled groups: leaves from caching factories and the pooled groups themselves
+     */
+    private final Set<RhythmSpecLayer> mSharedLayers =
+            Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<RhythmSpecLayer, Boolean>()));
+
+    /**
+     * @param factories factories of the inflater, used to tell which leaf layers are shared
+     */
+    SubtreePool(FactoryRegistry factories) {
+        mFactories = factories;
+    }
+
+    /**
+     * Remember a leaf layer as shared if it was taken from a {@link SimpleCacheFactory}
+     *
+     * @param layerType layer type the layer was declared with
+     * @param layer     inflated leaf layer
+     */
+    void addLeaf(String layerType, RhythmSpecLayer layer) {
+        if (mFactories.get(layerType) instanceof SimpleCacheFactory) {
+            mSharedLayers.add(layer);
+        }
+    }
+
+    /**
+     * Get the pooled group identical to provided one, or freeze and pool provided group if there's none yet. Groups
+     * with any children that aren't shared are returned as is.
+     *
+     * @param layerType layer type the group was declared with
+     * @param arguments arguments the group was inflated from
+     * @param group     group with all its children already added
+     * @return a frozen group to use in place of provided one, or provided group if it can't be shared
+     */
+    AbstractSpecLayerGroup share(String layerType, ArgumentsBundle arguments, AbstractSpecLayerGroup group) {
+        final List<RhythmSpecLayer> layers = group.mLayers;
+        for (int i = 0, size = layers.size(); i < size; i++) {
+            if (!mSharedLayers.contains(layers.get(i))) {
+                return group;
+            }
+        }
+
+        final Key key = new Key(layerType, arguments, group);
+        final AbstractSpecLayerGroup pooled = mGroups.get(key);
+        if (pooled != null) {
+            return pooled;
+        }
+
+        // Freeze and mark as shared before publishing, so that other threads never get a group that can still change
+        group.freeze();
+        mSharedLayers.add(group);
+        final AbstractSpecLayerGroup existing = mGroups.putIfAbsent(key, group);
+        return existing != null ? existing : group;
+    }
+
+    private static final class Key {
+
+        private final String mLayerType;
+        private final ArgumentsBundle mArguments;
+        private final AbstractSpecLayerGroup mGroup;
+        private final int mHashCode;
+
+        Key(String layerType, ArgumentsBundle arguments, AbstractSpecLayerGroup group) {
+            mLayerType = layerType;
+            mArguments = arguments;
+            mGroup = group;
+
+            int hashCode = 31 * layerType.hashCode() + arguments.hashCode();
+            final List<RhythmSpecLayer> layers = group.mLayers;
+            for (int i = 0, size = layers.size(); i < size; i++) {
+                hashCode = 31 * hashCode + System.identityHashCode(layers.get(i));
+            }
+            mHashCode = hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) { return true; }
+            if (o == null || getClass() != o.getClass()) { return false; }
+
+            Key key = (Key) o;
+            if (mHashCode != key.mHashCode
+                    || mGroup.getClass() != key.mGroup.getClass()
+                    || !mLayerType.equals(key.mLayerType)
+                    || !mArguments.equals(key.mArguments)) {
+                return false;
+            }
+
+            final List<RhythmSpecLayer> layers = mGroup.mLayers;
+            final List<RhythmSpecLayer> otherLayers = key.mGroup.mLayers;
+            final int size = layers.size();
+            if (size != otherLayers.size()) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                if (layers.get(i) != otherLayers.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.actinarium.rhythm;
+
+/**
+ * A small direct-mapped cache of string tokens cut from config lines. Returns the same string instance for the same
+ * characters, so that argument names and values repeating across lines are only allocated once, and a new token simply
+ * replaces whatever was in its slot. Not thread-safe &mdash; meant to be used within a single block.
+ *
+ * @author Paul Danyliuk
+ */
+final class TokenPool {
+
+    // Must be a power of 2
+    private static final int CAPACITY = 256;
+
+    private final String[] mTokens = new String[CAPACITY];
+
+    /**
+     * Get a token for the characters in given range of the line
+     *
+     * @param line  config line
+     * @param start index of the first char of the token
+     * @param end   index after the last char of the token
+     * @return string equal to <code>line.substring(start, end)</code>
+     */
+    String get(String line, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+        final int slot = (hash ^ (hash >>> 16)) & (CAPACITY - 1);
+
+        String token = mTokens[slot];
+        final int length = end - start;
+        if (token == null || token.length() != length || !token.regionMatches(0, line, start, length)) {
+            token = line.substring(start, end);
+            mTokens[slot] = token;
+        }
+        return token;
+    }
+
+}
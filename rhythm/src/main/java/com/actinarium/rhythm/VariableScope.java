@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm;
+
+import android.support.annotation.Nullable;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>A map of @key-&gt;value variables that falls back to a parent map for variables not declared in this scope. Used
+ * by {@link RhythmOverlayInflater} for block-local variables, so that declaring a local variable doesn't require
+ * copying all global variables into a new map, and local variables simply shadow global ones with the same
+ * names.</p><p>Lookups take a single hash probe per scope level. Iterating, comparing, or hashing the scope as a whole
+ * works on a merged snapshot, which is built on demand and then kept until the next variable is declared. Variables
+ * can only be declared with {@link #put(String, String)} &mdash; removing is not supported. The parent map must not be
+ * mutated while this scope is in use.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public class VariableScope extends AbstractMap<String, String> {
+
+    private final Map<String, String> mParent;
+    private final Map<String, String> mVariables;
+
+    // Merged view of this and parent scope, lazily built for whole-map operations
+    private Map<String, String> mMerged;
+
+    // Magic variables by layer type, lazily built as layers of each type are inflated in this scope. The map itself is
+    // created on first use too, since most scopes are never asked for magic variables
+    private volatile ConcurrentHashMap<String, MagicVariableTable> mMagicVariables;
+
+    /**
+     * Create a new variable scope
+     *
+     * @param parent Map of variables to fall back to, or <code>null</code> if this is a root scope
+     */
+    public VariableScope(@Nullable Map<String, String> parent) {
+        mParent = parent;
+        mVariables = new HashMap<>();
+    }
+
+    @Override
+    public String get(Object key) {
+        final String value = mVariables.get(key);
+        if (value != null || mParent == null) {
+            return value;
+        }
+        return mParent.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return mVariables.containsKey(key) || (mParent != null && mParent.containsKey(key));
+    }
+
+    /**
+     * Declare a variable in this scope, shadowing the parent's variable with the same name if present
+     *
+     * @param key   variable name, including @
+     * @param value variable value
+     * @return previous value of the variable in this scope, or null
+     */
+    @Override
+    public String put(String key, String value) {
+        mMerged = null;
+        mMagicVariables = null;
+        return mVariables.put(key, value);
+    }
+
+    @Override
+    public int size() {
+        return getMerged().size();
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return Collections.unmodifiableMap(getMerged()).entrySet();
+    }
+
+    @Override
+    public int hashCode() {
+        return getMerged().hashCode();
+    }
+
+    /**
+     * Get magic variables applicable to provided layer type, built once per scope and layer type
+     *
+     * @param layerType layer type as written in the config
+     * @return magic variables table
+     */
+    MagicVariableTable getMagicVariables(String layerType) {
+        ConcurrentHashMap<String, MagicVariableTable> magicVariables = mMagicVariables;
+        if (magicVariables == null) {
+            // If two threads get here at once, one of the maps is simply lost, which is harmless
+            magicVariables = new ConcurrentHashMap<>();
+            mMagicVariables = magicVariables;
+        }
+        MagicVariableTable table = magicVariables.get(layerType);
+        if (table == null) {
+            // Local scopes rarely declare magic variables for every layer type, so the parent's table is often the
+            // same, and taking it doesn't require merging the scopes
+            table = mParent instanceof VariableScope && !MagicVariableTable.containsAny(mVariables, layerType)
+                    ? ((VariableScope) mParent).getMagicVariables(layerType)
+                    : MagicVariableTable.collect(this, layerType);
+            magicVariables.put(layerType, table);
+        }
+        return table;
+    }
+
+    private Map<String, String> getMerged() {
+        if (mMerged == null) {
+            if (mParent == null) {
+                mMerged = mVariables;
+            } else {
+                mMerged = new HashMap<>(mParent);
+                mMerged.putAll(mVariables);
+            }
+        }
+        return mMerged;
+    }
+}
@@ -20,6 +20,7 @@ import android.content.Context;
 import android.support.annotation.RawRes;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -34,17 +35,19 @@ import java.util.List;
  */
 public final class ReaderUtils {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private ReaderUtils() {}
 
     /**
-     * Reads lines from input stream. Doesn’t close the stream &mdash; you have to close it yourself.
+     * Reads lines from input stream as UTF-8. Doesn’t close the stream &mdash; you have to close it yourself.
      *
      * @param inputStream Input stream
      * @return List of lines read from the stream
      * @see #readLines(Context, int)
      */
     public static List<String> readLines(InputStream inputStream) {
-        final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, Charset.defaultCharset()));
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, UTF_8));
         ArrayList<String> readLines = new ArrayList<>();
         String line;
         try {
@@ -70,11 +73,23 @@ public final class ReaderUtils {
         try {
             return readLines(inputStream);
         } finally {
-            try {
-                inputStream.close();
-            } catch (IOException e) {
-                // Fail quietly
-            }
+            closeQuietly(inputStream);
+        }
+    }
+
+    /**
+     * Closes provided stream or reader, ignoring any {@link IOException}
+     *
+     * @param closeable Stream or reader to close, can be <code>null</code>
+     */
+    public static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Fail quietly
         }
     }
 
@@ -21,8 +21,13 @@ import android.graphics.Rect;
 import android.support.annotation.IntRange;
 import com.actinarium.rhythm.AbstractSpecLayerGroup;
 import com.actinarium.rhythm.RhythmInflationException;
+import com.actinarium.rhythm.RhythmSpecLayer;
 import com.actinarium.rhythm.ArgumentsBundle;
-import com.actinarium.rhythm.RhythmSpecLayerFactory;
+import com.actinarium.rhythm.ArgumentsSchema;
+import com.actinarium.rhythm.IndexedArgumentsBundle;
+import com.actinarium.rhythm.OverlayCompiler;
+import com.actinarium.rhythm.SchemaSpecLayerFactory;
+import com.actinarium.rhythm.config.BundledLayerTypes;
 
 /**
  * A layer that divides provided bounds into arbitrary number of equally wide columns and then draws nested layers in
@@ -37,6 +42,17 @@ public class Columns extends AbstractSpecLayerGroup<Columns> {
 
     private Rect mTemp = new Rect();
 
+    /**
+     * Right edges of the columns, and the bounds they were calculated for
+     */
+    private int[] mColumnRights;
+    private final Rect mLaidOutBounds = new Rect();
+
+    /**
+     * Keylines of all columns to draw with a single call
+     */
+    private final LineBuffer mLines = new LineBuffer();
+
     /**
      * Create spec layer that will evenly divide current bounds in given number of columns and then draw all child
      * layers in each
@@ -81,38 +97,149 @@ public class Columns extends AbstractSpecLayerGroup<Columns> {
         return this;
     }
 
+    /**
+     * Calculate column edges for provided bounds. Children are drawn within different bounds in each column, so they
+     * aren't notified and lay themselves out when drawn.
+     *
+     * @param drawableBounds Bounds this group is going to be drawn within
+     */
     @Override
-    public void draw(Canvas canvas, Rect drawableBounds) {
-        mTemp.set(drawableBounds);
+    public void onBoundsChanged(Rect drawableBounds) {
+        layOut(drawableBounds);
+    }
+
+    private void layOut(Rect drawableBounds) {
+        final int columnCount = Math.max(mColumnCount, 0);
+        if (mColumnRights != null && mColumnRights.length == columnCount && mLaidOutBounds.equals(drawableBounds)) {
+            return;
+        }
+        if (mColumnRights == null || mColumnRights.length != columnCount) {
+            mColumnRights = new int[columnCount];
+        }
         final int left = drawableBounds.left;
         final float width = drawableBounds.width();
-        for (int i = 1; i <= mColumnCount; i++) {
+        for (int i = 1; i <= columnCount; i++) {
             // Always adding rounded i/count fraction of width to the fixed left to ensure symmetry
             // and that the bounds don't overflow overall width
-            mTemp.right = left + (int) Math.floor(width * i / mColumnCount + 0.5f);
+            mColumnRights[i - 1] = left + (int) Math.floor(width * i / columnCount + 0.5f);
+        }
+        mLaidOutBounds.set(drawableBounds);
+    }
+
+    @Override
+    public void draw(Canvas canvas, Rect drawableBounds) {
+        layOut(drawableBounds);
+        final Keyline keyline = getBatchableKeyline();
+        if (keyline != null) {
+            // Keylines of all columns are lines of the same paint, so they can be drawn with a single call. Positions
+            // are collected on every draw, since child keylines can be modified at any time
+            mLines.clear();
+            forEachColumn(null, null, drawableBounds);
+            mLines.draw(canvas, keyline.mPaint, keyline.mThickness);
+            return;
+        }
+        forEachColumn(canvas, null, drawableBounds);
+    }
+
+    @Override
+    public void compile(OverlayCompiler compiler, Rect drawableBounds) {
+        layOut(drawableBounds);
+        final Keyline keyline = getBatchableKeyline();
+        if (keyline != null) {
+            mLines.clear();
+            forEachColumn(null, null, drawableBounds);
+            mLines.compileTo(compiler, keyline.mPaint, keyline.mThickness);
+            return;
+        }
+        forEachColumn(null, compiler, drawableBounds);
+    }
+
+    @Override
+    public boolean isCompilable() {
+        return getClass() == Columns.class;
+    }
+
+    /**
+     * Draw all children into each column, or add them to the compiler if provided, or add their lines to the line
+     * buffer if neither is provided
+     */
+    private void forEachColumn(Canvas canvas, OverlayCompiler compiler, Rect drawableBounds) {
+        mTemp.set(drawableBounds);
+        for (int i = 0; i < mColumnRights.length; i++) {
+            mTemp.right = mColumnRights[i];
 
             // Draw all children into the column
-            super.draw(canvas, mTemp);
+            if (canvas != null) {
+                super.draw(canvas, mTemp);
+            } else if (compiler != null) {
+                super.compile(compiler, mTemp);
+            } else {
+                for (int j = 0, size = mLayers.size(); j < size; j++) {
+                    ((Keyline) mLayers.get(j)).addTo(mLines, mTemp);
+                }
+            }
 
             // Offset the temporary rect
             mTemp.left = mTemp.right;
         }
     }
 
+    /**
+     * Get a child keyline to take the paint and thickness from, if all children are plain keylines that look the same
+     * and so can be drawn with a single call
+     *
+     * @return first child keyline, or null if the children must be drawn one by one
+     */
+    private Keyline getBatchableKeyline() {
+        final int size = mLayers.size();
+        if (size == 0) {
+            return null;
+        }
+        Keyline first = null;
+        for (int i = 0; i < size; i++) {
+            final RhythmSpecLayer layer = mLayers.get(i);
+            // Subclasses may draw differently, so only take keylines of exactly this class
+            if (layer.getClass() != Keyline.class) {
+                return null;
+            }
+            final Keyline keyline = (Keyline) layer;
+            if (first == null) {
+                // Stroking zero-width lines would draw hairlines
+                if (keyline.mThickness <= 0) {
+                    return null;
+                }
+                first = keyline;
+            } else if (keyline.mThickness != first.mThickness
+                    || keyline.mPaint.getColor() != first.mPaint.getColor()) {
+                return null;
+            }
+        }
+        return first;
+    }
+
     /**
      * A default factory that creates new {@link Columns} layers from config lines according to <a
      * href="https://github.com/Actinarium/Rhythm/wiki/Declarative-configuration#columns">the docs</a>
      */
-    public static class Factory implements RhythmSpecLayerFactory<Columns> {
+    public static class Factory implements SchemaSpecLayerFactory<Columns> {
 
         public static final String LAYER_TYPE = "columns";
         public static final String ARG_COUNT = "count";
 
+        private static final ArgumentsSchema SCHEMA = new ArgumentsSchema(BundledLayerTypes.COLUMNS);
+        private static final int SLOT_COUNT = SCHEMA.indexOf(ARG_COUNT);
+
+        @Override
+        public ArgumentsSchema getArgumentsSchema() {
+            return SCHEMA;
+        }
+
         @Override
         public Columns getForArguments(ArgumentsBundle argsBundle) {
+            final IndexedArgumentsBundle args = SCHEMA.bind(argsBundle);
             Columns columns = new Columns();
 
-            columns.mColumnCount = argsBundle.getInt(ARG_COUNT, 0);
+            columns.mColumnCount = args.getInt(SLOT_COUNT, 0);
             if (columns.mColumnCount <= 0) {
                 throw new RhythmInflationException(
                         "Error in columns config: 'count' argument is mandatory and must be greater than 0"
@@ -27,9 +27,14 @@ import android.text.StaticLayout;
 import android.text.TextPaint;
 import android.util.DisplayMetrics;
 import android.view.Gravity;
-import com.actinarium.rhythm.RhythmSpecLayer;
+import com.actinarium.rhythm.BoundsAwareSpecLayer;
+import com.actinarium.rhythm.CompilableSpecLayer;
 import com.actinarium.rhythm.ArgumentsBundle;
-import com.actinarium.rhythm.RhythmSpecLayerFactory;
+import com.actinarium.rhythm.ArgumentsSchema;
+import com.actinarium.rhythm.IndexedArgumentsBundle;
+import com.actinarium.rhythm.OverlayCompiler;
+import com.actinarium.rhythm.SchemaSpecLayerFactory;
+import com.actinarium.rhythm.config.BundledLayerTypes;
 
 import java.text.DecimalFormat;
 
@@ -41,7 +46,7 @@ import java.text.DecimalFormat;
  *
  * @author Paul Danyliuk
  */
-public class DimensionsLabel implements RhythmSpecLayer {
+public class DimensionsLabel implements BoundsAwareSpecLayer, CompilableSpecLayer {
 
     public static final int DEFAULT_BACKGROUND = 0x80000000;
     public static final int DEFAULT_TEXT_COLOR = 0xA0FFFFFF;
@@ -67,6 +72,13 @@ public class DimensionsLabel implements RhythmSpecLayer {
 
     private Rect mTemp = new Rect();
 
+    /**
+     * Label text laid out for {@link #mLaidOutBounds} and positioned at {@link #mTemp}, or null if not laid out yet or
+     * the configuration has changed since
+     */
+    private StaticLayout mLayout;
+    private final Rect mLaidOutBounds = new Rect();
+
     public DimensionsLabel() {
         mBackgroundPaint = new Paint();
         mBackgroundPaint.setStyle(Paint.Style.FILL);
@@ -86,6 +98,7 @@ public class DimensionsLabel implements RhythmSpecLayer {
      * @return this for chaining
      */
     public DimensionsLabel setScaleFactor(@FloatRange(from = 0.0, fromInclusive = false) float scaleFactor) {
+        mLayout = null;
         mScaleFactor = scaleFactor;
         return this;
     }
@@ -98,6 +111,7 @@ public class DimensionsLabel implements RhythmSpecLayer {
      * @return this for chaining
      */
     public DimensionsLabel setGravity(int gravity) {
+        mLayout = null;
         mGravity = gravity;
         return this;
     }
@@ -131,22 +145,32 @@ public class DimensionsLabel implements RhythmSpecLayer {
      * @return this for chaining
      */
     public DimensionsLabel setTextSize(@FloatRange(from = 0.0, fromInclusive = false) float size) {
+        mLayout = null;
         mTextPaint.setTextSize(size);
         return this;
     }
 
     @Override
-    public void draw(Canvas canvas, Rect drawableBounds) {
+    public void onBoundsChanged(Rect drawableBounds) {
         final int intWidth = drawableBounds.width();
         // Make the label text based on width, height, and scale factor
         String text = prettyPrintDips(intWidth, mScaleFactor) + ' ' + MULTIPLY + ' '
                 + prettyPrintDips(drawableBounds.height(), mScaleFactor);
 
         // Use StaticLayout, which will calculate text dimensions nicely, then position the box using Gravity.apply()
-        // (although that's one instantiation per draw call...)
+        // (now one instantiation per bounds change, kept for drawing until the bounds change again)
         // This is what happens if you're obsessed with perfection like me
         StaticLayout layout = new StaticLayout(text, mTextPaint, intWidth, Layout.Alignment.ALIGN_NORMAL, 1f, 0f, false);
         Gravity.apply(mGravity, (int) (layout.getLineMax(0) + 0.5), layout.getHeight(), drawableBounds, mTemp);
+        mLayout = layout;
+        mLaidOutBounds.set(drawableBounds);
+    }
+
+    @Override
+    public void draw(Canvas canvas, Rect drawableBounds) {
+        if (mLayout == null || !mLaidOutBounds.equals(drawableBounds)) {
+            onBoundsChanged(drawableBounds);
+        }
 
         // Draw background
         canvas.drawRect(mTemp, mBackgroundPaint);
@@ -154,10 +178,24 @@ public class DimensionsLabel implements RhythmSpecLayer {
         // We have to translate the canvas ourselves, since layout can only draw itself at (0, 0)
         canvas.save();
         canvas.translate(mTemp.left, mTemp.top);
-        layout.draw(canvas);
+        mLayout.draw(canvas);
         canvas.restore();
     }
 
+    @Override
+    public void compile(OverlayCompiler compiler, Rect drawableBounds) {
+        if (mLayout == null || !mLaidOutBounds.equals(drawableBounds)) {
+            onBoundsChanged(drawableBounds);
+        }
+        compiler.addRect(mTemp, mBackgroundPaint);
+        compiler.addText(mLayout, mTemp.left, mTemp.top);
+    }
+
+    @Override
+    public boolean isCompilable() {
+        return getClass() == DimensionsLabel.class;
+    }
+
     /**
      * Sophisticated conversion of pixels to dips with the use of vulgar fractions (to save screen space)
      *
@@ -201,7 +239,7 @@ public class DimensionsLabel implements RhythmSpecLayer {
      * A default factory that creates new {@link DimensionsLabel} layers from config lines according to <a
      * href="https://github.com/Actinarium/Rhythm/wiki/Declarative-configuration#dimensions-label">the docs</a>
      */
-    public static class Factory implements RhythmSpecLayerFactory<DimensionsLabel> {
+    public static class Factory implements SchemaSpecLayerFactory<DimensionsLabel> {
 
         public static final String LAYER_TYPE = "dimensions-label";
         public static final String ARG_GRAVITY = "gravity";
@@ -209,19 +247,31 @@ public class DimensionsLabel implements RhythmSpecLayer {
         public static final String ARG_TEXT_COLOR = "text-color";
         public static final String ARG_TEXT_SIZE = "text-size";
 
+        private static final ArgumentsSchema SCHEMA = new ArgumentsSchema(BundledLayerTypes.DIMENSIONS_LABEL);
+        private static final int SLOT_GRAVITY = SCHEMA.indexOf(ARG_GRAVITY);
+        private static final int SLOT_COLOR = SCHEMA.indexOf(ARG_COLOR);
+        private static final int SLOT_TEXT_COLOR = SCHEMA.indexOf(ARG_TEXT_COLOR);
+        private static final int SLOT_TEXT_SIZE = SCHEMA.indexOf(ARG_TEXT_SIZE);
+
+        @Override
+        public ArgumentsSchema getArgumentsSchema() {
+            return SCHEMA;
+        }
+
         @SuppressLint("RtlHardcoded")
         @Override
         public DimensionsLabel getForArguments(ArgumentsBundle argsBundle) {
+            final IndexedArgumentsBundle args = SCHEMA.bind(argsBundle);
             DimensionsLabel label = new DimensionsLabel();
 
-            final float density = argsBundle.getDisplayMetrics().density;
+            final float density = args.getDisplayMetrics().density;
             label.mScaleFactor = density;
 
-            label.mGravity = argsBundle.getGravity(ARG_GRAVITY, Gravity.BOTTOM | Gravity.RIGHT);
-            label.mBackgroundPaint.setColor(argsBundle.getColor(ARG_COLOR, DEFAULT_BACKGROUND));
-            label.mTextPaint.setColor(argsBundle.getColor(ARG_TEXT_COLOR, DEFAULT_TEXT_COLOR));
+            label.mGravity = args.getGravity(SLOT_GRAVITY, Gravity.BOTTOM | Gravity.RIGHT);
+            label.mBackgroundPaint.setColor(args.getColor(SLOT_COLOR, DEFAULT_BACKGROUND));
+            label.mTextPaint.setColor(args.getColor(SLOT_TEXT_COLOR, DEFAULT_TEXT_COLOR));
             // todo: it shouldn't be the factory's concern to pre-multiply default text size by density - think of how to handle this gracefully
-            label.mTextPaint.setTextSize(argsBundle.getDimensionPixelExact(ARG_TEXT_SIZE, DEFAULT_TEXT_SIZE * density));
+            label.mTextPaint.setTextSize(args.getDimensionPixelExact(SLOT_TEXT_SIZE, DEFAULT_TEXT_SIZE * density));
 
             return label;
         }
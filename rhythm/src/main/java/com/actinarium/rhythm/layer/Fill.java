@@ -20,9 +20,13 @@ import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.support.annotation.ColorInt;
-import com.actinarium.rhythm.RhythmSpecLayer;
+import com.actinarium.rhythm.CompilableSpecLayer;
+import com.actinarium.rhythm.OverlayCompiler;
 import com.actinarium.rhythm.ArgumentsBundle;
-import com.actinarium.rhythm.RhythmSpecLayerFactory;
+import com.actinarium.rhythm.ArgumentsSchema;
+import com.actinarium.rhythm.IndexedArgumentsBundle;
+import com.actinarium.rhythm.SchemaSpecLayerFactory;
+import com.actinarium.rhythm.config.BundledLayerTypes;
 
 /**
  * A layer that fills all provided area with solid color. You will usually want to use it inside {@link Inset} to draw
@@ -30,7 +34,7 @@ import com.actinarium.rhythm.RhythmSpecLayerFactory;
  *
  * @author Paul Danyliuk
  */
-public class Fill implements RhythmSpecLayer {
+public class Fill implements CompilableSpecLayer {
 
     public static final int DEFAULT_FILL_COLOR = 0x400091EA;
 
@@ -61,19 +65,38 @@ public class Fill implements RhythmSpecLayer {
         canvas.drawRect(drawableBounds, mPaint);
     }
 
+    @Override
+    public void compile(OverlayCompiler compiler, Rect drawableBounds) {
+        compiler.addRect(drawableBounds, mPaint);
+    }
+
+    @Override
+    public boolean isCompilable() {
+        return getClass() == Fill.class;
+    }
+
     /**
      * A default factory that creates new {@link Fill} layers from config lines according to <a
      * href="https://github.com/Actinarium/Rhythm/wiki/Declarative-configuration#fill">the docs</a>
      */
-    public static class Factory implements RhythmSpecLayerFactory<Fill> {
+    public static class Factory implements SchemaSpecLayerFactory<Fill> {
 
         public static final String LAYER_TYPE = "fill";
         public static final String ARG_COLOR = "color";
 
+        private static final ArgumentsSchema SCHEMA = new ArgumentsSchema(BundledLayerTypes.FILL);
+        private static final int SLOT_COLOR = SCHEMA.indexOf(ARG_COLOR);
+
+        @Override
+        public ArgumentsSchema getArgumentsSchema() {
+            return SCHEMA;
+        }
+
         @Override
         public Fill getForArguments(ArgumentsBundle argsBundle) {
+            final IndexedArgumentsBundle args = SCHEMA.bind(argsBundle);
             Fill fill = new Fill();
-            fill.setColor(argsBundle.getColor(ARG_COLOR, DEFAULT_FILL_COLOR));
+            fill.setColor(args.getColor(SLOT_COLOR, DEFAULT_FILL_COLOR));
             return fill;
         }
     }
@@ -17,17 +17,25 @@
 package com.actinarium.rhythm.layer;
 
 import android.annotation.SuppressLint;
+import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.Shader;
 import android.support.annotation.ColorInt;
 import android.support.annotation.FloatRange;
 import android.support.annotation.IntRange;
 import android.view.Gravity;
-import com.actinarium.rhythm.RhythmSpecLayer;
+import com.actinarium.rhythm.BoundsAwareSpecLayer;
+import com.actinarium.rhythm.CompilableSpecLayer;
+import com.actinarium.rhythm.OverlayCompiler;
 import com.actinarium.rhythm.RhythmInflationException;
 import com.actinarium.rhythm.ArgumentsBundle;
-import com.actinarium.rhythm.RhythmSpecLayerFactory;
+import com.actinarium.rhythm.ArgumentsSchema;
+import com.actinarium.rhythm.IndexedArgumentsBundle;
+import com.actinarium.rhythm.SchemaSpecLayerFactory;
+import com.actinarium.rhythm.config.BundledLayerTypes;
 
 /**
  * A spec layer for horizontal <b>or</b> vertical grid lines (not both at once!), repeating at a fixed step. Horizontal
@@ -36,7 +44,7 @@ import com.actinarium.rhythm.RhythmSpecLayerFactory;
  * baseline grids and incremental keylines. <b>Note:</b> RTL properties are not supported, you only have <i>left</i> and
  * <i>right</i> at your disposal.
  */
-public class GridLines implements RhythmSpecLayer {
+public class GridLines implements BoundsAwareSpecLayer, CompilableSpecLayer {
 
     public static final int DEFAULT_GRID_COLOR = 0x800091EA;
     /**
@@ -44,6 +52,11 @@ public class GridLines implements RhythmSpecLayer {
      */
     public static final int DEFAULT_THICKNESS = 1;       // px
 
+    /**
+     * Largest step, in pixels, for which lines are drawn with a tile in {@link #setTiled(boolean) tiled} mode
+     */
+    private static final int MAX_TILE_STEP = 1024;
+
     @FloatRange(from = 0f, fromInclusive = false)
     protected float mStep;
     @IntRange(from = 1)
@@ -54,6 +67,24 @@ public class GridLines implements RhythmSpecLayer {
     @ArgumentsBundle.EdgeAffinity
     protected int mEdgeAffinity;
     protected Paint mPaint;
+    protected boolean mIsTiled;
+
+    /**
+     * Rasterized step of the grid for tiled mode, rebuilt whenever step, thickness, color, or orientation change
+     */
+    private volatile Tile mTile;
+
+    /**
+     * Lines to draw with a single call, and the bounds and parameters they were computed for
+     */
+    private final LineBuffer mLines = new LineBuffer();
+    private final Rect mLinesBounds = new Rect();
+    private final Rect mClip = new Rect();
+    private float mLinesStep;
+    private int mLinesThickness;
+    private int mLinesLimit;
+    private int mLinesOffset;
+    private int mLinesEdgeAffinity;
 
     /**
      * Create a layer that draws horizontal or vertical grid lines. Unless offset is applied, horizontal lines are
@@ -161,54 +192,372 @@ public class GridLines implements RhythmSpecLayer {
         return this;
     }
 
-    @SuppressLint("RtlHardcoded")
+    /**
+     * <p>Enable or disable tiled mode. In tiled mode, a single step of the grid is rasterized into a small bitmap, and
+     * all lines are drawn with a single call filling their area with this bitmap repeated, instead of stroking each
+     * line. The result is exactly the same, so this is just an optimization for dense grids.</p><p>Tiles can only
+     * represent grids with whole-pixel steps of up to 1024px and non-overlapping lines, starting at non-negative
+     * coordinates, so in other cases the lines are drawn as usual. Only the color of the line paint is rasterized into
+     * the tile, so don't use tiled mode if you modify the paint in any other way.</p>
+     *
+     * @param isTiled true to draw the lines with a repeating tile if possible. Default is false.
+     * @return this for chaining
+     */
+    public GridLines setTiled(boolean isTiled) {
+        mIsTiled = isTiled;
+        return this;
+    }
+
     @Override
     public void draw(Canvas canvas, Rect drawableBounds) {
-        // Depending on gravity the orientation, the order of drawing, and the starting point are different
-        if (mEdgeAffinity == Gravity.TOP) {
-            final float top = drawableBounds.top + mOffset + 0.5f;
-            for (int i = 0; i <= mLimit; i++) {
-                int y = (int) (top + mStep * i);
-                if (y >= drawableBounds.bottom) {
-                    return;
-                }
-                canvas.drawRect(drawableBounds.left, y, drawableBounds.right, y + mThickness, mPaint);
+        if (mIsTiled && drawTiled(canvas, drawableBounds)) {
+            return;
+        }
+
+        // In tall scrolling views only a small part of the grid is visible, so lines outside the clip are skipped
+        if (!canvas.getClipBounds(mClip) || !crossesClip(drawableBounds, mClip)) {
+            return;
+        }
+        if (!canBatchLines()) {
+            emitLines(canvas, drawableBounds, mClip, null);
+            return;
+        }
+        updateLines(drawableBounds);
+        final float origin = getOrigin(drawableBounds);
+        final int first = findFirstVisibleLine(origin, mClip);
+        int end = first;
+        while (end < mLines.size() && !isPastClip(getLinePosition(origin, end), mClip)) {
+            end++;
+        }
+        mLines.draw(canvas, mPaint, mThickness, first, end);
+    }
+
+    @Override
+    public void compile(OverlayCompiler compiler, Rect drawableBounds) {
+        // Tiles and unbatchable lines are drawn as is
+        if (mIsTiled || !canBatchLines()) {
+            compiler.addDrawnLayer(this, drawableBounds);
+            return;
+        }
+        updateLines(drawableBounds);
+        mLines.compileTo(compiler, mPaint, mThickness);
+    }
+
+    @Override
+    public boolean isCompilable() {
+        return getClass() == GridLines.class;
+    }
+
+    @Override
+    public void onBoundsChanged(Rect drawableBounds) {
+        if (!mIsTiled && canBatchLines()) {
+            updateLines(drawableBounds);
+        }
+    }
+
+    /**
+     * @return true if the lines can be drawn with a single call
+     */
+    private boolean canBatchLines() {
+        // Stroking zero-width lines would draw hairlines, and overlapping lines must be blended one by one
+        return mThickness > 0 && mThickness <= mStep;
+    }
+
+    /**
+     * Fill the line buffer for provided bounds, unless it's already filled for the same bounds and parameters
+     */
+    private void updateLines(Rect drawableBounds) {
+        // Line positions only depend on the bounds and the grid parameters, so keep them until either changes
+        if (!mLinesBounds.equals(drawableBounds) || mLinesStep != mStep || mLinesThickness != mThickness
+                || mLinesLimit != mLimit || mLinesOffset != mOffset || mLinesEdgeAffinity != mEdgeAffinity) {
+            mLines.clear();
+            emitLines(null, drawableBounds, null, mLines);
+            mLinesBounds.set(drawableBounds);
+            mLinesStep = mStep;
+            mLinesThickness = mThickness;
+            mLinesLimit = mLimit;
+            mLinesOffset = mOffset;
+            mLinesEdgeAffinity = mEdgeAffinity;
+        }
+    }
+
+    /**
+     * Draw grid lines one by one, or add them to the line buffer if provided
+     *
+     * @param canvas         canvas to draw the lines to, unused if the buffer is provided
+     * @param drawableBounds bounds of the grid
+     * @param clip           clip bounds to skip the lines outside of, or null to emit all lines
+     * @param lines          buffer to add the lines to instead of drawing them, or null
+     */
+    @SuppressLint("RtlHardcoded")
+    private void emitLines(Canvas canvas, Rect drawableBounds, Rect clip, LineBuffer lines) {
+        final boolean isHorizontal = mEdgeAffinity == Gravity.TOP || mEdgeAffinity == Gravity.BOTTOM;
+        if (!isHorizontal && mEdgeAffinity != Gravity.LEFT && mEdgeAffinity != Gravity.RIGHT) {
+            return;
+        }
+        final float origin = getOrigin(drawableBounds);
+        final int first = clip != null ? findFirstVisibleLine(origin, clip) : 0;
+        for (int i = first; i <= mLimit; i++) {
+            final int position = getLinePosition(origin, i);
+            if (!isWithinBounds(position, drawableBounds) || clip != null && isPastClip(position, clip)) {
+                return;
             }
-        } else if (mEdgeAffinity == Gravity.BOTTOM) {
-            final float bottom = drawableBounds.bottom + mOffset + 0.5f;
-            for (int i = 0; i <= mLimit; i++) {
-                int y = (int) (bottom - mStep * i);
-                if (y < drawableBounds.top) {
-                    return;
+            if (isHorizontal) {
+                if (lines != null) {
+                    lines.addHorizontal(drawableBounds.left, position, drawableBounds.right, position + mThickness);
+                } else {
+                    canvas.drawRect(drawableBounds.left, position, drawableBounds.right, position + mThickness, mPaint);
+                }
+            } else {
+                if (lines != null) {
+                    lines.addVertical(position, drawableBounds.top, position + mThickness, drawableBounds.bottom);
+                } else {
+                    canvas.drawRect(position, drawableBounds.top, position + mThickness, drawableBounds.bottom, mPaint);
                 }
-                canvas.drawRect(drawableBounds.left, y, drawableBounds.right, y + mThickness, mPaint);
             }
+        }
+    }
+
+    /**
+     * Get the position of the first line before rounding, from which the lines go towards the opposite edge
+     */
+    @SuppressLint("RtlHardcoded")
+    private float getOrigin(Rect drawableBounds) {
+        final int edge;
+        if (mEdgeAffinity == Gravity.TOP) {
+            edge = drawableBounds.top;
+        } else if (mEdgeAffinity == Gravity.BOTTOM) {
+            edge = drawableBounds.bottom;
         } else if (mEdgeAffinity == Gravity.LEFT) {
-            final float left = drawableBounds.left + mOffset + 0.5f;
-            for (int i = 0; i <= mLimit; i++) {
-                int x = (int) (left + mStep * i);
-                if (x >= drawableBounds.right) {
-                    return;
-                }
-                canvas.drawRect(x, drawableBounds.top, x + mThickness, drawableBounds.bottom, mPaint);
+            edge = drawableBounds.left;
+        } else {
+            edge = drawableBounds.right;
+        }
+        return edge + mOffset + 0.5f;
+    }
+
+    /**
+     * Get the top (or left) coordinate of the line at provided index. Lines are ordered by index, so positions are
+     * growing for top and left edge affinity and decreasing otherwise
+     */
+    @SuppressLint("RtlHardcoded")
+    private int getLinePosition(float origin, int index) {
+        if (mEdgeAffinity == Gravity.TOP || mEdgeAffinity == Gravity.LEFT) {
+            return (int) (origin + mStep * index);
+        } else {
+            return (int) (origin - mStep * index);
+        }
+    }
+
+    /**
+     * @return true if the line at provided position is drawn within the bounds, false if this and all next lines are
+     * not drawn
+     */
+    @SuppressLint("RtlHardcoded")
+    private boolean isWithinBounds(int position, Rect drawableBounds) {
+        switch (mEdgeAffinity) {
+            case Gravity.TOP:
+                return position < drawableBounds.bottom;
+            case Gravity.BOTTOM:
+                return position >= drawableBounds.top;
+            case Gravity.LEFT:
+                return position < drawableBounds.right;
+            default:
+                return position >= drawableBounds.left;
+        }
+    }
+
+    /**
+     * @return true if the lines, which span the bounds across their direction, cross the clip
+     */
+    @SuppressLint("RtlHardcoded")
+    private boolean crossesClip(Rect drawableBounds, Rect clip) {
+        if (mEdgeAffinity == Gravity.TOP || mEdgeAffinity == Gravity.BOTTOM) {
+            return clip.left < drawableBounds.right && clip.right > drawableBounds.left;
+        } else {
+            return clip.top < drawableBounds.bottom && clip.bottom > drawableBounds.top;
+        }
+    }
+
+    /**
+     * @return true if the line at provided position and all next lines are outside of the clip
+     */
+    @SuppressLint("RtlHardcoded")
+    private boolean isPastClip(int position, Rect clip) {
+        switch (mEdgeAffinity) {
+            case Gravity.TOP:
+                return position >= clip.bottom;
+            case Gravity.BOTTOM:
+                return position + mThickness <= clip.top;
+            case Gravity.LEFT:
+                return position >= clip.right;
+            default:
+                return position + mThickness <= clip.left;
+        }
+    }
+
+    /**
+     * @return true if the line at provided position is outside of the clip, but next lines may be within it
+     */
+    @SuppressLint("RtlHardcoded")
+    private boolean isBeforeClip(int position, Rect clip) {
+        switch (mEdgeAffinity) {
+            case Gravity.TOP:
+                return position + mThickness <= clip.top;
+            case Gravity.BOTTOM:
+                return position >= clip.bottom;
+            case Gravity.LEFT:
+                return position + mThickness <= clip.left;
+            default:
+                return position >= clip.right;
+        }
+    }
+
+    /**
+     * Find the index of the first line that can be visible within the clip without iterating over the lines before it
+     *
+     * @param origin position of the first line, see {@link #getOrigin(Rect)}
+     * @param clip   clip bounds
+     * @return index of the first line not before the clip, or the limit if all lines are before it
+     */
+    @SuppressLint("RtlHardcoded")
+    private int findFirstVisibleLine(float origin, Rect clip) {
+        // Estimate the index from the distance to the clip edge, and then step to the exact one, since line positions
+        // are rounded. Computed in doubles so that clips far out of bounds don't overflow
+        final double distance;
+        switch (mEdgeAffinity) {
+            case Gravity.TOP:
+                distance = (double) clip.top - mThickness - origin;
+                break;
+            case Gravity.BOTTOM:
+                distance = origin - (double) clip.bottom;
+                break;
+            case Gravity.LEFT:
+                distance = (double) clip.left - mThickness - origin;
+                break;
+            default:
+                distance = origin - (double) clip.right;
+                break;
+        }
+        final double estimate = distance / mStep;
+        int index = estimate <= 0 ? 0 : estimate >= mLimit ? mLimit : (int) estimate;
+        while (index > 0 && !isBeforeClip(getLinePosition(origin, index - 1), clip)) {
+            index--;
+        }
+        while (index < mLimit && isBeforeClip(getLinePosition(origin, index), clip)) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Draw the same lines as {@link #draw(Canvas, Rect)} does with a repeating tile, if the lines can be drawn this way
+     * exactly
+     *
+     * @return true if drawn, false if the lines must be drawn as usual
+     */
+    @SuppressLint("RtlHardcoded")
+    private boolean drawTiled(Canvas canvas, Rect drawableBounds) {
+        final int step = (int) mStep;
+        if (step != mStep || step > MAX_TILE_STEP || mThickness > step) {
+            // Fractional steps make lines drift by a pixel here and there, and overlapping lines add up
+            return false;
+        }
+
+        final boolean isHorizontal = mEdgeAffinity == Gravity.TOP || mEdgeAffinity == Gravity.BOTTOM;
+        if (!isHorizontal && mEdgeAffinity != Gravity.LEFT && mEdgeAffinity != Gravity.RIGHT) {
+            // Nothing to draw anyway
+            return true;
+        }
+        final boolean isForward = mEdgeAffinity == Gravity.TOP || mEdgeAffinity == Gravity.LEFT;
+        final int low = isHorizontal ? drawableBounds.top : drawableBounds.left;
+        final int end = isHorizontal ? drawableBounds.bottom : drawableBounds.right;
+
+        // Line positions are the same as in draw(). As long as they aren't negative, casting to int rounds them down,
+        // so with a whole-pixel step they are exactly step pixels apart
+        final float origin = (isForward ? low : end) + mOffset + 0.5f;
+        final int first = (int) origin;
+        final int lastIndex;
+        if (isForward) {
+            if (origin < 0) {
+                return false;
             }
-        } else if (mEdgeAffinity == Gravity.RIGHT) {
-            final float right = drawableBounds.right + mOffset + 0.5f;
-            for (int i = 0; i <= mLimit; i++) {
-                int x = (int) (right - mStep * i);
-                if (x < drawableBounds.left) {
-                    return;
-                }
-                canvas.drawRect(x, drawableBounds.top, x + mThickness, drawableBounds.bottom, mPaint);
+            if (first >= end) {
+                return true;
+            }
+            lastIndex = Math.min(mLimit, (end - 1 - first) / step);
+        } else {
+            if (low < 0) {
+                return false;
+            }
+            if (first < low) {
+                return true;
+            }
+            lastIndex = Math.min(mLimit, (first - low) / step);
+            // Right below zero, casting rounds up instead, so make sure draw() would also stop there
+            if (lastIndex < mLimit && (int) (origin - mStep * (lastIndex + 1)) >= low) {
+                return false;
             }
         }
+        final int from = isForward ? first : first - step * lastIndex;
+        final int to = (isForward ? first + step * lastIndex : first) + mThickness;
+
+        Tile tile = mTile;
+        final int color = mPaint.getColor();
+        if (tile == null || !tile.matches(step, mThickness, color, isHorizontal)) {
+            tile = new Tile(step, mThickness, color, isHorizontal, mPaint);
+            mTile = tile;
+        }
+
+        // The tile is repeated from the canvas origin, so move the origin to the first line
+        final int saveCount = canvas.save();
+        if (isHorizontal) {
+            canvas.translate(0, from);
+            canvas.drawRect(drawableBounds.left, 0, drawableBounds.right, to - from, tile.mPaint);
+        } else {
+            canvas.translate(from, 0);
+            canvas.drawRect(0, drawableBounds.top, to - from, drawableBounds.bottom, tile.mPaint);
+        }
+        canvas.restoreToCount(saveCount);
+        return true;
+    }
+
+    /**
+     * A single step of the grid rasterized into a bitmap: a line at the start and transparent pixels after it. The tile
+     * is one pixel wide (or tall), since it's repeated along the lines as well
+     */
+    private static final class Tile {
+        private final int mStep;
+        private final int mThickness;
+        private final int mColor;
+        private final boolean mIsHorizontal;
+        private final Paint mPaint;
+
+        private Tile(int step, int thickness, int color, boolean isHorizontal, Paint linePaint) {
+            mStep = step;
+            mThickness = thickness;
+            mColor = color;
+            mIsHorizontal = isHorizontal;
+
+            // Draw the line with the same paint, so that the tile pixels are exactly what would be drawn
+            final Bitmap bitmap = isHorizontal
+                    ? Bitmap.createBitmap(1, step, Bitmap.Config.ARGB_8888)
+                    : Bitmap.createBitmap(step, 1, Bitmap.Config.ARGB_8888);
+            new Canvas(bitmap).drawRect(0, 0, isHorizontal ? 1 : thickness, isHorizontal ? thickness : 1, linePaint);
+            mPaint = new Paint();
+            mPaint.setShader(new BitmapShader(bitmap, Shader.TileMode.REPEAT, Shader.TileMode.REPEAT));
+        }
+
+        private boolean matches(int step, int thickness, int color, boolean isHorizontal) {
+            return mStep == step && mThickness == thickness && mColor == color && mIsHorizontal == isHorizontal;
+        }
     }
 
     /**
      * A default factory that creates new {@link GridLines} layers from config lines according to <a
      * href="https://github.com/Actinarium/Rhythm/wiki/Declarative-configuration#grid-lines">the docs</a>
      */
-    public static class Factory implements RhythmSpecLayerFactory<GridLines> {
+    public static class Factory implements SchemaSpecLayerFactory<GridLines> {
 
         public static final String LAYER_TYPE = "grid-lines";
         public static final String ARG_EDGE = "from";
@@ -217,19 +566,35 @@ public class GridLines implements RhythmSpecLayer {
         public static final String ARG_THICKNESS = "thickness";
         public static final String ARG_LIMIT = "limit";
         public static final String ARG_OFFSET = "offset";
+        public static final String ARG_TILED = "tiled";
+
+        private static final ArgumentsSchema SCHEMA = new ArgumentsSchema(BundledLayerTypes.GRID_LINES);
+        private static final int SLOT_EDGE = SCHEMA.indexOf(ARG_EDGE);
+        private static final int SLOT_STEP = SCHEMA.indexOf(ARG_STEP);
+        private static final int SLOT_COLOR = SCHEMA.indexOf(ARG_COLOR);
+        private static final int SLOT_THICKNESS = SCHEMA.indexOf(ARG_THICKNESS);
+        private static final int SLOT_LIMIT = SCHEMA.indexOf(ARG_LIMIT);
+        private static final int SLOT_OFFSET = SCHEMA.indexOf(ARG_OFFSET);
+        private static final int SLOT_TILED = SCHEMA.indexOf(ARG_TILED);
+
+        @Override
+        public ArgumentsSchema getArgumentsSchema() {
+            return SCHEMA;
+        }
 
         @Override
         public GridLines getForArguments(ArgumentsBundle argsBundle) {
+            final IndexedArgumentsBundle args = SCHEMA.bind(argsBundle);
             GridLines gridLines = new GridLines();
 
-            gridLines.mEdgeAffinity = argsBundle.getEdgeAffinity(ARG_EDGE, Gravity.NO_GRAVITY);
+            gridLines.mEdgeAffinity = args.getEdgeAffinity(SLOT_EDGE, Gravity.NO_GRAVITY);
             if (gridLines.mEdgeAffinity == Gravity.NO_GRAVITY) {
                 throw new RhythmInflationException(
                         "Error in grid-lines config: 'from' argument is mandatory and must be either 'left', 'right', 'top', 'bottom'"
                 );
             }
 
-            final float step = argsBundle.getDimensionPixelExact(ARG_STEP, 0f);
+            final float step = args.getDimensionPixelExact(SLOT_STEP, 0f);
             if (step <= 0) {
                 throw new RhythmInflationException(
                         "Error in grid-lines config: 'step' argument is mandatory and must be greater than 0"
@@ -237,10 +602,11 @@ public class GridLines implements RhythmSpecLayer {
             }
             gridLines.mStep = step;
 
-            gridLines.mPaint.setColor(argsBundle.getColor(ARG_COLOR, DEFAULT_GRID_COLOR));
-            gridLines.mThickness = argsBundle.getDimensionPixelSize(ARG_THICKNESS, DEFAULT_THICKNESS);
-            gridLines.setLimit(argsBundle.getInt(ARG_LIMIT, Integer.MAX_VALUE));
-            gridLines.mOffset = argsBundle.getDimensionPixelOffset(ARG_OFFSET, 0);
+            gridLines.mPaint.setColor(args.getColor(SLOT_COLOR, DEFAULT_GRID_COLOR));
+            gridLines.mThickness = args.getDimensionPixelSize(SLOT_THICKNESS, DEFAULT_THICKNESS);
+            gridLines.setLimit(args.getInt(SLOT_LIMIT, Integer.MAX_VALUE));
+            gridLines.mOffset = args.getDimensionPixelOffset(SLOT_OFFSET, 0);
+            gridLines.mIsTiled = args.getBoolean(SLOT_TILED, false);
 
             return gridLines;
         }
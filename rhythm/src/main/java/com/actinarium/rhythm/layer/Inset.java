@@ -21,7 +21,11 @@ import android.graphics.Rect;
 import android.support.annotation.IntDef;
 import com.actinarium.rhythm.AbstractSpecLayerGroup;
 import com.actinarium.rhythm.ArgumentsBundle;
-import com.actinarium.rhythm.RhythmSpecLayerFactory;
+import com.actinarium.rhythm.ArgumentsSchema;
+import com.actinarium.rhythm.IndexedArgumentsBundle;
+import com.actinarium.rhythm.OverlayCompiler;
+import com.actinarium.rhythm.SchemaSpecLayerFactory;
+import com.actinarium.rhythm.config.BundledLayerTypes;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -89,6 +93,12 @@ public class Inset extends AbstractSpecLayerGroup<Inset> {
     // Reusable resulting rect
     protected Rect mInsetRect = new Rect();
 
+    /**
+     * Outer bounds {@link #mInsetRect} was calculated for, valid only if {@link #mIsLaidOut} is true
+     */
+    private final Rect mLaidOutBounds = new Rect();
+    private boolean mIsLaidOut;
+
     /**
      * Create a layer group that clips and/or insets its child layers
      */
@@ -115,6 +125,7 @@ public class Inset extends AbstractSpecLayerGroup<Inset> {
      * @see #MODE_CLIP_ONLY
      */
     public Inset setMode(@Mode int mode) {
+        mIsLaidOut = false;
         mMode = mode;
         return this;
     }
@@ -127,6 +138,7 @@ public class Inset extends AbstractSpecLayerGroup<Inset> {
      * @return this for chaining
      */
     public Inset setTop(int value, boolean isPercent) {
+        mIsLaidOut = false;
         mIsTopSet = true;
         mTop = value;
         mIsTopPercent = isPercent;
@@ -141,6 +153,7 @@ public class Inset extends AbstractSpecLayerGroup<Inset> {
      * @return this for chaining
      */
     public Inset setBottom(int value, boolean isPercent) {
+        mIsLaidOut = false;
         mIsBottomSet = true;
         mBottom = value;
         mIsBottomPercent = isPercent;
@@ -155,6 +168,7 @@ public class Inset extends AbstractSpecLayerGroup<Inset> {
      * @return this for chaining
      */
     public Inset setLeft(int value, boolean isPercent) {
+        mIsLaidOut = false;
         mIsLeftSet = true;
         mLeft = value;
         mIsLeftPercent = isPercent;
@@ -169,6 +183,7 @@ public class Inset extends AbstractSpecLayerGroup<Inset> {
      * @return this for chaining
      */
     public Inset setRight(int value, boolean isPercent) {
+        mIsLaidOut = false;
         mIsRightSet = true;
         mRight = value;
         mIsRightPercent = isPercent;
@@ -183,6 +198,7 @@ public class Inset extends AbstractSpecLayerGroup<Inset> {
      * @return this for chaining
      */
     public Inset setWidth(int value, boolean isPercent) {
+        mIsLaidOut = false;
         mIsWidthSet = true;
         mWidth = value;
         mIsWidthPercent = isPercent;
@@ -197,16 +213,25 @@ public class Inset extends AbstractSpecLayerGroup<Inset> {
      * @return this for chaining
      */
     public Inset setHeight(int value, boolean isPercent) {
+        mIsLaidOut = false;
         mIsHeightSet = true;
         mHeight = value;
         mIsHeightPercent = isPercent;
         return this;
     }
 
+    @Override
+    public void onBoundsChanged(Rect drawableBounds) {
+        layOut(drawableBounds);
+        super.onBoundsChanged(mMode == MODE_CLIP_ONLY ? drawableBounds : mInsetRect);
+    }
+
     @Override
     public void draw(Canvas canvas, Rect drawableBounds) {
-        // Assume this is a) not called very often, and b) is a fast operation anyway
-        recalculateInsetRect(drawableBounds);
+        // Normally the inset rect is already calculated in onBoundsChanged(), unless drawn within other bounds
+        if (!mIsLaidOut || !mLaidOutBounds.equals(drawableBounds)) {
+            layOut(drawableBounds);
+        }
 
         final int state = canvas.save();
         if (mMode != MODE_NO_CLIP) {
@@ -224,6 +249,32 @@ public class Inset extends AbstractSpecLayerGroup<Inset> {
         canvas.restoreToCount(state);
     }
 
+    @Override
+    public void compile(OverlayCompiler compiler, Rect drawableBounds) {
+        if (!mIsLaidOut || !mLaidOutBounds.equals(drawableBounds)) {
+            layOut(drawableBounds);
+        }
+
+        if (mMode != MODE_NO_CLIP) {
+            compiler.clipRect(mInsetRect);
+        }
+        super.compile(compiler, mMode == MODE_CLIP_ONLY ? drawableBounds : mInsetRect);
+        if (mMode != MODE_NO_CLIP) {
+            compiler.restore();
+        }
+    }
+
+    @Override
+    public boolean isCompilable() {
+        return getClass() == Inset.class;
+    }
+
+    private void layOut(Rect outerBounds) {
+        recalculateInsetRect(outerBounds);
+        mLaidOutBounds.set(outerBounds);
+        mIsLaidOut = true;
+    }
+
     /**
      * Update the inset bounds based on provided outer bounds and this layer's state
      *
@@ -266,7 +317,7 @@ public class Inset extends AbstractSpecLayerGroup<Inset> {
      * A default factory that creates new {@link Inset} layers from config lines according to <a
      * href="https://github.com/Actinarium/Rhythm/wiki/Declarative-configuration#inset">the docs</a>
      */
-    public static class Factory implements RhythmSpecLayerFactory<Inset> {
+    public static class Factory implements SchemaSpecLayerFactory<Inset> {
 
         public static final String LAYER_TYPE = "inset";
         public static final String ARG_NO_CLIP = "no-clip";
@@ -278,46 +329,62 @@ public class Inset extends AbstractSpecLayerGroup<Inset> {
         public static final String ARG_WIDTH = "width";
         public static final String ARG_HEIGHT = "height";
 
+        private static final ArgumentsSchema SCHEMA = new ArgumentsSchema(BundledLayerTypes.INSET);
+        private static final int SLOT_NO_CLIP = SCHEMA.indexOf(ARG_NO_CLIP);
+        private static final int SLOT_CLIP_ONLY = SCHEMA.indexOf(ARG_CLIP_ONLY);
+        private static final int SLOT_TOP = SCHEMA.indexOf(ARG_TOP);
+        private static final int SLOT_BOTTOM = SCHEMA.indexOf(ARG_BOTTOM);
+        private static final int SLOT_LEFT = SCHEMA.indexOf(ARG_LEFT);
+        private static final int SLOT_RIGHT = SCHEMA.indexOf(ARG_RIGHT);
+        private static final int SLOT_WIDTH = SCHEMA.indexOf(ARG_WIDTH);
+        private static final int SLOT_HEIGHT = SCHEMA.indexOf(ARG_HEIGHT);
+
+        @Override
+        public ArgumentsSchema getArgumentsSchema() {
+            return SCHEMA;
+        }
+
         @Override
         public Inset getForArguments(ArgumentsBundle argsBundle) {
+            final IndexedArgumentsBundle args = SCHEMA.bind(argsBundle);
             Inset inset = new Inset();
 
-            if (argsBundle.hasArgument(ARG_NO_CLIP)) {
+            if (args.hasArgument(SLOT_NO_CLIP)) {
                 inset.mMode = MODE_NO_CLIP;
-            } else if (argsBundle.hasArgument(ARG_CLIP_ONLY)) {
+            } else if (args.hasArgument(SLOT_CLIP_ONLY)) {
                 inset.mMode = MODE_CLIP_ONLY;
             } else {
                 inset.mMode = MODE_DEFAULT;
             }
 
-            if (argsBundle.hasArgument(ARG_TOP)) {
-                boolean isPercent = argsBundle.getDimensionUnits(ARG_TOP) == ArgumentsBundle.UNITS_PERCENT;
-                int value = argsBundle.getDimensionPixelOffset(ARG_TOP, 0);
+            if (args.hasArgument(SLOT_TOP)) {
+                boolean isPercent = args.getDimensionUnits(SLOT_TOP) == ArgumentsBundle.UNITS_PERCENT;
+                int value = args.getDimensionPixelOffset(SLOT_TOP, 0);
                 inset.setTop(value, isPercent);
             }
-            if (argsBundle.hasArgument(ARG_BOTTOM)) {
-                boolean isPercent = argsBundle.getDimensionUnits(ARG_BOTTOM) == ArgumentsBundle.UNITS_PERCENT;
-                int value = argsBundle.getDimensionPixelOffset(ARG_BOTTOM, 0);
+            if (args.hasArgument(SLOT_BOTTOM)) {
+                boolean isPercent = args.getDimensionUnits(SLOT_BOTTOM) == ArgumentsBundle.UNITS_PERCENT;
+                int value = args.getDimensionPixelOffset(SLOT_BOTTOM, 0);
                 inset.setBottom(value, isPercent);
             }
-            if (argsBundle.hasArgument(ARG_LEFT)) {
-                boolean isPercent = argsBundle.getDimensionUnits(ARG_LEFT) == ArgumentsBundle.UNITS_PERCENT;
-                int value = argsBundle.getDimensionPixelOffset(ARG_LEFT, 0);
+            if (args.hasArgument(SLOT_LEFT)) {
+                boolean isPercent = args.getDimensionUnits(SLOT_LEFT) == ArgumentsBundle.UNITS_PERCENT;
+                int value = args.getDimensionPixelOffset(SLOT_LEFT, 0);
                 inset.setLeft(value, isPercent);
             }
-            if (argsBundle.hasArgument(ARG_RIGHT)) {
-                boolean isPercent = argsBundle.getDimensionUnits(ARG_RIGHT) == ArgumentsBundle.UNITS_PERCENT;
-                int value = argsBundle.getDimensionPixelOffset(ARG_RIGHT, 0);
+            if (args.hasArgument(SLOT_RIGHT)) {
+                boolean isPercent = args.getDimensionUnits(SLOT_RIGHT) == ArgumentsBundle.UNITS_PERCENT;
+                int value = args.getDimensionPixelOffset(SLOT_RIGHT, 0);
                 inset.setRight(value, isPercent);
             }
-            if (argsBundle.hasArgument(ARG_WIDTH)) {
-                boolean isPercent = argsBundle.getDimensionUnits(ARG_WIDTH) == ArgumentsBundle.UNITS_PERCENT;
-                int value = argsBundle.getDimensionPixelSize(ARG_WIDTH, 0);
+            if (args.hasArgument(SLOT_WIDTH)) {
+                boolean isPercent = args.getDimensionUnits(SLOT_WIDTH) == ArgumentsBundle.UNITS_PERCENT;
+                int value = args.getDimensionPixelSize(SLOT_WIDTH, 0);
                 inset.setWidth(value, isPercent);
             }
-            if (argsBundle.hasArgument(ARG_HEIGHT)) {
-                boolean isPercent = argsBundle.getDimensionUnits(ARG_HEIGHT) == ArgumentsBundle.UNITS_PERCENT;
-                int value = argsBundle.getDimensionPixelSize(ARG_HEIGHT, 0);
+            if (args.hasArgument(SLOT_HEIGHT)) {
+                boolean isPercent = args.getDimensionUnits(SLOT_HEIGHT) == ArgumentsBundle.UNITS_PERCENT;
+                int value = args.getDimensionPixelSize(SLOT_HEIGHT, 0);
                 inset.setHeight(value, isPercent);
             }
 
@@ -23,10 +23,14 @@ import android.graphics.Rect;
 import android.support.annotation.ColorInt;
 import android.support.annotation.IntRange;
 import android.view.Gravity;
-import com.actinarium.rhythm.RhythmSpecLayer;
+import com.actinarium.rhythm.CompilableSpecLayer;
+import com.actinarium.rhythm.OverlayCompiler;
 import com.actinarium.rhythm.RhythmInflationException;
 import com.actinarium.rhythm.ArgumentsBundle;
-import com.actinarium.rhythm.RhythmSpecLayerFactory;
+import com.actinarium.rhythm.ArgumentsSchema;
+import com.actinarium.rhythm.IndexedArgumentsBundle;
+import com.actinarium.rhythm.SchemaSpecLayerFactory;
+import com.actinarium.rhythm.config.BundledLayerTypes;
 
 /**
  * A layer that draws a horizontal or vertical full-bleed keyline at the specified distance from the specified edge of a
@@ -37,7 +41,7 @@ import com.actinarium.rhythm.RhythmSpecLayerFactory;
  *
  * @author Paul Danyliuk
  */
-public class Keyline implements RhythmSpecLayer {
+public class Keyline implements CompilableSpecLayer {
 
     public static final int DEFAULT_KEYLINE_COLOR = 0x60F50057;
     /**
@@ -56,6 +60,8 @@ public class Keyline implements RhythmSpecLayer {
     protected boolean mAlignOutside;
     protected Paint mPaint;
 
+    private final Rect mLine = new Rect();
+
     /**
      * Create a layer that draws a horizontal or vertical keyline at a specified distance from required edge
      *
@@ -147,33 +153,75 @@ public class Keyline implements RhythmSpecLayer {
         return this;
     }
 
-    @SuppressLint("RtlHardcoded")
     @Override
     public void draw(Canvas canvas, Rect drawableBounds) {
+        if (layOut(drawableBounds)) {
+            canvas.drawRect(mLine, mPaint);
+        }
+    }
+
+    @Override
+    public void compile(OverlayCompiler compiler, Rect drawableBounds) {
+        if (layOut(drawableBounds)) {
+            compiler.addRect(mLine, mPaint);
+        }
+    }
+
+    @Override
+    public boolean isCompilable() {
+        return getClass() == Keyline.class;
+    }
+
+    /**
+     * Add the same keyline as {@link #draw(Canvas, Rect)} draws to a line buffer, so that keylines of multiple
+     * columns can be drawn at once
+     */
+    @SuppressLint("RtlHardcoded")
+    void addTo(LineBuffer lines, Rect drawableBounds) {
+        if (!layOut(drawableBounds)) {
+            return;
+        }
+        if (mEdgeAffinity == Gravity.LEFT || mEdgeAffinity == Gravity.RIGHT) {
+            lines.addVertical(mLine.left, mLine.top, mLine.right, mLine.bottom);
+        } else {
+            lines.addHorizontal(mLine.left, mLine.top, mLine.right, mLine.bottom);
+        }
+    }
+
+    /**
+     * Calculate the keyline rectangle within provided bounds
+     *
+     * @return false if there's nothing to draw due to unknown edge affinity
+     */
+    @SuppressLint("RtlHardcoded")
+    private boolean layOut(Rect drawableBounds) {
         if (mEdgeAffinity == Gravity.LEFT) {
             // Vertical line at offset points from the left
             final int rightX = drawableBounds.left + mDistance + (mAlignOutside ? mThickness : 0);
-            canvas.drawRect(rightX - mThickness, drawableBounds.top, rightX, drawableBounds.bottom, mPaint);
+            mLine.set(rightX - mThickness, drawableBounds.top, rightX, drawableBounds.bottom);
         } else if (mEdgeAffinity == Gravity.RIGHT) {
             // Vertical line at offset points from the right
             final int leftX = drawableBounds.right - mDistance - (mAlignOutside ? mThickness : 0);
-            canvas.drawRect(leftX, drawableBounds.top, leftX + mThickness, drawableBounds.bottom, mPaint);
+            mLine.set(leftX, drawableBounds.top, leftX + mThickness, drawableBounds.bottom);
         } else if (mEdgeAffinity == Gravity.TOP) {
             // Horizontal line at offset points from the top
             final int bottomY = drawableBounds.top + mDistance + (mAlignOutside ? mThickness : 0);
-            canvas.drawRect(drawableBounds.left, bottomY - mThickness, drawableBounds.right, bottomY, mPaint);
+            mLine.set(drawableBounds.left, bottomY - mThickness, drawableBounds.right, bottomY);
         } else if (mEdgeAffinity == Gravity.BOTTOM) {
             // Horizontal line at offset points from the top
             final int topY = drawableBounds.bottom - mDistance - (mAlignOutside ? mThickness : 0);
-            canvas.drawRect(drawableBounds.left, topY, drawableBounds.right, topY + mThickness, mPaint);
+            mLine.set(drawableBounds.left, topY, drawableBounds.right, topY + mThickness);
+        } else {
+            return false;
         }
+        return true;
     }
 
     /**
      * A default factory that creates new {@link Keyline} layers from config lines according to <a
      * href="https://github.com/Actinarium/Rhythm/wiki/Declarative-configuration#keyline">the docs</a>
      */
-    public static class Factory implements RhythmSpecLayerFactory<Keyline> {
+    public static class Factory implements SchemaSpecLayerFactory<Keyline> {
 
         public static final String LAYER_TYPE = "keyline";
         public static final String ARG_EDGE = "from";
@@ -182,27 +230,40 @@ public class Keyline implements RhythmSpecLayer {
         public static final String ARG_THICKNESS = "thickness";
         public static final String ARG_OUTSIDE = "outside";
 
+        private static final ArgumentsSchema SCHEMA = new ArgumentsSchema(BundledLayerTypes.KEYLINE);
+        private static final int SLOT_EDGE = SCHEMA.indexOf(ARG_EDGE);
+        private static final int SLOT_DISTANCE = SCHEMA.indexOf(ARG_DISTANCE);
+        private static final int SLOT_COLOR = SCHEMA.indexOf(ARG_COLOR);
+        private static final int SLOT_THICKNESS = SCHEMA.indexOf(ARG_THICKNESS);
+        private static final int SLOT_OUTSIDE = SCHEMA.indexOf(ARG_OUTSIDE);
+
+        @Override
+        public ArgumentsSchema getArgumentsSchema() {
+            return SCHEMA;
+        }
+
         @Override
         public Keyline getForArguments(ArgumentsBundle argsBundle) {
+            final IndexedArgumentsBundle args = SCHEMA.bind(argsBundle);
             Keyline keyline = new Keyline();
 
-            keyline.mEdgeAffinity = argsBundle.getEdgeAffinity(ARG_EDGE, Gravity.NO_GRAVITY);
+            keyline.mEdgeAffinity = args.getEdgeAffinity(SLOT_EDGE, Gravity.NO_GRAVITY);
             if (keyline.mEdgeAffinity == Gravity.NO_GRAVITY) {
                 throw new RhythmInflationException(
                         "Error in keyline config: 'from' argument is mandatory and must be either 'left', 'right', 'top', 'bottom'"
                 );
             }
 
-            if (!argsBundle.hasArgument(ARG_DISTANCE)) {
+            if (!args.hasArgument(SLOT_DISTANCE)) {
                 throw new RhythmInflationException(
                         "Error in keyline config: 'distance' argument is mandatory and must be a dimension value (e.g. 'distance=16dp')"
                 );
             }
-            keyline.mDistance = argsBundle.getDimensionPixelOffset(ARG_DISTANCE, 0);
+            keyline.mDistance = args.getDimensionPixelOffset(SLOT_DISTANCE, 0);
 
-            keyline.mPaint.setColor(argsBundle.getColor(ARG_COLOR, DEFAULT_KEYLINE_COLOR));
-            keyline.mThickness = argsBundle.getDimensionPixelSize(ARG_THICKNESS, DEFAULT_THICKNESS);
-            keyline.mAlignOutside = argsBundle.getBoolean(ARG_OUTSIDE, ALIGN_INSIDE);
+            keyline.mPaint.setColor(args.getColor(SLOT_COLOR, DEFAULT_KEYLINE_COLOR));
+            keyline.mThickness = args.getDimensionPixelSize(SLOT_THICKNESS, DEFAULT_THICKNESS);
+            keyline.mAlignOutside = args.getBoolean(SLOT_OUTSIDE, ALIGN_INSIDE);
 
             return keyline;
         }
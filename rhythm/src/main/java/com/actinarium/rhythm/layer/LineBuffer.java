@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.actinarium.rhythm.layer;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import com.actinarium.rhythm.OverlayCompiler;
+
+/**
+ * A reusable buffer of line segments, so that layers drawing many lines of the same paint can draw them all with a
+ * single {@link Canvas#drawLines(float[], int, int, Paint)} call instead of a {@link Canvas#drawRect(float, float,
+ * float, float, Paint)} call per line. Each line is a rectangle of the same thickness, drawn as a segment through its
+ * middle with a stroke of that width, which covers exactly the same pixels.
+ *
+ * @author Paul Danyliuk
+ */
+final class LineBuffer {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private float[] mPoints = new float[INITIAL_CAPACITY];
+    private int mSize;
+
+    // Stroke paint derived from the fill paint of the layer, rebuilt when its color or thickness change
+    private Paint mStrokePaint;
+    private int mStrokeColor;
+    private int mStrokeWidth;
+
+    void clear() {
+        mSize = 0;
+    }
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * @return number of buffered lines
+     */
+    int size() {
+        return mSize / 4;
+    }
+
+    /**
+     * Add a horizontal line covering given rectangle
+     */
+    void addHorizontal(int left, int top, int right, int bottom) {
+        final float y = (top + bottom) / 2f;
+        add(left, y, right, y);
+    }
+
+    /**
+     * Add a vertical line covering given rectangle
+     */
+    void addVertical(int left, int top, int right, int bottom) {
+        final float x = (left + right) / 2f;
+        add(x, top, x, bottom);
+    }
+
+    private void add(float x0, float y0, float x1, float y1) {
+        if (mSize + 4 > mPoints.length) {
+            final float[] newPoints = new float[mPoints.length * 2];
+            System.arraycopy(mPoints, 0, newPoints, 0, mSize);
+            mPoints = newPoints;
+        }
+        mPoints[mSize++] = x0;
+        mPoints[mSize++] = y0;
+        mPoints[mSize++] = x1;
+        mPoints[mSize++] = y1;
+    }
+
+    /**
+     * Draw all buffered lines
+     *
+     * @param canvas    canvas to draw to
+     * @param fillPaint paint the layer would fill the line rectangles with
+     * @param thickness thickness of all buffered lines, must be positive
+     */
+    void draw(Canvas canvas, Paint fillPaint, int thickness) {
+        draw(canvas, fillPaint, thickness, 0, mSize / 4);
+    }
+
+    /**
+     * Draw a range of buffered lines
+     *
+     * @param canvas    canvas to draw to
+     * @param fillPaint paint the layer would fill the line rectangles with
+     * @param thickness thickness of all buffered lines, must be positive
+     * @param from      index of the first line to draw
+     * @param to        index after the last line to draw
+     */
+    void draw(Canvas canvas, Paint fillPaint, int thickness, int from, int to) {
+        if (from < to) {
+            canvas.drawLines(mPoints, from * 4, (to - from) * 4, getStrokePaint(fillPaint, thickness));
+        }
+    }
+
+    /**
+     * Add all buffered lines to the compiler, same as {@link #draw(Canvas, Paint, int)} would draw them
+     */
+    void compileTo(OverlayCompiler compiler, Paint fillPaint, int thickness) {
+        if (mSize != 0) {
+            compiler.addLines(mPoints, 0, mSize, getStrokePaint(fillPaint, thickness));
+        }
+    }
+
+    private Paint getStrokePaint(Paint fillPaint, int thickness) {
+        final int color = fillPaint.getColor();
+        if (mStrokePaint == null || mStrokeColor != color || mStrokeWidth != thickness) {
+            mStrokePaint = new Paint(fillPaint);
+            mStrokePaint.setStyle(Paint.Style.STROKE);
+            mStrokePaint.setStrokeCap(Paint.Cap.BUTT);
+            mStrokePaint.setStrokeWidth(thickness);
+            mStrokeColor = color;
+            mStrokeWidth = thickness;
+        }
+        return mStrokePaint;
+    }
+
+}
@@ -30,9 +30,12 @@ import android.util.DisplayMetrics;
 import android.util.TypedValue;
 import android.view.Gravity;
 import com.actinarium.rhythm.ArgumentsBundle;
+import com.actinarium.rhythm.ArgumentsSchema;
+import com.actinarium.rhythm.IndexedArgumentsBundle;
 import com.actinarium.rhythm.RhythmInflationException;
-import com.actinarium.rhythm.RhythmSpecLayer;
-import com.actinarium.rhythm.RhythmSpecLayerFactory;
+import com.actinarium.rhythm.BoundsAwareSpecLayer;
+import com.actinarium.rhythm.SchemaSpecLayerFactory;
+import com.actinarium.rhythm.config.BundledLayerTypes;
 
 import java.util.Locale;
 import java.util.regex.Matcher;
@@ -47,7 +50,7 @@ import java.util.regex.Pattern;
  *
  * @author Paul Danyliuk
  */
-public class RatioKeyline implements RhythmSpecLayer {
+public class RatioKeyline implements BoundsAwareSpecLayer {
 
     public static final int DEFAULT_FILL_COLOR = 0xB03F51B5;
     public static final int DEFAULT_TEXT_COLOR = 0xC0FFFFFF;
@@ -76,6 +79,20 @@ public class RatioKeyline implements RhythmSpecLayer {
     protected int mLabelHeight;
     protected int mLabelSideWidth;
 
+    /**
+     * Keyline position for {@link #mLaidOutBounds}, valid only if {@link #mIsLaidOut} is true
+     */
+    private int mDistanceTop;
+    private final Rect mLaidOutBounds = new Rect();
+    private boolean mIsLaidOut;
+
+    /**
+     * Label text and its offset from the label corner, which don't depend on the bounds, or null until first drawn
+     */
+    private StaticLayout mLabelLayout;
+    private int mLabelTextLeft;
+    private int mLabelTextTop;
+
     public RatioKeyline(@IntRange(from = 0) int ratioX, @IntRange(from = 0) int ratioY, DisplayMetrics metrics) {
         this(metrics);
         mRatioX = ratioX;
@@ -113,6 +130,7 @@ public class RatioKeyline implements RhythmSpecLayer {
      * @return this for chaining
      */
     public RatioKeyline setRatio(@IntRange(from = 0) int ratioX, @IntRange(from = 0) int ratioY) {
+        mIsLaidOut = false;
         mRatioX = ratioX;
         mRatioY = ratioY;
         return this;
@@ -125,6 +143,7 @@ public class RatioKeyline implements RhythmSpecLayer {
      * @return this for chaining
      */
     public RatioKeyline setText(@Nullable String text) {
+        mLabelLayout = null;
         mText = text;
         return this;
     }
@@ -164,20 +183,20 @@ public class RatioKeyline implements RhythmSpecLayer {
     }
 
     @Override
-    public void draw(Canvas canvas, Rect drawableBounds) {
-        final int distanceTop;
+    public void onBoundsChanged(Rect drawableBounds) {
         if (mRatioX == 0) {
-            distanceTop = drawableBounds.top;
+            mDistanceTop = drawableBounds.top;
         } else {
-            distanceTop = drawableBounds.top + drawableBounds.width() * mRatioY / mRatioX;
-        }
-        if (distanceTop > drawableBounds.height()) {
-            return;
+            mDistanceTop = drawableBounds.top + drawableBounds.width() * mRatioY / mRatioX;
         }
+        mLaidOutBounds.set(drawableBounds);
+        mIsLaidOut = true;
+    }
 
-        // Draw keyline
-        canvas.drawRect(drawableBounds.left, distanceTop - mThickness, drawableBounds.right, distanceTop, mBackgroundPaint);
-
+    /**
+     * Measure label text, shrinking it until it fits the label, and center it within the label
+     */
+    private void layOutLabel() {
         // If no special text is set, display ratio
         if (mText == null) {
             mText = String.format(Locale.getDefault(), "%d:%d", mRatioX, mRatioY);
@@ -194,6 +213,32 @@ public class RatioKeyline implements RhythmSpecLayer {
             labelTextWidth = (int) (layout.getLineMax(0) + 0.5);
         }
 
+        // Determine text position (on the baseline, in the center of the label)
+        mTempRect.set(-mLabelRectWidth, -mLabelHeight, 0, 0);
+        Gravity.apply(Gravity.CENTER, labelTextWidth, layout.getHeight(), mTempRect, mTempRect);
+        mLabelTextLeft = mTempRect.left;
+        mLabelTextTop = mTempRect.top;
+        mLabelLayout = layout;
+    }
+
+    @Override
+    public void draw(Canvas canvas, Rect drawableBounds) {
+        if (!mIsLaidOut || !mLaidOutBounds.equals(drawableBounds)) {
+            onBoundsChanged(drawableBounds);
+        }
+        final int distanceTop = mDistanceTop;
+        if (distanceTop > drawableBounds.height()) {
+            return;
+        }
+
+        // The label doesn't depend on the bounds, so it's only laid out once
+        if (mLabelLayout == null) {
+            layOutLabel();
+        }
+
+        // Draw keyline
+        canvas.drawRect(drawableBounds.left, distanceTop - mThickness, drawableBounds.right, distanceTop, mBackgroundPaint);
+
         // Draw label
         canvas.save();
         canvas.clipRect(drawableBounds.left, 0, drawableBounds.right, distanceTop - mThickness);
@@ -201,12 +246,10 @@ public class RatioKeyline implements RhythmSpecLayer {
         canvas.drawPath(mLabelPath, mBackgroundPaint);
         canvas.restore();
 
-        // Determine text position (on the baseline, in the center of
+        // Draw text
         canvas.save();
-        mTempRect.set(-mLabelRectWidth, -mLabelHeight, 0, 0);
-        Gravity.apply(Gravity.CENTER, labelTextWidth, layout.getHeight(), mTempRect, mTempRect);
-        canvas.translate(drawableBounds.right + mTempRect.left, distanceTop + mTempRect.top);
-        layout.draw(canvas);
+        canvas.translate(drawableBounds.right + mLabelTextLeft, distanceTop + mLabelTextTop);
+        mLabelLayout.draw(canvas);
         canvas.restore();
     }
 
@@ -214,7 +257,7 @@ public class RatioKeyline implements RhythmSpecLayer {
      * A default factory that creates new {@link RatioKeyline} layers from config lines according to <a
      * href="https://github.com/Actinarium/Rhythm/wiki/Declarative-configuration#ratio-keyline">the docs</a>
      */
-    public static class Factory implements RhythmSpecLayerFactory<RatioKeyline> {
+    public static class Factory implements SchemaSpecLayerFactory<RatioKeyline> {
 
         public static final String LAYER_TYPE = "ratio-keyline";
         public static final String ARG_RATIO = "ratio";
@@ -223,13 +266,26 @@ public class RatioKeyline implements RhythmSpecLayer {
         public static final String ARG_COLOR = "color";
         public static final String ARG_TEXT_COLOR = "text-color";
 
+        private static final ArgumentsSchema SCHEMA = new ArgumentsSchema(BundledLayerTypes.RATIO_KEYLINE);
+        private static final int SLOT_RATIO = SCHEMA.indexOf(ARG_RATIO);
+        private static final int SLOT_TEXT = SCHEMA.indexOf(ARG_TEXT);
+        private static final int SLOT_THICKNESS = SCHEMA.indexOf(ARG_THICKNESS);
+        private static final int SLOT_COLOR = SCHEMA.indexOf(ARG_COLOR);
+        private static final int SLOT_TEXT_COLOR = SCHEMA.indexOf(ARG_TEXT_COLOR);
+
         private static Pattern RATIO_VALUE_PATTERN = Pattern.compile("(\\d+):(\\d+)");
 
+        @Override
+        public ArgumentsSchema getArgumentsSchema() {
+            return SCHEMA;
+        }
+
         @Override
         public RatioKeyline getForArguments(ArgumentsBundle argsBundle) {
-            RatioKeyline keyline = new RatioKeyline(argsBundle.getDisplayMetrics());
+            final IndexedArgumentsBundle args = SCHEMA.bind(argsBundle);
+            RatioKeyline keyline = new RatioKeyline(args.getDisplayMetrics());
 
-            String ratio = argsBundle.getString(ARG_RATIO);
+            String ratio = args.getString(SLOT_RATIO);
             if (ratio == null) {
                 throw new RhythmInflationException(
                         "Error when inflating ratio-keyline: 'ratio' argument is missing"
@@ -243,11 +299,11 @@ public class RatioKeyline implements RhythmSpecLayer {
             }
             keyline.mRatioX = Integer.parseInt(matcher.group(1));
             keyline.mRatioY = Integer.parseInt(matcher.group(2));
-            keyline.mText = argsBundle.getString(ARG_TEXT, ratio);
+            keyline.mText = args.getString(SLOT_TEXT, ratio);
 
-            keyline.mThickness = argsBundle.getDimensionPixelSize(ARG_THICKNESS, DEFAULT_THICKNESS);
-            keyline.mBackgroundPaint.setColor(argsBundle.getColor(ARG_COLOR, DEFAULT_FILL_COLOR));
-            keyline.mTextPaint.setColor(argsBundle.getColor(ARG_TEXT_COLOR, DEFAULT_TEXT_COLOR));
+            keyline.mThickness = args.getDimensionPixelSize(SLOT_THICKNESS, DEFAULT_THICKNESS);
+            keyline.mBackgroundPaint.setColor(args.getColor(SLOT_COLOR, DEFAULT_FILL_COLOR));
+            keyline.mTextPaint.setColor(args.getColor(SLOT_TEXT_COLOR, DEFAULT_TEXT_COLOR));
 
             return keyline;
         }
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.rhythm.config;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Argument types of the overlay config syntax and checks of raw argument values against them. This is plain Java
+ * shared by <code>ArgumentsSchema</code> and the build-time config compiler, so that a value accepted at build time is
+ * accepted at runtime too. The checks only tell whether a value can be parsed &mdash; they don't parse it.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public final class ArgumentValues {
+
+    public static final int TYPE_STRING = 0;
+    public static final int TYPE_INT = 1;
+    public static final int TYPE_FLOAT = 2;
+    public static final int TYPE_BOOLEAN = 3;
+    public static final int TYPE_COLOR = 4;
+    public static final int TYPE_GRAVITY = 5;
+    public static final int TYPE_EDGE = 6;
+    public static final int TYPE_DIMENSION = 7;
+
+    /**
+     * Color names accepted by <code>android.graphics.Color.parseColor()</code> besides hex colors
+     */
+    private static final List<String> COLOR_NAMES = Arrays.asList(
+            "black", "darkgray", "gray", "lightgray", "white", "red", "green", "blue", "yellow", "cyan", "magenta",
+            "aqua", "fuchsia", "darkgrey", "grey", "lightgrey", "lime", "maroon", "navy", "olive", "purple", "silver",
+            "teal"
+    );
+
+    private ArgumentValues() {}
+
+    /**
+     * Check whether raw value can be parsed as the value of given type
+     *
+     * @param value raw value, not null
+     * @param type  argument type, one of <code>TYPE_*</code> constants
+     * @return true if the value is valid. Values of string, boolean, gravity, and unknown types are always valid
+     */
+    public static boolean isValid(String value, int type) {
+        switch (type) {
+            case TYPE_INT:
+                try {
+                    Integer.parseInt(value);
+                    return true;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            case TYPE_FLOAT:
+                try {
+                    Float.parseFloat(value);
+                    return true;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            case TYPE_COLOR:
+                // Most colors are hex, which can be checked without parsing
+                return isHexColor(value) || COLOR_NAMES.contains(value.toLowerCase(Locale.US));
+            case TYPE_EDGE:
+                return value.equals("top") || value.equals("left") || value.equals("right") || value.equals("bottom");
+            case TYPE_DIMENSION:
+                // A dimension value must start with a number, which can be checked without parsing it
+                return findNumberLength(value) != 0;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Describe the type for error messages, e.g. <code>'step' argument must be a dimension value (e.g. 16dp)</code>
+     *
+     * @param type argument type, one of <code>TYPE_*</code> constants
+     * @return type description with an article
+     */
+    public static String describe(int type) {
+        switch (type) {
+            case TYPE_INT:
+                return "an integer";
+            case TYPE_FLOAT:
+                return "a number";
+            case TYPE_COLOR:
+                return "a color (e.g. #FF0000)";
+            case TYPE_EDGE:
+                return "either 'left', 'right', 'top', 'bottom'";
+            case TYPE_DIMENSION:
+                return "a dimension value (e.g. 16dp)";
+            default:
+                return "a valid value";
+        }
+    }
+
+    /**
+     * Check whether the value is a color in <code>#RRGGBB</code> or <code>#AARRGGBB</code> format without parsing it
+     *
+     * @param value raw value
+     * @return true if it's a hex color. If false, the value may still be a color name
+     */
+    public static boolean isHexColor(String value) {
+        final int length = value.length();
+        if ((length != 7 && length != 9) || value.charAt(0) != '#') {
+            return false;
+        }
+        for (int i = 1; i < length; i++) {
+            final char c = value.charAt(i);
+            if (!isDigit(c) && (c < 'a' || c > 'f') && (c < 'A' || c > 'F')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the length of the number the value starts with, i.e. an optional minus, digits, and an optional fraction
+     *
+     * @param value dimension value, e.g. <code>-12.5dp</code>
+     * @return length of the leading number, or 0 if the value doesn't start with a number
+     */
+    public static int findNumberLength(String value) {
+        final int length = value.length();
+        final int intStart = length != 0 && value.charAt(0) == '-' ? 1 : 0;
+        final int intEnd = skipDigits(value, intStart);
+        if (intEnd + 1 < length && value.charAt(intEnd) == '.' && isDigit(value.charAt(intEnd + 1))) {
+            return skipDigits(value, intEnd + 1);
+        }
+        return intEnd > intStart ? intEnd : 0;
+    }
+
+    private static int skipDigits(String value, int index) {
+        final int length = value.length();
+        while (index < length && isDigit(value.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    public static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.rhythm.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Plain declaration of arguments accepted by a layer type: their names, types, and whether they are required. Used
+ * to declare arguments of bundled layers once, so that <code>ArgumentsSchema</code> of their factories and the
+ * build-time config compiler can't disagree on them.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public final class ArgumentsDeclaration {
+
+    private final String mLayerType;
+    private final List<String> mNames = new ArrayList<>();
+    private final List<Integer> mTypes = new ArrayList<>();
+    private final List<Boolean> mRequired = new ArrayList<>();
+
+    /**
+     * Create an empty declaration
+     *
+     * @param layerType layer type as written in the config
+     */
+    public ArgumentsDeclaration(String layerType) {
+        mLayerType = layerType;
+    }
+
+    /**
+     * Declare an optional argument
+     *
+     * @param name argument name
+     * @param type argument type, one of {@link ArgumentValues} <code>TYPE_*</code> constants
+     * @return this for chaining
+     */
+    public ArgumentsDeclaration add(String name, int type) {
+        return add(name, type, false);
+    }
+
+    /**
+     * Declare a required argument
+     *
+     * @param name argument name
+     * @param type argument type, one of {@link ArgumentValues} <code>TYPE_*</code> constants
+     * @return this for chaining
+     */
+    public ArgumentsDeclaration addRequired(String name, int type) {
+        return add(name, type, true);
+    }
+
+    private ArgumentsDeclaration add(String name, int type, boolean isRequired) {
+        mNames.add(name);
+        mTypes.add(type);
+        mRequired.add(isRequired);
+        return this;
+    }
+
+    public String getLayerType() {
+        return mLayerType;
+    }
+
+    /**
+     * @return number of declared arguments
+     */
+    public int size() {
+        return mNames.size();
+    }
+
+    /**
+     * @param name argument name
+     * @return index of the argument, or -1 if there's no such argument
+     */
+    public int indexOf(String name) {
+        return mNames.indexOf(name);
+    }
+
+    public String getName(int index) {
+        return mNames.get(index);
+    }
+
+    public int getType(int index) {
+        return mTypes.get(index);
+    }
+
+    public boolean isRequired(int index) {
+        return mRequired.get(index);
+    }
+
+    /**
+     * @return names of all declared arguments, in order of declaration
+     */
+    public List<String> getNames() {
+        return mNames;
+    }
+
+}
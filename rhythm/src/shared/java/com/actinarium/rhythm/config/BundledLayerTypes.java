@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.rhythm.config;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.actinarium.rhythm.config.ArgumentValues.TYPE_BOOLEAN;
+import static com.actinarium.rhythm.config.ArgumentValues.TYPE_COLOR;
+import static com.actinarium.rhythm.config.ArgumentValues.TYPE_DIMENSION;
+import static com.actinarium.rhythm.config.ArgumentValues.TYPE_EDGE;
+import static com.actinarium.rhythm.config.ArgumentValues.TYPE_GRAVITY;
+import static com.actinarium.rhythm.config.ArgumentValues.TYPE_INT;
+import static com.actinarium.rhythm.config.ArgumentValues.TYPE_STRING;
+
+/**
+ * <p>Arguments of the layer types registered in <code>RhythmOverlayInflater.createDefault()</code>. Bundled factories
+ * build their schemas from these declarations, and the build-time config compiler uses them to check layer lines
+ * without the Android framework.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public final class BundledLayerTypes {
+
+    public static final ArgumentsDeclaration GRID_LINES = new ArgumentsDeclaration("grid-lines")
+            .addRequired("from", TYPE_EDGE)
+            .addRequired("step", TYPE_DIMENSION)
+            .add("color", TYPE_COLOR)
+            .add("thickness", TYPE_DIMENSION)
+            .add("limit", TYPE_INT)
+            .add("offset", TYPE_DIMENSION)
+            .add("tiled", TYPE_BOOLEAN);
+
+    public static final ArgumentsDeclaration KEYLINE = new ArgumentsDeclaration("keyline")
+            .addRequired("from", TYPE_EDGE)
+            .addRequired("distance", TYPE_DIMENSION)
+            .add("color", TYPE_COLOR)
+            .add("thickness", TYPE_DIMENSION)
+            .add("outside", TYPE_BOOLEAN);
+
+    public static final ArgumentsDeclaration RATIO_KEYLINE = new ArgumentsDeclaration("ratio-keyline")
+            .addRequired("ratio", TYPE_STRING)
+            .add("text", TYPE_STRING)
+            .add("thickness", TYPE_DIMENSION)
+            .add("color", TYPE_COLOR)
+            .add("text-color", TYPE_COLOR);
+
+    public static final ArgumentsDeclaration FILL = new ArgumentsDeclaration("fill")
+            .add("color", TYPE_COLOR);
+
+    public static final ArgumentsDeclaration INSET = new ArgumentsDeclaration("inset")
+            .add("no-clip", TYPE_BOOLEAN)
+            .add("clip-only", TYPE_BOOLEAN)
+            .add("top", TYPE_DIMENSION)
+            .add("bottom", TYPE_DIMENSION)
+            .add("left", TYPE_DIMENSION)
+            .add("right", TYPE_DIMENSION)
+            .add("width", TYPE_DIMENSION)
+            .add("height", TYPE_DIMENSION);
+
+    public static final ArgumentsDeclaration COLUMNS = new ArgumentsDeclaration("columns")
+            .addRequired("count", TYPE_INT);
+
+    public static final ArgumentsDeclaration DIMENSIONS_LABEL = new ArgumentsDeclaration("dimensions-label")
+            .add("gravity", TYPE_GRAVITY)
+            .add("color", TYPE_COLOR)
+            .add("text-color", TYPE_COLOR)
+            .add("text-size", TYPE_DIMENSION);
+
+    /**
+     * All bundled layer types
+     */
+    public static final List<ArgumentsDeclaration> ALL = Arrays.asList(
+            GRID_LINES, KEYLINE, RATIO_KEYLINE, FILL, INSET, COLUMNS, DIMENSIONS_LABEL
+    );
+
+    private BundledLayerTypes() {}
+
+    /**
+     * Get arguments of a bundled layer type
+     *
+     * @param layerType layer type as written in the config
+     * @return declared arguments, or null if it's not a bundled layer type
+     */
+    public static ArgumentsDeclaration get(String layerType) {
+        for (ArgumentsDeclaration declaration : ALL) {
+            if (declaration.getLayerType().equals(layerType)) {
+                return declaration;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.rhythm.config;
+
+/**
+ * <p>Lexer helpers of the overlay config syntax. This is plain Java shared by <code>RhythmOverlayInflater</code> and
+ * the build-time config compiler, so that both split the lines into tokens exactly the same way. All methods scan the
+ * line in place without allocating substrings or using regular expressions.</p>
+ *
+ * @author Paul Danyliuk
+ */
+public final class ConfigSyntax {
+
+    private ConfigSyntax() {}
+
+    /**
+     * Validates a variable declaration line, which must be in the form of <code>@name=value</code>, where name may only
+     * contain letters, digits, and/or underscores.
+     *
+     * @param line variable declaration line, starting with '@'
+     * @return index of the '=' char separating the name from the value, or -1 if the declaration is malformed
+     */
+    public static int findVariableSeparator(String line) {
+        final int len = line.length();
+        int i = 1;
+        while (i < len && isWordChar(line.charAt(i))) {
+            i++;
+        }
+        if (i == 1 || i == len || line.charAt(0) != '@' || line.charAt(i) != '=') {
+            return -1;
+        }
+        // The value may be anything, but just like regex dot it must not contain line terminators
+        for (int j = i + 1; j < len; j++) {
+            final char c = line.charAt(j);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return -1;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * Skip whitespace and stray '=' chars, which cannot start a token
+     *
+     * @return index of the next token start, or <code>len</code> if there are no more tokens
+     */
+    public static int skipSeparators(String line, int from, int len) {
+        while (from < len && (isWhitespace(line.charAt(from)) || line.charAt(from) == '=')) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * @return index of the first whitespace or '=' char after <code>from</code>, or <code>len</code>
+     */
+    public static int findKeyEnd(String line, int from, int len) {
+        while (from < len && !isWhitespace(line.charAt(from)) && line.charAt(from) != '=') {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * @return true if the key ending at <code>keyEnd</code> is followed by '=' and at least one non-whitespace char
+     */
+    public static boolean hasValue(String line, int keyEnd, int len) {
+        return keyEnd + 1 < len && line.charAt(keyEnd) == '=' && !isWhitespace(line.charAt(keyEnd + 1));
+    }
+
+    /**
+     * @return index of the first whitespace char after <code>from</code>, or <code>len</code>
+     */
+    public static int findTokenEnd(String line, int from, int len) {
+        while (from < len && !isWhitespace(line.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Determine whether the line is empty or a comment one (starts with <code>//</code>) and thus should be ignored
+     *
+     * @param line line to test, should be pre-trimmed
+     * @return true if empty or comment
+     */
+    public static boolean isEmptyOrComment(String line) {
+        return line.length() == 0 || (line.charAt(0) == '/' && line.length() >= 2 && line.charAt(1) == '/');
+    }
+
+    /**
+     * Same as {@link #isEmptyOrComment(String)} for the trimmed line, but without trimming it
+     */
+    public static boolean isBlankOrComment(String line) {
+        final int len = line.length();
+        final int start = skipWhitespace(line, len);
+        return start == len || (line.charAt(start) == '/' && start + 1 < len && line.charAt(start + 1) == '/');
+    }
+
+    /**
+     * Check whether the line is empty or consists of whitespace only, same as <code>line.trim().length() == 0</code>
+     */
+    public static boolean isBlank(String line) {
+        final int len = line.length();
+        return skipWhitespace(line, len) == len;
+    }
+
+    private static int skipWhitespace(String line, int len) {
+        int i = 0;
+        while (i < len && line.charAt(i) <= ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Same as <code>\s</code> in regex, i.e. <code>[ \t\n\x0B\f\r]</code>
+     */
+    public static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Same as <code>\w</code> in regex, i.e. <code>[a-zA-Z_0-9]</code>
+     */
+    public static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+}
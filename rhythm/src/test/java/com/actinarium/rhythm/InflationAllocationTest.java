@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 Actinarium
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.actinarium.rhythm;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.DisplayMetrics;
+import com.actinarium.rhythm.internal.ReaderUtils;
+import com.sun.management.ThreadMXBean;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Checks that inflating layer lines stays within a fixed budget of allocated bytes per line, so that reusing configs,
+ * bundles, and tokens between lines doesn't silently regress. Inflates the sample app's overlay config with warm
+ * caches. Before configs were reused, this took over 600 bytes per line without magic variables and 900 with them.
+ *
+ * @author Paul Danyliuk
+ */
+public class InflationAllocationTest {
+
+    private static final File SAMPLE_CONFIG = new File("../sample/src/main/res/raw/overlay_config");
+
+    private static final int BYTES_PER_LINE_BUDGET = 256;
+    private static final int BYTES_PER_LINE_BUDGET_MAGIC = 384;
+
+    private static final int WARM_UP_PASSES = 2000;
+    private static final int MEASURED_PASSES = 2000;
+
+    private ThreadMXBean mThreadBean;
+    private List<String> mLines;
+    private int mLayerLines;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+        mThreadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(mThreadBean.isThreadAllocatedMemorySupported());
+        mThreadBean.setThreadAllocatedMemoryEnabled(true);
+
+        final InputStream inputStream = new FileInputStream(SAMPLE_CONFIG);
+        try {
+            mLines = ReaderUtils.readLines(inputStream);
+        } finally {
+            inputStream.close();
+        }
+        mLayerLines = 0;
+        for (String line : mLines) {
+            final String trimmed = line.trim();
+            if (!RhythmOverlayInflater.isEmptyOrComment(trimmed) && trimmed.charAt(0) != '@'
+                    && trimmed.charAt(0) != '#') {
+                mLayerLines++;
+            }
+        }
+    }
+
+    @Test
+    public void inflatingLinesStaysWithinBudget() {
+        assertWithinBudget(createInflater(false), BYTES_PER_LINE_BUDGET);
+    }
+
+    @Test
+    public void inflatingLinesWithMagicVariablesStaysWithinBudget() {
+        assertWithinBudget(createInflater(true), BYTES_PER_LINE_BUDGET_MAGIC);
+    }
+
+    private void assertWithinBudget(RhythmOverlayInflater inflater, int budget) {
+        for (int i = 0; i < WARM_UP_PASSES; i++) {
+            inflater.inflate(mLines);
+        }
+        final long threadId = Thread.currentThread().getId();
+        final long before = mThreadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_PASSES; i++) {
+            inflater.inflate(mLines);
+        }
+        final long after = mThreadBean.getThreadAllocatedBytes(threadId);
+
+        final double bytesPerLine = (after - before) / (double) MEASURED_PASSES / mLayerLines;
+        assertTrue("Allocated " + bytesPerLine + " bytes per layer line, budget is " + budget,
+                bytesPerLine <= budget);
+    }
+
+    private static RhythmOverlayInflater createInflater(boolean areMagicVariablesEnabled) {
+        final DisplayMetrics displayMetrics = new DisplayMetrics();
+        displayMetrics.density = 2f;
+        displayMetrics.scaledDensity = 2f;
+        final Resources resources = mock(Resources.class);
+        when(resources.getDisplayMetrics()).thenReturn(displayMetrics);
+        final Context context = mock(Context.class);
+        when(context.getApplicationContext()).thenReturn(context);
+        when(context.getResources()).thenReturn(resources);
+
+        // Custom layers of the sample app, which only matter here as lines to parse
+        final RhythmSpecLayerFactory<Group> sampleFactory = new RhythmSpecLayerFactory<Group>() {
+            @Override
+            public Group getForArguments(ArgumentsBundle argsBundle) {
+                return new Group();
+            }
+        };
+        return RhythmOverlayInflater.createDefault(context)
+                .setMagicVariablesEnabled(areMagicVariablesEnabled)
+                .registerFactory("image-box", sampleFactory)
+                .registerFactory("layout-bounds", sampleFactory);
+    }
+
+    private static class Group extends AbstractSpecLayerGroup<Group> {
+    }
+
+}
@@ -53,12 +53,17 @@ public class RhythmSampleApplication extends Application implements RhythmContro
         // Initialize inflater that we'll use to inflate overlays from declarative (human-readable) config
         mRhythmOverlayInflater = RhythmOverlayInflater.createDefault(this).setMagicVariablesEnabled(true);
 
+        // We never modify inflated overlays, so identical inset/columns blocks can be shared between them to save memory
+        mRhythmOverlayInflater.setSubtreeSharingEnabled(true);
+
         // Register the factories for our custom layers so that we can inflate them from text config
         mRhythmOverlayInflater.registerFactory(ImageBox.Factory.LAYER_TYPE, new ImageBox.Factory());
         mRhythmOverlayInflater.registerFactory(LayoutBounds.Factory.LAYER_TYPE, new LayoutBounds.Factory());
 
-        // Inflate everything from /res/raw/overlay_config.
-        List<RhythmOverlay> overlays = mRhythmOverlayInflater.inflate(R.raw.overlay_config);
+        // Inflate everything from /res/raw/overlay_config. The config is compiled into RhythmOverlays class at build
+        // time (see build.gradle), so this doesn't read or parse anything - same as calling
+        // mRhythmOverlayInflater.inflate(R.raw.overlay_config), just faster
+        List<RhythmOverlay> overlays = RhythmOverlays.inflateOverlayConfig(mRhythmOverlayInflater);
 
         // Initialize this application's Rhythm control. That's for the notification.
         mRhythmControl = new RhythmControl(this);
@@ -77,6 +82,11 @@ public class RhythmSampleApplication extends Application implements RhythmContro
         // And the last overlay goes to text views group
         textOverlayGroup.addOverlay(overlays.get(6));
 
+        // By default, if a group has overlays, the first one is initially selected.
+        // Let's hide overlays from these two groups and let you figure out how to enable them back via the notification
+        cardOverlayGroup.selectOverlay(RhythmGroup.NO_OVERLAY);
+        textOverlayGroup.selectOverlay(RhythmGroup.NO_OVERLAY);
+
         // It's also possible to create overlays imperatively, but it's cumbersome and DISCOURAGED. Use inflater instead
         // Here's how we would build a hybrid grid identical to the one on /res/raw/overlay_config lines 25-32:
         float density = getResources().getDisplayMetrics().density;     // we need this to convert dp to px ourselves...
@@ -90,11 +100,6 @@ public class RhythmSampleApplication extends Application implements RhythmContro
                 .addLayer(new Keyline(Gravity.RIGHT, (int) (16 * density)))
                 .addLayer(new Keyline(Gravity.LEFT, (int) (72 * density)));
 
-        // By default, if a group has overlays, the first one is initially selected.
-        // Let's hide overlays from these two groups and let you figure out how to enable them back via the notification
-        cardOverlayGroup.selectOverlay(RhythmGroup.NO_OVERLAY);
-        textOverlayGroup.selectOverlay(RhythmGroup.NO_OVERLAY);
-
         // Show the notification, and we're all set!
         mRhythmControl.showQuickControl(RHYTHM_NOTIFICATION_ID);
     }
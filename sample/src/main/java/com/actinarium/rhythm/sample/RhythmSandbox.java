@@ -30,8 +30,8 @@ import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.MultiAutoCompleteTextView;
 import com.actinarium.aligned.Utils;
+import com.actinarium.rhythm.InflationSession;
 import com.actinarium.rhythm.RhythmDrawable;
-import com.actinarium.rhythm.RhythmOverlay;
 import com.actinarium.rhythm.RhythmOverlayInflater;
 import com.actinarium.rhythm.control.RhythmFrameLayout;
 import com.actinarium.rhythm.layer.Columns;
@@ -81,7 +81,7 @@ public class RhythmSandbox {
     private static final String ARG_RENDER = "com.actinarium.rhythm.sample.arg.RENDER";
 
     private AppCompatActivity mActivity;
-    private RhythmOverlayInflater mOverlayInflater;
+    private InflationSession mInflationSession;
 
     private MultiAutoCompleteTextView mOverlayConfig;
     private RhythmFrameLayout mPreview;
@@ -96,7 +96,7 @@ public class RhythmSandbox {
      */
     public RhythmSandbox(AppCompatActivity activity, View rootView, RhythmOverlayInflater overlayInflater) {
         mActivity = activity;
-        mOverlayInflater = overlayInflater;
+        mInflationSession = overlayInflater.newSession();
 
         // Find and init preview layout
         mPreview = (RhythmFrameLayout) rootView.findViewById(R.id.preview);
@@ -141,53 +141,40 @@ public class RhythmSandbox {
     }
 
     /**
-     * Take the text out of text field and render an overlay into preview frame
+     * Take the text out of text field and render an overlay into preview frame, or show a dialog if there are issues
      */
     private void updatePreview() {
         String overlayConfig = mOverlayConfig.getText().toString();
 
-        if (validate(overlayConfig)) {
-            mDoRender = true;
-            final RhythmOverlay overlay = mOverlayInflater.inflateOverlay(overlayConfig);
-            mPreview.getRhythmDrawable().setOverlay(overlay);
-        }
-    }
-
-    /**
-     * Perform overlay validation, show dialog if issues encountered
-     *
-     * @param overlayConfig Overlay config string to validate
-     * @return true if validation passed
-     */
-    private boolean validate(String overlayConfig) {
-        String error = null;
-
         // If config is empty, short-circuit
         if (overlayConfig.trim().length() == 0) {
-            error = mActivity.getString(R.string.validation_config_empty);
-            InvalidOverlayDialogFragment dialogFragment = InvalidOverlayDialogFragment.newInstance(error);
-            dialogFragment.show(mActivity.getSupportFragmentManager(), InvalidOverlayDialogFragment.TAG);
-            return false;
+            showError(mActivity.getString(R.string.validation_config_empty));
+            return;
         }
 
         // Heads up: line-by-line validation was removed because of increased complexity after 0.9.5.
         // Thing is, when inflating a raw overlay config file the validation is not really that helpful,
-        // therefore not implementing it as a core feature.
-        try {
-            mOverlayInflater.inflateOverlay(overlayConfig);
-        } catch (Exception e) {
-            error = e.getMessage();
-        }
-
-        if (error == null) {
-            return true;
+        // therefore not implementing it as a core feature. Instead, a single incremental pass both validates the config
+        // and inflates the overlay, reusing the layers for the lines that haven't changed since the last time
+        InflationSession.Result result = mInflationSession.inflateOverlay(overlayConfig);
+        if (result.isSuccessful()) {
+            mDoRender = true;
+            mPreview.getRhythmDrawable().setOverlay(result.getOverlay());
         } else {
-            InvalidOverlayDialogFragment dialogFragment = InvalidOverlayDialogFragment.newInstance(error);
-            dialogFragment.show(mActivity.getSupportFragmentManager(), InvalidOverlayDialogFragment.TAG);
-            return false;
+            showError(result.getError().getMessage());
         }
     }
 
+    /**
+     * Show validation error dialog
+     *
+     * @param error Error message to display
+     */
+    private void showError(String error) {
+        InvalidOverlayDialogFragment dialogFragment = InvalidOverlayDialogFragment.newInstance(error);
+        dialogFragment.show(mActivity.getSupportFragmentManager(), InvalidOverlayDialogFragment.TAG);
+    }
+
     /**
      * Imperfect tokenizer for configuration auto-complete
      */